@@ -0,0 +1,23 @@
+package com.netflix.discovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes the content fetched from eureka server in an HTTP content coding. The decoders accepted by the client
+ * are configured with {@link EurekaClientConfig#getAcceptedContentEncodings()}, and a custom decoder must have a
+ * public no argument constructor.
+ */
+public interface ContentDecoder {
+
+    /**
+     * Gets the name of the encoding, as sent in the <tt>Accept-Encoding</tt> and <tt>Content-Encoding</tt>
+     * headers.
+     */
+    String getName();
+
+    /**
+     * Creates a stream decoding the given encoded stream.
+     */
+    InputStream decode(InputStream in) throws IOException;
+}
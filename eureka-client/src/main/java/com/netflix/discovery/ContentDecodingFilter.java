@@ -0,0 +1,165 @@
+package com.netflix.discovery;
+
+import javax.ws.rs.core.HttpHeaders;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A client filter accepting the content encodings configured with
+ * {@link EurekaClientConfig#getAcceptedContentEncodings()}, and decoding the responses sent in one of them.
+ * It replaces the standard jersey {@link com.sun.jersey.api.client.filter.GZIPContentEncodingFilter}, which only
+ * accepts <tt>gzip</tt>.
+ */
+public class ContentDecodingFilter extends ClientFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentDecodingFilter.class);
+
+    public static final ContentDecoder GZIP = new ContentDecoder() {
+        @Override
+        public String getName() {
+            return "gzip";
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new GZIPInputStream(in);
+        }
+    };
+
+    /**
+     * The <tt>deflate</tt> HTTP content coding, which is <em>deflate</em> data in the <em>zlib</em> format.
+     */
+    public static final ContentDecoder DEFLATE = new ContentDecoder() {
+        @Override
+        public String getName() {
+            return "deflate";
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new InflaterInputStream(in);
+        }
+    };
+
+    // Loaded by name, as the lz4 library it depends on is optional
+    private static final String LZ4 = "lz4";
+    private static final String LZ4_DECODER_CLASS = "com.netflix.discovery.Lz4Decoder";
+
+    private final EurekaClientConfig config;
+    private volatile Decoders decoders = new Decoders(null);
+
+    public ContentDecodingFilter(EurekaClientConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+        Decoders current = getDecoders();
+        if (!request.getHeaders().containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, current.acceptEncoding);
+        }
+
+        ClientResponse response = getNext().handle(request);
+
+        if (response.hasEntity() && response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            String encoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING).trim();
+            ContentDecoder decoder = current.get(encoding);
+            if (decoder != null) {
+                response.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+                try {
+                    response.setEntityInputStream(decoder.decode(response.getEntityInputStream()));
+                } catch (IOException ex) {
+                    throw new ClientHandlerException(ex);
+                }
+            }
+        }
+        return response;
+    }
+
+    private Decoders getDecoders() {
+        String names = config.getAcceptedContentEncodings();
+        Decoders current = decoders;
+        if (names == null ? current.names != null : !names.equals(current.names)) {
+            current = new Decoders(names);
+            decoders = current;
+        }
+        return current;
+    }
+
+    /**
+     * The decoders resolved from the configured encoding names. <tt>gzip</tt> is accepted when no other
+     * encoding is.
+     */
+    private static final class Decoders {
+        private final String names;
+        private final List<ContentDecoder> decoders;
+        private final String acceptEncoding;
+
+        Decoders(String names) {
+            this.names = names;
+            List<ContentDecoder> resolved = new ArrayList<ContentDecoder>();
+            if (names != null) {
+                for (String name : names.split(",")) {
+                    ContentDecoder decoder = fromName(name.trim());
+                    if (decoder != null) {
+                        resolved.add(decoder);
+                    }
+                }
+            }
+            if (resolved.isEmpty()) {
+                resolved.add(GZIP);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (ContentDecoder decoder : resolved) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(decoder.getName());
+            }
+            this.decoders = Collections.unmodifiableList(resolved);
+            this.acceptEncoding = sb.toString();
+        }
+
+        ContentDecoder get(String encoding) {
+            for (ContentDecoder decoder : decoders) {
+                if (decoder.getName().equalsIgnoreCase(encoding)) {
+                    return decoder;
+                }
+            }
+            return null;
+        }
+
+        private static ContentDecoder fromName(String name) {
+            if (name.isEmpty()) {
+                return null;
+            }
+            if (GZIP.getName().equalsIgnoreCase(name)) {
+                return GZIP;
+            }
+            if (DEFLATE.getName().equalsIgnoreCase(name)) {
+                return DEFLATE;
+            }
+            if (LZ4.equalsIgnoreCase(name)) {
+                name = LZ4_DECODER_CLASS;
+            }
+            try {
+                return (ContentDecoder) Class.forName(name).newInstance();
+            } catch (Throwable e) {
+                logger.error("Cannot create the content decoder " + name + ", it is ignored", e);
+                return null;
+            }
+        }
+    }
+}
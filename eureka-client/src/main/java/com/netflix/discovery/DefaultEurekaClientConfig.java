@@ -187,6 +187,12 @@ public class DefaultEurekaClientConfig implements EurekaClientConfig {
                 namespace + "eurekaServer.gzipContent", true).get();
     }
 
+    @Override
+    public String getAcceptedContentEncodings() {
+        return configInstance.getStringProperty(
+                namespace + "eurekaServer.contentEncodings", "gzip").get();
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -19,6 +19,7 @@ package com.netflix.discovery;
 import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
 import javax.inject.Singleton;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriBuilder;
@@ -68,6 +69,8 @@ import com.netflix.discovery.shared.Application;
 import com.netflix.discovery.shared.Applications;
 import com.netflix.discovery.shared.EurekaJerseyClient;
 import com.netflix.discovery.shared.EurekaJerseyClient.JerseyClient;
+import com.netflix.discovery.shared.InstanceOperationList;
+import com.netflix.discovery.shared.InstanceOperationListResponse;
 import com.netflix.eventbus.spi.EventBus;
 import com.netflix.servo.monitor.Counter;
 import com.netflix.servo.monitor.Monitors;
@@ -75,7 +78,6 @@ import com.netflix.servo.monitor.Stopwatch;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.filter.ClientFilter;
-import com.sun.jersey.api.client.filter.GZIPContentEncodingFilter;
 import com.sun.jersey.client.apache4.ApacheHttpClient4;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -134,6 +136,8 @@ public class DiscoveryClient implements EurekaClient {
             .newTimer(PREFIX + "Renew");
     private final com.netflix.servo.monitor.Timer CANCEL_TIMER = Monitors
             .newTimer(PREFIX + "Cancel");
+    private final com.netflix.servo.monitor.Timer INSTANCE_OPERATIONS_TIMER = Monitors
+            .newTimer(PREFIX + "InstanceOperations");
     private final com.netflix.servo.monitor.Timer FETCH_REGISTRY_TIMER = Monitors
             .newTimer(PREFIX + "FetchRegistry");
     private final Counter SERVER_RETRY_COUNTER = Monitors.newCounter(PREFIX
@@ -155,6 +159,10 @@ public class DiscoveryClient implements EurekaClient {
     private final Lock fetchRegistryUpdateLock = new ReentrantLock();
     // monotonically increasing generation counter to ensure stale threads do not reset registry to an older version
     private final AtomicLong fetchRegistryGeneration;
+    // entity tags sent back to the server so that it can answer with 304 if the payloads did not change; the
+    // full registry tag is only kept while the local registry is the one fetched with it
+    private final AtomicReference<String> fullRegistryETag = new AtomicReference<String>();
+    private final AtomicReference<String> deltaETag = new AtomicReference<String>();
 
     private final ApplicationInfoManager applicationInfoManager;
     private final InstanceInfo instanceInfo;
@@ -172,7 +180,7 @@ public class DiscoveryClient implements EurekaClient {
     private ApplicationInfoManager.StatusChangeListener statusChangeListener;
 
     private enum Action {
-        Register, Cancel, Renew, Refresh, Refresh_Delta
+        Register, Cancel, Renew, Refresh, Refresh_Delta, Submit_Instance_Operations
     }
 
     /**
@@ -365,10 +373,9 @@ public class DiscoveryClient implements EurekaClient {
             // should we enable GZip decoding of responses based on Response
             // Headers?
             if (enableGZIPContentEncodingFilter) {
-                // compressed only if there exists a 'Content-Encoding' header
-                // whose value is "gzip"
-                discoveryApacheClient.addFilter(new GZIPContentEncodingFilter(
-                        false));
+                // decoded only if there exists a 'Content-Encoding' header
+                // whose value is one of the accepted encodings
+                discoveryApacheClient.addFilter(new ContentDecodingFilter(config));
             }
 
             // always enable client identity headers
@@ -639,6 +646,10 @@ public class DiscoveryClient implements EurekaClient {
         Applications apps = null;
         try {
             response = makeRemoteCall(Action.Refresh);
+            if (response.getStatus() == Status.NOT_MODIFIED.getStatusCode()) {
+                // The server still has the registry we fetched last
+                return getApplications();
+            }
             apps = response.getEntity(Applications.class);
             logger.debug(PREFIX + appPathIdentifier + " -  refresh status: "
                     + response.getStatus());
@@ -721,6 +732,25 @@ public class DiscoveryClient implements EurekaClient {
 
     }
 
+    /**
+     * Sends register, heartbeat and cancel requests for many instances, like the ones a sidecar host runs, to the
+     * eureka service in a single request. The eureka servers are tried in the same order as for this instance's
+     * own requests until one of them accepts the batch.
+     *
+     * @param operations the operations to send.
+     * @return the results of the operations, in the order of the operations.
+     * @throws Throwable if none of the eureka servers accepted the batch.
+     */
+    public InstanceOperationListResponse submitInstanceOperations(InstanceOperationList operations) throws Throwable {
+        ClientResponse response = null;
+        try {
+            response = makeRemoteCall(Action.Submit_Instance_Operations, operations);
+            return response.getEntity(InstanceOperationListResponse.class);
+        } finally {
+            closeResponse(response);
+        }
+    }
+
     /**
      * Get the list of all eureka service urls from properties file for the eureka client to talk to.
      *
@@ -977,6 +1007,9 @@ public class DiscoveryClient implements EurekaClient {
      *   atomically set the registry to the new registry
      * fi
      *
+     * The local registry is kept if the server answers that the registry did
+     * not change since it was fetched.
+     *
      * @return the full registry information.
      * @throws Throwable
      *             on error.
@@ -986,6 +1019,10 @@ public class DiscoveryClient implements EurekaClient {
         ClientResponse response = makeRemoteCall(Action.Refresh);
         logger.info("Getting all instance registry info from the eureka server");
 
+        if (response.getStatus() == Status.NOT_MODIFIED.getStatusCode()) {
+            logger.info("The registry did not change since it was last fetched");
+            return response;
+        }
         Applications apps = null;
         if (response.getStatus() == Status.OK.getStatusCode()) {
             apps = response.getEntity(Applications.class);
@@ -995,6 +1032,7 @@ public class DiscoveryClient implements EurekaClient {
             logger.error("The application is null for some reason. Not storing this information");
         } else if (fetchRegistryGeneration.compareAndSet(currentUpdateGeneration, currentUpdateGeneration + 1)) {
             localRegionApps.set(this.filterAndShuffle(apps));
+            fullRegistryETag.set(response.getHeaders().getFirst(HttpHeaders.ETAG));
         } else {
             logger.warn("Not updating applications as another thread is updating it already");
         }
@@ -1004,6 +1042,9 @@ public class DiscoveryClient implements EurekaClient {
 
     /**
      * Get the delta registry information from the eureka server and update it locally.
+     * Unless remote regions are fetched, only the changes after the registry version of the
+     * local registry information are requested, and the full registry is fetched if the server
+     * no longer has them.
      * When applying the delta, the following flow is observed:
      *
      * if (update generation have not advanced (due to another thread))
@@ -1012,6 +1053,9 @@ public class DiscoveryClient implements EurekaClient {
      *   do reconciliation if reconcileHashCode clash
      * fi
      *
+     * Nothing is applied if the server answers that the delta did not change
+     * since the last one applied.
+     *
      * @return the client response
      * @throws Throwable on error
      */
@@ -1019,6 +1063,10 @@ public class DiscoveryClient implements EurekaClient {
         long currentUpdateGeneration = fetchRegistryGeneration.get();
         ClientResponse response = makeRemoteCall(Action.Refresh_Delta);
 
+        if (response.getStatus() == Status.NOT_MODIFIED.getStatusCode()) {
+            logger.debug("The delta did not change since it was last applied");
+            return response;
+        }
         Applications delta = null;
         if (response.getStatus() == Status.OK.getStatusCode()) {
             delta = response.getEntity(Applications.class);
@@ -1032,7 +1080,9 @@ public class DiscoveryClient implements EurekaClient {
             String reconcileHashCode = "";
             if (fetchRegistryUpdateLock.tryLock()) {
                 try {
+                    fullRegistryETag.set(null);
                     updateDelta(delta);
+                    deltaETag.set(response.getHeaders().getFirst(HttpHeaders.ETAG));
                     reconcileHashCode = getReconcileHashCode(applications);
                 } finally {
                     fetchRegistryUpdateLock.unlock();
@@ -1208,25 +1258,42 @@ public class DiscoveryClient implements EurekaClient {
      *             on any error.
      */
     private ClientResponse makeRemoteCall(Action action) throws Throwable {
+        return makeRemoteCall(action, (InstanceOperationList) null);
+    }
+
+    /**
+     * Makes remote calls with the corresponding action(register,renew etc).
+     *
+     * @param action
+     *            the action to be performed on eureka server.
+     * @param operations
+     *            the operations sent by {@link Action#Submit_Instance_Operations}, null for the other actions.
+     * @return ClientResponse the HTTP response object.
+     * @throws Throwable
+     *             on any error.
+     */
+    private ClientResponse makeRemoteCall(Action action, @Nullable InstanceOperationList operations)
+            throws Throwable {
         ClientResponse response;
         if (isQueryAction(action)) {
-            response = makeRemoteCallToRedirectedServer(lastQueryRedirect, action);
+            response = makeRemoteCallToRedirectedServer(lastQueryRedirect, action, operations);
         } else {
-            response = makeRemoteCallToRedirectedServer(lastRegisterRedirect, action);
+            response = makeRemoteCallToRedirectedServer(lastRegisterRedirect, action, operations);
         }
         if (response == null) {
-            response = makeRemoteCall(action, 0);
+            response = makeRemoteCall(action, 0, operations);
         }
         return response;
     }
 
-    private ClientResponse makeRemoteCallToRedirectedServer(AtomicReference<String> lastRedirect, Action action) {
+    private ClientResponse makeRemoteCallToRedirectedServer(AtomicReference<String> lastRedirect, Action action,
+                                                            @Nullable InstanceOperationList operations) {
         String lastRedirectUrl = lastRedirect.get();
         if (lastRedirectUrl != null) {
             try {
-                ClientResponse clientResponse = makeRemoteCall(action, lastRedirectUrl);
+                ClientResponse clientResponse = makeRemoteCall(action, lastRedirectUrl, operations);
                 int status = clientResponse.getStatus();
-                if (status >= 200 && status < 300) {
+                if (status >= 200 && status < 300 || status == Status.NOT_MODIFIED.getStatusCode()) {
                     return clientResponse;
                 }
                 SERVER_RETRY_COUNTER.increment();
@@ -1257,16 +1324,17 @@ public class DiscoveryClient implements EurekaClient {
      * @throws Throwable
      *             on any error.
      */
-    private ClientResponse makeRemoteCall(Action action, int serviceUrlIndex) throws Throwable {
+    private ClientResponse makeRemoteCall(Action action, int serviceUrlIndex,
+                                          @Nullable InstanceOperationList operations) throws Throwable {
         String serviceUrl;
         try {
             serviceUrl = eurekaServiceUrls.get().get(serviceUrlIndex);
-            return makeRemoteCallWithFollowRedirect(action, serviceUrl);
+            return makeRemoteCallWithFollowRedirect(action, serviceUrl, operations);
         } catch (Throwable t) {
             if (eurekaServiceUrls.get().size() > ++serviceUrlIndex) {
                 logger.warn("Trying backup: " + eurekaServiceUrls.get().get(serviceUrlIndex));
                 SERVER_RETRY_COUNTER.increment();
-                return makeRemoteCall(action, serviceUrlIndex);
+                return makeRemoteCall(action, serviceUrlIndex, operations);
             } else {
                 ALL_SERVER_FAILURE_COUNT.increment();
                 logger.error("Can't contact any eureka nodes - possibly a security group issue?", t);
@@ -1275,10 +1343,12 @@ public class DiscoveryClient implements EurekaClient {
         }
     }
 
-    private ClientResponse makeRemoteCallWithFollowRedirect(Action action, String serviceUrl) throws Throwable {
+    private ClientResponse makeRemoteCallWithFollowRedirect(Action action, String serviceUrl,
+                                                            @Nullable InstanceOperationList operations)
+            throws Throwable {
         URI targetUrl = new URI(serviceUrl);
         for (int followRedirectCount = 0; followRedirectCount < MAX_FOLLOWED_REDIRECTS; followRedirectCount++) {
-            ClientResponse clientResponse = makeRemoteCall(action, targetUrl.toString());
+            ClientResponse clientResponse = makeRemoteCall(action, targetUrl.toString(), operations);
             if (clientResponse.getStatus() != 302) {
                 if (followRedirectCount > 0) {
                     if (isQueryAction(action)) {
@@ -1322,17 +1392,18 @@ public class DiscoveryClient implements EurekaClient {
      * @throws Throwable
      *             on any error.
      */
-    private ClientResponse makeRemoteCall(Action action, String serviceUrl) throws Throwable {
+    private ClientResponse makeRemoteCall(Action action, String serviceUrl,
+                                          @Nullable InstanceOperationList operations) throws Throwable {
         String urlPath = null;
         Stopwatch tracer = null;
         ClientResponse response = null;
         logger.debug("Discovery Client talking to the server {}", serviceUrl);
         try {
             // If the application is unknown do not register/renew/cancel but
-            // refresh
+            // refresh, or send the operations of other instances
             if ((UNKNOWN.equals(instanceInfo.getAppName())
                     && (!Action.Refresh.equals(action)) && (!Action.Refresh_Delta
-                    .equals(action)))) {
+                    .equals(action)) && (!Action.Submit_Instance_Operations.equals(action)))) {
                 return null;
             }
             WebResource r = discoveryApacheClient.resource(serviceUrl);
@@ -1360,7 +1431,7 @@ public class DiscoveryClient implements EurekaClient {
                     if (!Strings.isNullOrEmpty(remoteRegionsToFetchStr)) {
                         urlPath += "?regions=" + remoteRegionsToFetchStr;
                     }
-                    response = getUrl(serviceUrl + urlPath);
+                    response = getUrl(serviceUrl + urlPath, fullRegistryETag.get());
                     break;
                 case Refresh_Delta:
                     tracer = REFRESH_DELTA_TIMER.start();
@@ -1368,8 +1439,13 @@ public class DiscoveryClient implements EurekaClient {
                     remoteRegionsToFetchStr = remoteRegionsToFetch.get();
                     if (!Strings.isNullOrEmpty(remoteRegionsToFetchStr)) {
                         urlPath += "?regions=" + remoteRegionsToFetchStr;
+                    } else {
+                        // Only the changes after the registry version we have; servers not supporting it, or
+                        // falling back to remote regions in the full registry, ignore the parameter and send
+                        // their recent changes
+                        urlPath += "?since=" + getApplications().getVersion();
                     }
-                    response = getUrl(serviceUrl + urlPath);
+                    response = getUrl(serviceUrl + urlPath, deltaETag.get());
                     break;
                 case Register:
                     tracer = REGISTER_TIMER.start();
@@ -1390,6 +1466,14 @@ public class DiscoveryClient implements EurekaClient {
                         return response;
                     }
                     break;
+                case Submit_Instance_Operations:
+                    tracer = INSTANCE_OPERATIONS_TIMER.start();
+                    urlPath = "instances/batch";
+                    response = r.path(urlPath)
+                            .accept(MediaType.APPLICATION_JSON_TYPE)
+                            .type(MediaType.APPLICATION_JSON_TYPE)
+                            .post(ClientResponse.class, operations);
+                    break;
             }
 
             if (logger.isDebugEnabled()) {
@@ -1768,10 +1852,12 @@ public class DiscoveryClient implements EurekaClient {
     private boolean isOk(Action action, int httpStatus) {
         if (httpStatus >= 200 && httpStatus < 300 || httpStatus == 302) {
             return true;
+        } else if (isQueryAction(action) && httpStatus == 304) {
+            return true;
         } else if (Action.Renew == action && httpStatus == 404) {
             return true;
         } else if (Action.Refresh_Delta == action
-                && (httpStatus == 403 || httpStatus == 404)) {
+                && (httpStatus == 403 || httpStatus == 404 || httpStatus == 410)) {
             return true;
         } else {
             return false;
@@ -1804,10 +1890,13 @@ public class DiscoveryClient implements EurekaClient {
         return instanceToReturn;
     }
 
-    private ClientResponse getUrl(String fullServiceUrl) {
-        ClientResponse cr = discoveryApacheClient.resource(fullServiceUrl)
-                .accept(MediaType.APPLICATION_JSON_TYPE)
-                .get(ClientResponse.class);
+    private ClientResponse getUrl(String fullServiceUrl, @Nullable String eTag) {
+        WebResource.Builder builder = discoveryApacheClient.resource(fullServiceUrl)
+                .accept(MediaType.APPLICATION_JSON_TYPE);
+        if (eTag != null) {
+            builder = builder.header(HttpHeaders.IF_NONE_MATCH, eTag);
+        }
+        ClientResponse cr = builder.get(ClientResponse.class);
 
         return cr;
     }
@@ -126,6 +126,21 @@ public interface EurekaClientConfig {
      */
     boolean shouldGZipContent();
 
+    /**
+     * Gets the content encodings accepted for the content fetched from eureka server, as a comma separated list
+     * in order of preference, when the content is to be compressed (see {@link #shouldGZipContent()}). The
+     * encodings are either built in, <tt>gzip</tt>, <tt>deflate</tt> and <tt>lz4</tt>, or the class names of
+     * {@link ContentDecoder} implementations. <tt>lz4</tt> requires the optional <em>lz4-java</em> library. The
+     * server sends the content in the encoding it prefers among the accepted ones.
+     *
+     * <p>
+     * <em>The changes are effective at runtime.</em>
+     * </p>
+     *
+     * @return the comma separated content encodings.
+     */
+    String getAcceptedContentEncodings();
+
     /**
      * Indicates how long to wait (in seconds) before a read from eureka server
      * needs to timeout.
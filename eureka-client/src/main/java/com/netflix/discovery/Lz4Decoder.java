@@ -0,0 +1,28 @@
+package com.netflix.discovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Decodes the <tt>lz4</tt> encoding, in the block stream format of the <em>lz4-java</em> library the server
+ * encodes it in. <em>lz4-java</em> is an optional dependency, so this decoder is only available if the library
+ * is on the class path.
+ */
+public class Lz4Decoder implements ContentDecoder {
+
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    @Override
+    public String getName() {
+        return "lz4";
+    }
+
+    @Override
+    public InputStream decode(InputStream in) throws IOException {
+        return new LZ4BlockInputStream(in, decompressor);
+    }
+}
@@ -90,13 +90,17 @@ public class Applications {
 
     /**
      * Create a new Eureka application list, based on the provided applications.  The provided container is
-     * not modified.
+     * not modified. Unlike {@link #addApplication(Application)}, the instances are not looked at, so they are
+     * only indexed by virtual host name once {@link #shuffleInstances(boolean)} is called.
      *
      * @param apps the initial list of apps to store in this applications list
      */
     public Applications(List<Application> apps) {
         this.applications = new ConcurrentLinkedQueue<Application>();
-        this.applications.addAll(apps);
+        for (Application app : apps) {
+            appNameApplicationMap.put(app.getName().toUpperCase(Locale.ROOT), app);
+            applications.add(app);
+        }
     }
 
     /**
@@ -26,6 +26,8 @@ public interface EurekaHttpClient {
 
     HttpResponse<InstanceInfo> getInstance(String appName, String id);
 
+    HttpResponse<InstanceOperationListResponse> submitInstanceOperations(InstanceOperationList operations);
+
     void shutdown();
 
     class HttpResponse<T> {
@@ -0,0 +1,135 @@
+package com.netflix.discovery.shared;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+
+/**
+ * A single register, heartbeat or cancel request within an {@link InstanceOperationList}, carrying the same
+ * information as the corresponding request to the <tt>apps</tt> resource.
+ */
+public class InstanceOperation {
+
+    public enum Action {
+        Register, Heartbeat, Cancel
+    }
+
+    private final String appName;
+    private final String id;
+    private final Long lastDirtyTimestamp;
+    private final String overriddenStatus;
+    private final String status;
+    private final InstanceInfo instanceInfo;
+    private final Action action;
+
+    @JsonCreator
+    public InstanceOperation(@JsonProperty("appName") String appName,
+                             @JsonProperty("id") String id,
+                             @JsonProperty("lastDirtyTimestamp") Long lastDirtyTimestamp,
+                             @JsonProperty("overriddenStatus") String overriddenStatus,
+                             @JsonProperty("status") String status,
+                             @JsonProperty("instanceInfo") InstanceInfo instanceInfo,
+                             @JsonProperty("action") Action action) {
+        this.appName = appName;
+        this.id = id;
+        this.lastDirtyTimestamp = lastDirtyTimestamp;
+        this.overriddenStatus = overriddenStatus;
+        this.status = status;
+        this.instanceInfo = instanceInfo;
+        this.action = action;
+    }
+
+    /**
+     * Registers the given instance, like <tt>POST apps/{appName}</tt>.
+     */
+    public static InstanceOperation register(InstanceInfo info) {
+        return new InstanceOperation(info.getAppName(), info.getId(), null, null, null, info, Action.Register);
+    }
+
+    /**
+     * Renews the lease of the given instance, like <tt>PUT apps/{appName}/{id}</tt>.
+     *
+     * @param overriddenStatus the overridden status known to the caller, or null.
+     */
+    public static InstanceOperation heartbeat(InstanceInfo info, InstanceStatus overriddenStatus) {
+        return new InstanceOperation(info.getAppName(), info.getId(), info.getLastDirtyTimestamp(),
+                overriddenStatus == null ? null : overriddenStatus.name(), info.getStatus().name(), null, Action.Heartbeat);
+    }
+
+    /**
+     * Cancels the lease of the given instance, like <tt>DELETE apps/{appName}/{id}</tt>.
+     */
+    public static InstanceOperation cancel(String appName, String id) {
+        return new InstanceOperation(appName, id, null, null, null, null, Action.Cancel);
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getLastDirtyTimestamp() {
+        return lastDirtyTimestamp;
+    }
+
+    public String getOverriddenStatus() {
+        return overriddenStatus;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public InstanceInfo getInstanceInfo() {
+        return instanceInfo;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        InstanceOperation that = (InstanceOperation) o;
+
+        if (appName != null ? !appName.equals(that.appName) : that.appName != null)
+            return false;
+        if (id != null ? !id.equals(that.id) : that.id != null)
+            return false;
+        if (lastDirtyTimestamp != null ? !lastDirtyTimestamp.equals(that.lastDirtyTimestamp) : that.lastDirtyTimestamp != null)
+            return false;
+        if (overriddenStatus != null ? !overriddenStatus.equals(that.overriddenStatus) : that.overriddenStatus != null)
+            return false;
+        if (status != null ? !status.equals(that.status) : that.status != null)
+            return false;
+        if (instanceInfo != null ? !instanceInfo.equals(that.instanceInfo) : that.instanceInfo != null)
+            return false;
+        return action == that.action;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = appName != null ? appName.hashCode() : 0;
+        result = 31 * result + (id != null ? id.hashCode() : 0);
+        result = 31 * result + (lastDirtyTimestamp != null ? lastDirtyTimestamp.hashCode() : 0);
+        result = 31 * result + (overriddenStatus != null ? overriddenStatus.hashCode() : 0);
+        result = 31 * result + (status != null ? status.hashCode() : 0);
+        result = 31 * result + (instanceInfo != null ? instanceInfo.hashCode() : 0);
+        result = 31 * result + (action != null ? action.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return action + " " + appName + '/' + id;
+    }
+}
@@ -0,0 +1,54 @@
+package com.netflix.discovery.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.netflix.discovery.provider.Serializer;
+
+/**
+ * A batch of register, heartbeat and cancel requests sent to eureka in a single request, for hosts that run
+ * many instances. The server answers with an {@link InstanceOperationListResponse} holding the result of each
+ * operation, in the same order.
+ */
+@JsonRootName("instanceOperationList")
+@Serializer("jackson") // For backwards compatibility with DiscoveryJerseyProvider
+public class InstanceOperationList {
+    private final List<InstanceOperation> operations;
+
+    public InstanceOperationList() {
+        this.operations = new ArrayList<>();
+    }
+
+    @JsonCreator
+    public InstanceOperationList(@JsonProperty("operations") List<InstanceOperation> operations) {
+        this.operations = operations;
+    }
+
+    public void addOperation(InstanceOperation operation) {
+        operations.add(operation);
+    }
+
+    public List<InstanceOperation> getOperations() {
+        return operations;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        InstanceOperationList that = (InstanceOperationList) o;
+
+        return !(operations != null ? !operations.equals(that.operations) : that.operations != null);
+    }
+
+    @Override
+    public int hashCode() {
+        return operations != null ? operations.hashCode() : 0;
+    }
+}
@@ -0,0 +1,52 @@
+package com.netflix.discovery.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.netflix.discovery.provider.Serializer;
+
+/**
+ * The results of the operations of an {@link InstanceOperationList}, in the order of the operations.
+ */
+@JsonRootName("instanceOperationListResponse")
+@Serializer("jackson") // For backwards compatibility with DiscoveryJerseyProvider
+public class InstanceOperationListResponse {
+    private final List<InstanceOperationResponse> responseList;
+
+    public InstanceOperationListResponse() {
+        this.responseList = new ArrayList<>();
+    }
+
+    @JsonCreator
+    public InstanceOperationListResponse(@JsonProperty("responseList") List<InstanceOperationResponse> responseList) {
+        this.responseList = responseList;
+    }
+
+    public List<InstanceOperationResponse> getResponseList() {
+        return responseList;
+    }
+
+    public void addResponse(InstanceOperationResponse response) {
+        responseList.add(response);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        InstanceOperationListResponse that = (InstanceOperationListResponse) o;
+
+        return !(responseList != null ? !responseList.equals(that.responseList) : that.responseList != null);
+    }
+
+    @Override
+    public int hashCode() {
+        return responseList != null ? responseList.hashCode() : 0;
+    }
+}
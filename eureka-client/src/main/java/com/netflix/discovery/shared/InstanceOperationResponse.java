@@ -0,0 +1,53 @@
+package com.netflix.discovery.shared;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.netflix.appinfo.InstanceInfo;
+
+/**
+ * The result of a single {@link InstanceOperation}, with the HTTP status code the corresponding request to the
+ * <tt>apps</tt> resource would have returned. A heartbeat answered with a newer instance from the server carries
+ * that instance.
+ */
+public class InstanceOperationResponse {
+
+    private final int statusCode;
+    private final InstanceInfo responseEntity;
+
+    @JsonCreator
+    public InstanceOperationResponse(
+            @JsonProperty("statusCode") int statusCode,
+            @JsonProperty("responseEntity") InstanceInfo responseEntity) {
+        this.statusCode = statusCode;
+        this.responseEntity = responseEntity;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public InstanceInfo getResponseEntity() {
+        return responseEntity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        InstanceOperationResponse that = (InstanceOperationResponse) o;
+
+        if (statusCode != that.statusCode)
+            return false;
+        return !(responseEntity != null ? !responseEntity.equals(that.responseEntity) : that.responseEntity != null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = statusCode;
+        result = 31 * result + (responseEntity != null ? responseEntity.hashCode() : 0);
+        return result;
+    }
+}
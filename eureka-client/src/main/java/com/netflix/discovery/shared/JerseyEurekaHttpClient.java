@@ -212,6 +212,34 @@ public abstract class JerseyEurekaHttpClient implements EurekaHttpClient {
         }
     }
 
+    @Override
+    public HttpResponse<InstanceOperationListResponse> submitInstanceOperations(InstanceOperationList operations) {
+        String urlPath = "instances/batch";
+        ClientResponse response = null;
+        try {
+            Builder requestBuilder = getJerseyApacheClient().resource(serviceUrl).path(urlPath).getRequestBuilder();
+            addExtraHeaders(requestBuilder);
+            response = requestBuilder
+                    .accept(MediaType.APPLICATION_JSON_TYPE)
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .post(ClientResponse.class, operations);
+
+            InstanceOperationListResponse batchResponse = null;
+            if (response.getStatus() == Status.OK.getStatusCode() && response.hasEntity()) {
+                batchResponse = response.getEntity(InstanceOperationListResponse.class);
+            }
+            return HttpResponse.responseWith(response.getStatus(), batchResponse);
+        } finally {
+            if (logger.isDebugEnabled()) {
+                logger.debug("[submitInstanceOperations] Jersey HTTP POST {} with {} operations; statusCode={}", urlPath,
+                        operations.getOperations().size(), response == null ? "N/A" : response.getStatus());
+            }
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
     @Override
     public void shutdown() {
         getJerseyApacheClient().destroy();
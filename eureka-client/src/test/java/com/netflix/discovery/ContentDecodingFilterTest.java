@@ -0,0 +1,98 @@
+package com.netflix.discovery;
+
+import javax.ws.rs.core.HttpHeaders;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DeflaterOutputStream;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandler;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.core.header.InBoundHeaders;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ContentDecodingFilterTest {
+
+    private static final String PAYLOAD = "{\"applications\":{}}";
+
+    private final EurekaClientConfig config = mock(EurekaClientConfig.class);
+    private final AtomicReference<String> acceptEncoding = new AtomicReference<String>();
+    private String contentEncoding = "deflate";
+    private byte[] content = deflate(PAYLOAD);
+    private Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new Client(new ClientHandler() {
+            @Override
+            public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+                acceptEncoding.set((String) request.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+                InBoundHeaders headers = new InBoundHeaders();
+                headers.putSingle(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+                return new ClientResponse(200, headers, new ByteArrayInputStream(content),
+                        client.getMessageBodyWorkers());
+            }
+        });
+        client.addFilter(new ContentDecodingFilter(config));
+    }
+
+    @Test
+    public void testAcceptedEncodingIsDecoded() throws Exception {
+        when(config.getAcceptedContentEncodings()).thenReturn("deflate,gzip");
+
+        ClientResponse response = client.resource("http://localhost/v2/apps").get(ClientResponse.class);
+
+        assertEquals("deflate, gzip", acceptEncoding.get());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(PAYLOAD, response.getEntity(String.class));
+    }
+
+    @Test
+    public void testGzipIsAcceptedByDefault() throws Exception {
+        when(config.getAcceptedContentEncodings()).thenReturn(null);
+
+        ClientResponse response = client.resource("http://localhost/v2/apps").get(ClientResponse.class);
+
+        assertEquals("gzip", acceptEncoding.get());
+        assertEquals("deflate", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void testLz4IsDecoded() throws Exception {
+        when(config.getAcceptedContentEncodings()).thenReturn("lz4,gzip");
+        contentEncoding = "lz4";
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        LZ4BlockOutputStream out = new LZ4BlockOutputStream(bos);
+        out.write(PAYLOAD.getBytes("UTF-8"));
+        out.close();
+        content = bos.toByteArray();
+
+        ClientResponse response = client.resource("http://localhost/v2/apps").get(ClientResponse.class);
+
+        assertEquals("lz4, gzip", acceptEncoding.get());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(PAYLOAD, response.getEntity(String.class));
+    }
+
+    private static byte[] deflate(String payload) {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DeflaterOutputStream out = new DeflaterOutputStream(bos);
+            out.write(payload.getBytes("UTF-8"));
+            out.close();
+            return bos.toByteArray();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -11,6 +11,8 @@ import com.netflix.appinfo.InstanceInfo;
 import com.netflix.appinfo.InstanceInfo.ActionType;
 import com.netflix.discovery.shared.Application;
 import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.shared.InstanceOperation;
+import com.netflix.discovery.shared.InstanceOperationList;
 import com.netflix.discovery.util.InstanceInfoGenerator;
 import org.junit.Test;
 
@@ -225,4 +227,23 @@ public class EurekaJacksonCodecTest {
 
         assertTrue(EurekaEntityComparators.equal(decoded, INSTANCE_INFO_1_A1));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testInstanceOperationListJacksonEncodeDecode() throws Exception {
+        InstanceOperationList original = new InstanceOperationList();
+        original.addOperation(InstanceOperation.register(INSTANCE_INFO_1_A1));
+        original.addOperation(InstanceOperation.heartbeat(INSTANCE_INFO_2_A1, InstanceInfo.InstanceStatus.OUT_OF_SERVICE));
+        original.addOperation(InstanceOperation.cancel(INSTANCE_INFO_1_A2.getAppName(), INSTANCE_INFO_1_A2.getId()));
+
+        // Encode
+        ByteArrayOutputStream captureStream = new ByteArrayOutputStream();
+        codec.writeTo(original, captureStream);
+        byte[] encoded = captureStream.toByteArray();
+
+        // Decode
+        InputStream source = new ByteArrayInputStream(encoded);
+        InstanceOperationList decoded = codec.readValue(InstanceOperationList.class, source);
+
+        assertTrue(decoded.equals(original));
+    }
+}
@@ -23,21 +23,27 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import com.google.common.base.Supplier;
 import com.google.common.cache.CacheBuilder;
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.appinfo.InstanceInfo.ActionType;
@@ -47,6 +53,7 @@ import com.netflix.discovery.shared.Application;
 import com.netflix.discovery.shared.Applications;
 import com.netflix.discovery.shared.Pair;
 import com.netflix.eureka.lease.Lease;
+import com.netflix.eureka.lease.LeaseExpiryWheel;
 import com.netflix.eureka.resources.ResponseCache;
 import com.netflix.eureka.util.AwsAsgUtil;
 import com.netflix.eureka.util.MeasuredRate;
@@ -75,7 +82,15 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
     private static final EurekaServerConfig EUREKA_CONFIG = EurekaServerConfigurationManager
             .getInstance().getConfiguration();
     private static final String[] EMPTY_STR_ARRAY = new String[0];
+    private static final long LEASE_EXPIRY_BUCKET_MS = 1000;
+    private static final int MAX_OPTIMISTIC_DELTA_ATTEMPTS = 5;
     private final ConcurrentHashMap<String, Map<String, Lease<InstanceInfo>>> registry = new ConcurrentHashMap<String, Map<String, Lease<InstanceInfo>>>();
+    private final RegistrySnapshot snapshot = new RegistrySnapshot(EUREKA_CONFIG.getRegistryChangeLogSize());
+    // instance id -> names of the apps holding a lease for it, updated under the monitor of the app's lease map
+    private final ConcurrentHashMap<String, Set<String>> instanceIdToAppNames = new ConcurrentHashMap<String, Set<String>>();
+    private final LeaseExpiryWheel<InstanceInfo> leaseExpiryWheel = new LeaseExpiryWheel<InstanceInfo>(LEASE_EXPIRY_BUCKET_MS);
+    // Set once the registry has been restored, changes made before are not logged
+    private volatile RegistryMutationLog mutationLog;
     private Timer evictionTimer = new Timer("Eureka-EvictionTimer", true);
     private volatile MeasuredRate renewsLastMin;
     protected ConcurrentMap<String, InstanceStatus> overriddenInstanceStatusMap = CacheBuilder
@@ -89,9 +104,7 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
     private Timer deltaRetentionTimer = new Timer("Eureka-DeltaRetentionTimer",
             true);
     private ConcurrentLinkedQueue<RecentlyChangedItem> recentlyChangedQueue = new ConcurrentLinkedQueue<RecentlyChangedItem>();
-    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-    private final Lock read = readWriteLock.readLock();
-    private final Lock write = readWriteLock.writeLock();
+    private final Segment[] segments = newSegments(EUREKA_CONFIG.getRegistrySegmentCount());
     protected Map<String, RemoteRegionRegistry> regionNameVSRemoteRegistry = new HashMap<String, RemoteRegionRegistry>();
     protected String[] allKnownRemoteRegions = EMPTY_STR_ARRAY;
     protected final Object lock = new Object();
@@ -123,7 +136,24 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
         recentRegisteredQueue.clear();
         recentlyChangedQueue.clear();
         registry.clear();
+        instanceIdToAppNames.clear();
+        leaseExpiryWheel.clear();
+        snapshot.clear();
+        RegistryMutationLog log = mutationLog;
+        if (log != null) {
+            log.appendClear();
+        }
+    }
+
+    /**
+     * Starts logging the changes to the registry to the given log, or stops logging if it is null.
+     */
+    void setMutationLog(RegistryMutationLog mutationLog) {
+        this.mutationLog = mutationLog;
+    }
 
+    RegistryMutationLog getMutationLog() {
+        return mutationLog;
     }
 
     // for server info use
@@ -138,8 +168,9 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
      * int, boolean)
      */
     public void register(InstanceInfo r, int leaseDuration, boolean isReplication) {
+        Segment segment = segmentFor(r.getAppName());
         try {
-            read.lock();
+            segment.startChange();
             Map<String, Lease<InstanceInfo>> gMap = registry.get(r
                     .getAppName());
             REGISTER.increment(isReplication);
@@ -185,7 +216,14 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
             if (existingLease != null) {
                 lease.setServiceUpTimestamp(existingLease.getServiceUpTimestamp());
             }
-            gMap.put(r.getId(), lease);
+            synchronized (gMap) {
+                Lease<InstanceInfo> replacedLease = gMap.put(r.getId(), lease);
+                if (replacedLease != null) {
+                    leaseExpiryWheel.remove(replacedLease);
+                }
+                leaseExpiryWheel.add(lease);
+                addToInstanceIdIndex(r.getId(), r.getAppName());
+            }
             synchronized (recentRegisteredQueue) {
                 recentRegisteredQueue.add(new Pair<Long, String>(System.currentTimeMillis(), r.getAppName()
                         + "(" + r.getId() + ")"));
@@ -223,11 +261,16 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
             r.setActionType(ActionType.ADDED);
             recentlyChangedQueue.add(new RecentlyChangedItem(lease));
             r.setLastUpdatedTimestamp();
+            publishApplication(r.getAppName(), lease);
             invalidateCache(r.getAppName(), r.getVIPAddress(), r.getSecureVipAddress());
+            RegistryMutationLog log = mutationLog;
+            if (log != null) {
+                log.appendRegister(r, leaseDuration);
+            }
             logger.info("Registered instance {}/{} with status {} (replication={})",
                     r.getAppName(), r.getId(), r.getStatus(), isReplication);
         } finally {
-            read.unlock();
+            segment.completeChange();
         }
     }
 
@@ -250,13 +293,19 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
      *         {@link AbstractInstanceRegistry} successfully, false otherwise.
      */
     public boolean cancel(String appName, String id, boolean isReplication) {
+        Segment segment = segmentFor(appName);
         try {
-            read.lock();
+            segment.startChange();
             CANCEL.increment(isReplication);
             Map<String, Lease<InstanceInfo>> gMap = registry.get(appName);
             Lease<InstanceInfo> leaseToCancel = null;
             if (gMap != null) {
-                leaseToCancel = gMap.remove(id);
+                synchronized (gMap) {
+                    leaseToCancel = gMap.remove(id);
+                    if (leaseToCancel != null) {
+                        removeFromInstanceIdIndex(id, appName);
+                    }
+                }
             }
             synchronized (recentCanceledQueue) {
                 recentCanceledQueue.add(new Pair<Long, String>(System.currentTimeMillis(), appName + "(" + id + ")"));
@@ -286,12 +335,17 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
                     vip = instanceInfo.getVIPAddress();
                     svip = instanceInfo.getSecureVipAddress();
                 }
+                publishApplication(appName, leaseToCancel);
                 invalidateCache(appName, vip, svip);
+                RegistryMutationLog log = mutationLog;
+                if (log != null) {
+                    log.appendCancel(appName, id);
+                }
                 logger.info("Cancelled instance {}/{} (replication={})", appName, id, isReplication);
                 return true;
             }
         } finally {
-            read.unlock();
+            segment.completeChange();
         }
     }
 
@@ -334,7 +388,14 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
                     logger.info(
                             "The instance status {} is different from overridden instance status {} for instance {}. "
                                     + "Hence setting the status to overridden status", args);
-                    instanceInfo.setStatus(overriddenInstanceStatus);
+                    Segment segment = segmentFor(appName);
+                    segment.startChange();
+                    try {
+                        instanceInfo.setStatus(overriddenInstanceStatus);
+                        publishApplication(appName, leaseToRenew);
+                    } finally {
+                        segment.completeChange();
+                    }
                 }
             }
             renewsLastMin.increment();
@@ -425,8 +486,9 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
     public boolean statusUpdate(String appName, String id,
                                 InstanceStatus newStatus, String lastDirtyTimestamp,
                                 boolean isReplication) {
+        Segment segment = segmentFor(appName);
         try {
-            read.lock();
+            segment.startChange();
             STATUS_UPDATE.increment(isReplication);
             Map<String, Lease<InstanceInfo>> gMap = registry.get(appName);
             Lease<InstanceInfo> lease = null;
@@ -471,12 +533,17 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
                     recentlyChangedQueue
                             .add(new RecentlyChangedItem(lease));
                     info.setLastUpdatedTimestamp();
+                    publishApplication(appName, lease);
                     invalidateCache(appName, info.getVIPAddress(), info.getSecureVipAddress());
+                    RegistryMutationLog log = mutationLog;
+                    if (log != null) {
+                        log.appendStatusUpdate(appName, id, newStatus, lastDirtyTimestamp);
+                    }
                 }
                 return true;
             }
         } finally {
-            read.unlock();
+            segment.completeChange();
         }
     }
 
@@ -500,8 +567,9 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
                                         InstanceStatus newStatus,
                                         String lastDirtyTimestamp,
                                         boolean isReplication) {
+        Segment segment = segmentFor(appName);
         try {
-            read.lock();
+            segment.startChange();
             STATUS_OVERRIDE_DELETE.increment(isReplication);
             Map<String, Lease<InstanceInfo>> gMap = registry.get(appName);
             Lease<InstanceInfo> lease = null;
@@ -539,17 +607,23 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
                     recentlyChangedQueue
                             .add(new RecentlyChangedItem(lease));
                     info.setLastUpdatedTimestamp();
+                    publishApplication(appName, lease);
                     invalidateCache(appName, info.getVIPAddress(), info.getSecureVipAddress());
+                    RegistryMutationLog log = mutationLog;
+                    if (log != null) {
+                        log.appendDeleteStatusOverride(appName, id, newStatus, lastDirtyTimestamp);
+                    }
                 }
                 return true;
             }
         } finally {
-            read.unlock();
+            segment.completeChange();
         }
     }
 
     /**
-     * Evicts everything in the instance registry that has expired, if expiry is enabled.
+     * Evicts everything in the instance registry that has expired, if expiry is enabled. Only the leases whose
+     * deadline has passed according to the {@link LeaseExpiryWheel} are looked at.
      *
      * @see com.netflix.eureka.lease.LeaseManager#evict()
      */
@@ -559,20 +633,19 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
             return;
         }
         logger.debug("Running the evict task");
-        for (Entry<String, Map<String, Lease<InstanceInfo>>> groupEntry : registry.entrySet()) {
-            Map<String, Lease<InstanceInfo>> leaseMap = groupEntry.getValue();
-            if (leaseMap != null) {
-                for (Entry<String, Lease<InstanceInfo>> leaseEntry : leaseMap.entrySet()) {
-                    Lease<InstanceInfo> lease = leaseEntry.getValue();
-                    if (lease.isExpired() && lease.getHolder() != null) {
-                        String appName = lease.getHolder().getAppName();
-                        String id = lease.getHolder().getId();
-                        EXPIRED.increment();
-                        logger.warn("DS: Registry: expired lease for "
-                                + appName + " - " + id);
-                        cancel(appName, id, false);
-                    }
+        for (Lease<InstanceInfo> lease : leaseExpiryWheel.pollExpired()) {
+            if (lease.getHolder() != null) {
+                String appName = lease.getHolder().getAppName();
+                String id = lease.getHolder().getId();
+                Map<String, Lease<InstanceInfo>> leaseMap = registry.get(appName);
+                if (leaseMap == null || leaseMap.get(id) != lease) {
+                    // Already cancelled or replaced by a new registration
+                    continue;
                 }
+                EXPIRED.increment();
+                logger.warn("DS: Registry: expired lease for "
+                        + appName + " - " + id);
+                cancel(appName, id, false);
             }
         }
     }
@@ -675,7 +748,8 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
      *                      included.
      *
      * @return The applications with instances from the passed remote regions as well as local region. The instances
-     * from remote regions can be only for certain whitelisted apps as explained above.
+     * from remote regions can be only for certain whitelisted apps as explained above. If no remote region is
+     * requested, this is the shared {@link RegistrySnapshot} view which must not be modified.
      */
     public Applications getApplicationsFromMultipleRegions(String[] remoteRegions) {
 
@@ -689,50 +763,98 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
         } else {
             GET_ALL_CACHE_MISS.increment();
         }
-        Applications apps = new Applications();
-        apps.setVersion(1L);
-        for (Entry<String, Map<String, Lease<InstanceInfo>>> entry : registry.entrySet()) {
-            Application app = null;
+        Applications localApps = snapshot.getApplications();
+        if (!includeRemoteRegion) {
+            return localApps;
+        }
 
-            if (entry.getValue() != null) {
-                for (Entry<String, Lease<InstanceInfo>> stringLeaseEntry : entry.getValue().entrySet()) {
-                    Lease<InstanceInfo> lease = stringLeaseEntry.getValue();
-                    if (app == null) {
-                        app = new Application(lease.getHolder().getAppName());
+        // The local applications are shared with other readers, so the ones that receive remote
+        // instances are copied before they are merged.
+        Map<String, Application> mergedApps = new HashMap<String, Application>();
+        for (String remoteRegion : remoteRegions) {
+            RemoteRegionRegistry remoteRegistry = regionNameVSRemoteRegistry.get(remoteRegion);
+            if (null != remoteRegistry) {
+                Applications remoteApps = remoteRegistry.getApplications();
+                for (Application application : remoteApps.getRegisteredApplications()) {
+                    if (shouldFetchFromRemoteRegistry(application.getName(), remoteRegion)) {
+                        logger.info("Application {}  fetched from the remote region {}",
+                                application.getName(), remoteRegion);
+
+                        Application appInstanceTillNow = mergedApps.get(application.getName());
+                        if (appInstanceTillNow == null) {
+                            appInstanceTillNow = new Application(application.getName());
+                            Application localApp = localApps.getRegisteredApplications(application.getName());
+                            if (localApp != null) {
+                                for (InstanceInfo instanceInfo : localApp.getInstancesAsIsFromEureka()) {
+                                    appInstanceTillNow.addInstance(instanceInfo);
+                                }
+                            }
+                            mergedApps.put(application.getName(), appInstanceTillNow);
+                        }
+                        for (InstanceInfo instanceInfo : application.getInstances()) {
+                            appInstanceTillNow.addInstance(instanceInfo);
+                        }
+                    } else {
+                        logger.debug("Application {} not fetched from the remote region {} as there exists a "
+                                        + "whitelist and this app is not in the whitelist.",
+                                application.getName(), remoteRegion);
                     }
-                    app.addInstance(decorateInstanceInfo(lease));
                 }
+            } else {
+                logger.warn("No remote registry available for the remote region {}", remoteRegion);
             }
-            if (app != null) {
-                apps.addApplication(app);
+        }
+
+        Applications apps = new Applications();
+        apps.setVersion(localApps.getVersion());
+        for (Application localApp : localApps.getRegisteredApplications()) {
+            if (!mergedApps.containsKey(localApp.getName())) {
+                apps.addApplication(localApp);
             }
         }
-        if (includeRemoteRegion) {
-            for (String remoteRegion : remoteRegions) {
-                RemoteRegionRegistry remoteRegistry = regionNameVSRemoteRegistry.get(remoteRegion);
-                if (null != remoteRegistry) {
-                    Applications remoteApps = remoteRegistry.getApplications();
-                    for (Application application : remoteApps.getRegisteredApplications()) {
-                        if (shouldFetchFromRemoteRegistry(application.getName(), remoteRegion)) {
-                            logger.info("Application {}  fetched from the remote region {}",
-                                    application.getName(), remoteRegion);
-
-                            Application appInstanceTillNow = apps.getRegisteredApplications(application.getName());
-                            if (appInstanceTillNow == null) {
-                                appInstanceTillNow = new Application(application.getName());
-                                apps.addApplication(appInstanceTillNow);
-                            }
-                            for (InstanceInfo instanceInfo : application.getInstances()) {
-                                appInstanceTillNow.addInstance(instanceInfo);
+        for (Application mergedApp : mergedApps.values()) {
+            apps.addApplication(mergedApp);
+        }
+        apps.setAppsHashCode(getReconcileHashCode(remoteRegions));
+        return apps;
+    }
+
+    /**
+     * Gets the instances having the given VIP address, grouped by application. The local instances come from
+     * the VIP index of the {@link RegistrySnapshot}. If falling back to other regions is allowed, the instances
+     * of the remote applications that have no local instances are included as well.
+     *
+     * @param vipAddress the VIP address to look for.
+     * @param secure true to look for a secure VIP address, false for a regular one.
+     * @return the applications holding only the instances that have the VIP address.
+     */
+    public Applications getApplicationsByVipAddress(String vipAddress, boolean secure) {
+        Applications apps = new Applications();
+        for (Application app : snapshot.getApplicationsByVipAddress(vipAddress, secure)) {
+            apps.addApplication(app);
+        }
+        if (!EUREKA_CONFIG.disableTransparentFallbackToOtherRegion()) {
+            Set<String> remoteAppNames = new HashSet<String>();
+            for (RemoteRegionRegistry remoteRegistry : this.regionNameVSRemoteRegistry.values()) {
+                for (Application application : remoteRegistry.getApplications().getRegisteredApplications()) {
+                    if (snapshot.getApplication(application.getName()) != null
+                            || !remoteAppNames.add(application.getName())) {
+                        continue;
+                    }
+                    Application vipApp = null;
+                    for (InstanceInfo instanceInfo : application.getInstances()) {
+                        String vipAddresses = secure ? instanceInfo.getSecureVipAddress() : instanceInfo.getVIPAddress();
+                        if (vipAddresses != null
+                                && Arrays.asList(snapshot.splitVipAddresses(vipAddresses)).contains(vipAddress)) {
+                            if (vipApp == null) {
+                                vipApp = new Application(application.getName());
                             }
-                        } else {
-                            logger.debug("Application {} not fetched from the remote region {} as there exists a "
-                                            + "whitelist and this app is not in the whitelist.",
-                                    application.getName(), remoteRegion);
+                            vipApp.addInstance(instanceInfo);
                         }
                     }
-                } else {
-                    logger.warn("No remote registry available for the remote region {}", remoteRegion);
+                    if (vipApp != null) {
+                        apps.addApplication(vipApp);
+                    }
                 }
             }
         }
@@ -764,37 +886,23 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
     @Deprecated
     public Applications getApplications(boolean includeRemoteRegion) {
         GET_ALL_CACHE_MISS.increment();
+        Applications localApps = snapshot.getApplications();
+        if (!includeRemoteRegion) {
+            return localApps;
+        }
         Applications apps = new Applications();
-        apps.setVersion(1L);
-        for (Entry<String, Map<String, Lease<InstanceInfo>>> entry : registry.entrySet()) {
-            Application app = null;
-
-            if (entry.getValue() != null) {
-                for (Entry<String, Lease<InstanceInfo>> stringLeaseEntry : entry.getValue().entrySet()) {
-
-                    Lease<InstanceInfo> lease = stringLeaseEntry.getValue();
-
-                    if (app == null) {
-                        app = new Application(lease.getHolder().getAppName());
-                    }
-
-                    app.addInstance(decorateInstanceInfo(lease));
-                }
-            }
-            if (app != null) {
-                apps.addApplication(app);
-            }
+        apps.setVersion(localApps.getVersion());
+        for (Application localApp : localApps.getRegisteredApplications()) {
+            apps.addApplication(localApp);
         }
-        if (includeRemoteRegion) {
-            for (RemoteRegionRegistry remoteRegistry : this.regionNameVSRemoteRegistry.values()) {
-                Applications applications = remoteRegistry.getApplications();
-                for (Application application : applications
-                        .getRegisteredApplications()) {
-                    Application appInLocalRegistry = apps
-                            .getRegisteredApplications(application.getName());
-                    if (appInLocalRegistry == null) {
-                        apps.addApplication(application);
-                    }
+        for (RemoteRegionRegistry remoteRegistry : this.regionNameVSRemoteRegistry.values()) {
+            Applications applications = remoteRegistry.getApplications();
+            for (Application application : applications
+                    .getRegisteredApplications()) {
+                Application appInLocalRegistry = apps
+                        .getRegisteredApplications(application.getName());
+                if (appInLocalRegistry == null) {
+                    apps.addApplication(application);
                 }
             }
         }
@@ -817,56 +925,58 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
     @Deprecated
     public Applications getApplicationDeltas() {
         GET_ALL_CACHE_MISS_DELTA.increment();
-        Applications apps = new Applications();
-        apps.setVersion(ResponseCache.getVersionDelta().get());
-        Map<String, Application> applicationInstancesMap = new HashMap<String, Application>();
-        try {
-            write.lock();
-            Iterator<RecentlyChangedItem> iter = this.recentlyChangedQueue.iterator();
-            logger.debug("The number of elements in the delta queue is :"
-                    + this.recentlyChangedQueue.size());
-            while (iter.hasNext()) {
-                Lease<InstanceInfo> lease = iter.next().getLeaseInfo();
-                InstanceInfo instanceInfo = lease.getHolder();
-                Object[] args = {instanceInfo.getId(),
-                        instanceInfo.getStatus().name(),
-                        instanceInfo.getActionType().name()};
-                logger.debug(
-                        "The instance id %s is found with status %s and actiontype %s",
-                        args);
-                Application app = applicationInstancesMap.get(instanceInfo
-                        .getAppName());
-                if (app == null) {
-                    app = new Application(instanceInfo.getAppName());
-                    applicationInstancesMap.put(instanceInfo.getAppName(), app);
-                    apps.addApplication(app);
+        return generateDelta(new Supplier<Applications>() {
+            @Override
+            public Applications get() {
+                Applications apps = new Applications();
+                apps.setVersion(ResponseCache.getVersionDelta().get());
+                Map<String, Application> applicationInstancesMap = new HashMap<String, Application>();
+                Iterator<RecentlyChangedItem> iter = recentlyChangedQueue.iterator();
+                logger.debug("The number of elements in the delta queue is :"
+                        + recentlyChangedQueue.size());
+                while (iter.hasNext()) {
+                    Lease<InstanceInfo> lease = iter.next().getLeaseInfo();
+                    InstanceInfo instanceInfo = lease.getHolder();
+                    Object[] args = {instanceInfo.getId(),
+                            instanceInfo.getStatus().name(),
+                            instanceInfo.getActionType().name()};
+                    logger.debug(
+                            "The instance id %s is found with status %s and actiontype %s",
+                            args);
+                    Application app = applicationInstancesMap.get(instanceInfo
+                            .getAppName());
+                    if (app == null) {
+                        app = new Application(instanceInfo.getAppName());
+                        applicationInstancesMap.put(instanceInfo.getAppName(), app);
+                        apps.addApplication(app);
+                    }
+                    app.addInstance(decorateInstanceInfo(lease));
                 }
-                app.addInstance(decorateInstanceInfo(lease));
-            }
 
-            boolean disableTransparentFallback = EUREKA_CONFIG.disableTransparentFallbackToOtherRegion();
+                boolean disableTransparentFallback = EUREKA_CONFIG.disableTransparentFallbackToOtherRegion();
 
-            if (!disableTransparentFallback) {
-                Applications allAppsInLocalRegion = getApplications(false);
+                if (!disableTransparentFallback) {
+                    Applications allAppsInLocalRegion = snapshot.getApplications();
 
-                for (RemoteRegionRegistry remoteRegistry : this.regionNameVSRemoteRegistry.values()) {
-                    Applications applications = remoteRegistry.getApplicationDeltas();
-                    for (Application application : applications.getRegisteredApplications()) {
-                        Application appInLocalRegistry =
-                                allAppsInLocalRegion.getRegisteredApplications(application.getName());
-                        if (appInLocalRegistry == null) {
-                            apps.addApplication(application);
+                    for (RemoteRegionRegistry remoteRegistry : regionNameVSRemoteRegistry.values()) {
+                        Applications applications = remoteRegistry.getApplicationDeltas();
+                        if (null == applications) {
+                            continue;
+                        }
+                        for (Application application : applications.getRegisteredApplications()) {
+                            Application appInLocalRegistry =
+                                    allAppsInLocalRegion.getRegisteredApplications(application.getName());
+                            if (appInLocalRegistry == null) {
+                                apps.addApplication(application);
+                            }
                         }
                     }
                 }
-            }
 
-            Applications allApps = getApplications(!disableTransparentFallback);
-            apps.setAppsHashCode(allApps.getReconcileHashCode());
-            return apps;
-        } finally {
-            write.unlock();
-        }
+                apps.setAppsHashCode(getReconcileHashCode(!disableTransparentFallback));
+                return apps;
+            }
+        });
     }
 
     /**
@@ -888,11 +998,11 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
      * not exist locally or in remote regions.
      */
     public Applications getApplicationDeltasFromMultipleRegions(String[] remoteRegions) {
-        if (null == remoteRegions) {
-            remoteRegions = allKnownRemoteRegions; // null means all remote regions.
-        }
+        final String[] regions = null == remoteRegions
+                ? allKnownRemoteRegions // null means all remote regions.
+                : remoteRegions;
 
-        boolean includeRemoteRegion = remoteRegions.length != 0;
+        final boolean includeRemoteRegion = regions.length != 0;
 
         if (includeRemoteRegion) {
             GET_ALL_WITH_REMOTE_REGIONS_CACHE_MISS_DELTA.increment();
@@ -900,61 +1010,298 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
             GET_ALL_CACHE_MISS_DELTA.increment();
         }
 
-        Applications apps = new Applications();
-        apps.setVersion(ResponseCache.getVersionDeltaWithRegions().get());
-        Map<String, Application> applicationInstancesMap = new HashMap<String, Application>();
-        try {
-            write.lock();
-            Iterator<RecentlyChangedItem> iter = this.recentlyChangedQueue.iterator();
-            logger.debug("The number of elements in the delta queue is :" + this.recentlyChangedQueue.size());
-            while (iter.hasNext()) {
-                Lease<InstanceInfo> lease = iter.next().getLeaseInfo();
-                InstanceInfo instanceInfo = lease.getHolder();
-                Object[] args = {instanceInfo.getId(),
-                        instanceInfo.getStatus().name(),
-                        instanceInfo.getActionType().name()};
-                logger.debug(
-                        "The instance id %s is found with status %s and actiontype %s",
-                        args);
-                Application app = applicationInstancesMap.get(instanceInfo
-                        .getAppName());
-                if (app == null) {
-                    app = new Application(instanceInfo.getAppName());
-                    applicationInstancesMap.put(instanceInfo.getAppName(), app);
-                    apps.addApplication(app);
+        return generateDelta(new Supplier<Applications>() {
+            @Override
+            public Applications get() {
+                Applications apps = new Applications();
+                apps.setVersion(ResponseCache.getVersionDeltaWithRegions().get());
+                Map<String, Application> applicationInstancesMap = new HashMap<String, Application>();
+                Iterator<RecentlyChangedItem> iter = recentlyChangedQueue.iterator();
+                logger.debug("The number of elements in the delta queue is :" + recentlyChangedQueue.size());
+                while (iter.hasNext()) {
+                    Lease<InstanceInfo> lease = iter.next().getLeaseInfo();
+                    InstanceInfo instanceInfo = lease.getHolder();
+                    Object[] args = {instanceInfo.getId(),
+                            instanceInfo.getStatus().name(),
+                            instanceInfo.getActionType().name()};
+                    logger.debug(
+                            "The instance id %s is found with status %s and actiontype %s",
+                            args);
+                    Application app = applicationInstancesMap.get(instanceInfo
+                            .getAppName());
+                    if (app == null) {
+                        app = new Application(instanceInfo.getAppName());
+                        applicationInstancesMap.put(instanceInfo.getAppName(), app);
+                        apps.addApplication(app);
+                    }
+                    app.addInstance(decorateInstanceInfo(lease));
                 }
-                app.addInstance(decorateInstanceInfo(lease));
-            }
 
-            if (includeRemoteRegion) {
-                for (String remoteRegion : remoteRegions) {
-                    RemoteRegionRegistry remoteRegistry = regionNameVSRemoteRegistry.get(remoteRegion);
-                    if (null != remoteRegistry) {
-                        Applications remoteAppsDelta = remoteRegistry.getApplicationDeltas();
-                        if (null != remoteAppsDelta) {
-                            for (Application application : remoteAppsDelta.getRegisteredApplications()) {
-                                if (shouldFetchFromRemoteRegistry(application.getName(), remoteRegion)) {
-                                    Application appInstanceTillNow =
-                                            apps.getRegisteredApplications(application.getName());
-                                    if (appInstanceTillNow == null) {
-                                        appInstanceTillNow = new Application(application.getName());
-                                        apps.addApplication(appInstanceTillNow);
-                                    }
-                                    for (InstanceInfo instanceInfo : application.getInstances()) {
-                                        appInstanceTillNow.addInstance(instanceInfo);
+                if (includeRemoteRegion) {
+                    for (String remoteRegion : regions) {
+                        RemoteRegionRegistry remoteRegistry = regionNameVSRemoteRegistry.get(remoteRegion);
+                        if (null != remoteRegistry) {
+                            Applications remoteAppsDelta = remoteRegistry.getApplicationDeltas();
+                            if (null != remoteAppsDelta) {
+                                for (Application application : remoteAppsDelta.getRegisteredApplications()) {
+                                    if (shouldFetchFromRemoteRegistry(application.getName(), remoteRegion)) {
+                                        Application appInstanceTillNow =
+                                                apps.getRegisteredApplications(application.getName());
+                                        if (appInstanceTillNow == null) {
+                                            appInstanceTillNow = new Application(application.getName());
+                                            apps.addApplication(appInstanceTillNow);
+                                        }
+                                        for (InstanceInfo instanceInfo : application.getInstances()) {
+                                            appInstanceTillNow.addInstance(instanceInfo);
+                                        }
                                     }
                                 }
                             }
                         }
                     }
                 }
+
+                apps.setAppsHashCode(getReconcileHashCode(regions));
+                return apps;
+            }
+        });
+    }
+
+    /**
+     * Gets the registry version of the local region, which identifies the last change made to it.
+     */
+    public long getRegistryVersion() {
+        return snapshot.getRegistryVersion();
+    }
+
+    /**
+     * Checks whether the full registry served to the clients that do not ask for remote regions only holds the
+     * local region, so that these clients can be served the changes since their registry version. Unless
+     * falling back to other regions is disabled, that registry also holds the applications of the remote regions
+     * that have no local instances, which these changes and their reconcile hash code leave out.
+     *
+     * @see #getApplications()
+     * @see #getApplicationDeltasSince(long)
+     */
+    public boolean isFullRegistryLocalOnly() {
+        return EUREKA_CONFIG.disableTransparentFallbackToOtherRegion() || regionNameVSRemoteRegistry.isEmpty();
+    }
+
+    /**
+     * Gets the changes made to the local region after the given registry version, as returned with a previous
+     * full registry or delta. Unlike {@link #getApplicationDeltasFromMultipleRegions(String[])}, every change is
+     * returned exactly once and an instance that changed several times is returned once with its latest state.
+     *
+     * @param registryVersion the registry version the client is current with.
+     * @return the changes with the registry version they bring the client to, or <code>null</code> if the
+     * changes after the given version are not retained anymore and the full registry has to be fetched.
+     */
+    public Applications getApplicationDeltasSince(final long registryVersion) {
+        GET_ALL_CACHE_MISS_DELTA.increment();
+        return generateDelta(new Supplier<Applications>() {
+            // The registry version travels in the versions__delta field, which only has deprecated accessors
+            @SuppressWarnings("deprecation")
+            @Override
+            public Applications get() {
+                long currentVersion = snapshot.getRegistryVersion();
+                List<Lease<InstanceInfo>> changedLeases = snapshot.getChangesSince(registryVersion);
+                if (changedLeases == null) {
+                    return null;
+                }
+                Map<String, Map<String, Lease<InstanceInfo>>> latestLeases =
+                        new LinkedHashMap<String, Map<String, Lease<InstanceInfo>>>();
+                for (Lease<InstanceInfo> lease : changedLeases) {
+                    InstanceInfo instanceInfo = lease.getHolder();
+                    Map<String, Lease<InstanceInfo>> appLeases = latestLeases.get(instanceInfo.getAppName());
+                    if (appLeases == null) {
+                        appLeases = new LinkedHashMap<String, Lease<InstanceInfo>>();
+                        latestLeases.put(instanceInfo.getAppName(), appLeases);
+                    }
+                    appLeases.put(instanceInfo.getId(), lease);
+                }
+
+                Applications apps = new Applications();
+                apps.setVersion(currentVersion);
+                for (Entry<String, Map<String, Lease<InstanceInfo>>> entry : latestLeases.entrySet()) {
+                    Application app = new Application(entry.getKey());
+                    for (Lease<InstanceInfo> lease : entry.getValue().values()) {
+                        app.addInstance(decorateInstanceInfo(lease));
+                    }
+                    apps.addApplication(app);
+                }
+                apps.setAppsHashCode(snapshot.getReconcileHashCode());
+                return apps;
+            }
+        });
+    }
+
+    /**
+     * Gets the reconcile hash code of {@link #getApplicationsFromMultipleRegions(String[])} from the instance
+     * counts kept by the {@link RegistrySnapshot}, so that only the instances of the remote regions are looked at.
+     */
+    private String getReconcileHashCode(String[] remoteRegions) {
+        if (null == remoteRegions || remoteRegions.length == 0) {
+            return snapshot.getReconcileHashCode();
+        }
+        TreeMap<String, AtomicInteger> instanceCountMap = new TreeMap<String, AtomicInteger>();
+        snapshot.populateInstanceCountMap(instanceCountMap);
+        for (String remoteRegion : remoteRegions) {
+            RemoteRegionRegistry remoteRegistry = regionNameVSRemoteRegistry.get(remoteRegion);
+            if (null != remoteRegistry) {
+                for (Application application : remoteRegistry.getApplications().getRegisteredApplications()) {
+                    if (shouldFetchFromRemoteRegistry(application.getName(), remoteRegion)) {
+                        populateInstanceCountMap(application, instanceCountMap);
+                    }
+                }
             }
+        }
+        return Applications.getReconcileHashCode(instanceCountMap);
+    }
+
+    /**
+     * Gets the reconcile hash code of {@link #getApplications(boolean)} from the instance counts kept by the
+     * {@link RegistrySnapshot}, so that only the instances of the remote regions are looked at.
+     */
+    private String getReconcileHashCode(boolean includeRemoteRegion) {
+        if (!includeRemoteRegion) {
+            return snapshot.getReconcileHashCode();
+        }
+        TreeMap<String, AtomicInteger> instanceCountMap = new TreeMap<String, AtomicInteger>();
+        snapshot.populateInstanceCountMap(instanceCountMap);
+        Set<String> remoteAppNames = new HashSet<String>();
+        for (RemoteRegionRegistry remoteRegistry : this.regionNameVSRemoteRegistry.values()) {
+            for (Application application : remoteRegistry.getApplications().getRegisteredApplications()) {
+                if (snapshot.getApplication(application.getName()) == null
+                        && remoteAppNames.add(application.getName())) {
+                    populateInstanceCountMap(application, instanceCountMap);
+                }
+            }
+        }
+        return Applications.getReconcileHashCode(instanceCountMap);
+    }
+
+    private static void populateInstanceCountMap(Application application,
+                                                 TreeMap<String, AtomicInteger> instanceCountMap) {
+        for (InstanceInfo info : application.getInstances()) {
+            AtomicInteger instanceCount = instanceCountMap.get(info.getStatus().name());
+            if (instanceCount == null) {
+                instanceCount = new AtomicInteger(0);
+                instanceCountMap.put(info.getStatus().name(), instanceCount);
+            }
+            instanceCount.incrementAndGet();
+        }
+    }
 
-            Applications allApps = getApplicationsFromMultipleRegions(remoteRegions);
-            apps.setAppsHashCode(allApps.getReconcileHashCode());
-            return apps;
+    /**
+     * Generates a delta together with the reconcile hash code of the registry it brings the client to, without
+     * blocking registry changes.
+     *
+     * <p>
+     * A delta and a hash code that straddle a change do not match on the client and make it fetch the full
+     * registry, so the delta is generated again if a change was in progress or started meanwhile in any
+     * segment. If the registry keeps changing, the last attempt blocks the changes in all segments while it runs.
+     * It waits for the changes in progress at most {@link EurekaServerConfig#getRegistryDeltaLockTimeoutMs()},
+     * and the delta is generated without blocking the changes once that wait times out.
+     * </p>
+     */
+    private Applications generateDelta(Supplier<Applications> deltaGenerator) {
+        long[] started = new long[segments.length];
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_DELTA_ATTEMPTS; attempt++) {
+            if (noChangesInProgress(started)) {
+                Applications delta = deltaGenerator.get();
+                if (noChangesStartedSince(started)) {
+                    return delta;
+                }
+            }
+            Thread.yield();
+        }
+        DELTA_WITH_BLOCKED_CHANGES.increment();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(EUREKA_CONFIG.getRegistryDeltaLockTimeoutMs());
+        int locked = 0;
+        try {
+            // Always in the same order, so that concurrent deltas do not hold the locks the other one waits for
+            while (locked < segments.length
+                    && segments[locked].write.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                locked++;
+            }
+            if (locked == segments.length) {
+                return deltaGenerator.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
-            write.unlock();
+            while (locked > 0) {
+                segments[--locked].write.unlock();
+            }
+        }
+        // A change outlasted the wait; rather than block the segments locked so far, the delta may straddle it
+        logger.warn("Generating the delta while registry changes are in progress, after waiting {} ms for them",
+                EUREKA_CONFIG.getRegistryDeltaLockTimeoutMs());
+        DELTA_WITH_UNSETTLED_CHANGES.increment();
+        return deltaGenerator.get();
+    }
+
+    /**
+     * Records the number of changes started in every segment, if none of them is in progress.
+     */
+    private boolean noChangesInProgress(long[] started) {
+        for (int i = 0; i < segments.length; i++) {
+            started[i] = segments[i].changesStarted.get();
+            if (segments[i].changesCompleted.get() != started[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean noChangesStartedSince(long[] started) {
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].changesStarted.get() != started[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Segment segmentFor(String appName) {
+        int hash = appName == null ? 0 : appName.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    private static Segment[] newSegments(int segmentCount) {
+        int size = 1;
+        while (size < segmentCount) {
+            size <<= 1;
+        }
+        Segment[] segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment();
+        }
+        return segments;
+    }
+
+    /**
+     * A partition of the registry by application name. Changes to the applications of a segment share its read
+     * lock and its change counters, so changes in different segments neither contend on a lock nor on a counter.
+     * Only a delta that cannot be generated without blocking changes takes the write locks.
+     */
+    private static final class Segment {
+        private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+        private final Lock read = readWriteLock.readLock();
+        private final Lock write = readWriteLock.writeLock();
+        // Changes started and completed, letting deltas be generated without blocking the changes
+        private final AtomicLong changesStarted = new AtomicLong();
+        private final AtomicLong changesCompleted = new AtomicLong();
+
+        void startChange() {
+            read.lock();
+            changesStarted.incrementAndGet();
+        }
+
+        void completeChange() {
+            changesCompleted.incrementAndGet();
+            read.unlock();
         }
     }
 
@@ -1005,6 +1352,16 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
         return null;
     }
 
+    /**
+     * Checks if the lease of the given instance is still held, and was registered or renewed within the given
+     * number of milliseconds.
+     */
+    public boolean isLeaseRenewedWithin(String appName, String id, long periodMs) {
+        Map<String, Lease<InstanceInfo>> leaseMap = registry.get(appName);
+        Lease<InstanceInfo> lease = leaseMap == null ? null : leaseMap.get(id);
+        return lease != null && lease.getEvictionTimestamp() <= 0 && lease.isRenewedWithin(periodMs);
+    }
+
     /**
      * @deprecated Try {@link #getInstanceByAppAndId(String, String)} instead.
      *
@@ -1036,11 +1393,13 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
                                                boolean includeRemoteRegions) {
         List<InstanceInfo> list = new ArrayList<InstanceInfo>();
 
-        for (Iterator<Entry<String, Map<String, Lease<InstanceInfo>>>> iter = registry
-                .entrySet().iterator(); iter.hasNext(); ) {
-
-            Map<String, Lease<InstanceInfo>> leaseMap = iter.next().getValue();
-            if (leaseMap != null) {
+        Set<String> appNames = instanceIdToAppNames.get(id);
+        if (appNames != null) {
+            for (String appName : appNames) {
+                Map<String, Lease<InstanceInfo>> leaseMap = registry.get(appName);
+                if (leaseMap == null) {
+                    continue;
+                }
                 Lease<InstanceInfo> lease = leaseMap.get(id);
 
                 if (lease == null
@@ -1048,27 +1407,69 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
                     continue;
                 }
 
-                if (list == Collections.EMPTY_LIST) {
-                    list = new ArrayList<InstanceInfo>();
-                }
                 list.add(decorateInstanceInfo(lease));
             }
         }
         if (list.isEmpty() && includeRemoteRegions) {
             for (RemoteRegionRegistry remoteRegistry : this.regionNameVSRemoteRegistry.values()) {
-                for (Application application : remoteRegistry.getApplications()
-                        .getRegisteredApplications()) {
-                    InstanceInfo instanceInfo = application.getByInstanceId(id);
-                    if (instanceInfo != null) {
-                        list.add(instanceInfo);
-                        return list;
-                    }
+                List<InstanceInfo> remoteInstances = remoteRegistry.getInstancesById(id);
+                if (!remoteInstances.isEmpty()) {
+                    list.add(remoteInstances.get(0));
+                    return list;
                 }
             }
         }
         return list;
     }
 
+    private void addToInstanceIdIndex(String id, String appName) {
+        while (true) {
+            Set<String> current = instanceIdToAppNames.get(id);
+            if (current == null) {
+                if (instanceIdToAppNames.putIfAbsent(id, Collections.singleton(appName)) == null) {
+                    return;
+                }
+            } else if (current.contains(appName)) {
+                return;
+            } else {
+                Set<String> updated = new HashSet<String>(current);
+                updated.add(appName);
+                if (instanceIdToAppNames.replace(id, current, Collections.unmodifiableSet(updated))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void removeFromInstanceIdIndex(String id, String appName) {
+        while (true) {
+            Set<String> current = instanceIdToAppNames.get(id);
+            if (current == null || !current.contains(appName)) {
+                return;
+            } else if (current.size() == 1) {
+                if (instanceIdToAppNames.remove(id, current)) {
+                    return;
+                }
+            } else {
+                Set<String> updated = new HashSet<String>(current);
+                updated.remove(appName);
+                if (instanceIdToAppNames.replace(id, current, Collections.unmodifiableSet(updated))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the copy-on-write snapshot of the applications in the local region, which is updated on every
+     * registration, cancellation and status change.
+     *
+     * @return the registry snapshot.
+     */
+    public RegistrySnapshot getRegistrySnapshot() {
+        return snapshot;
+    }
+
     /**
      * Checks whether lease expiration is enabled.
      *
@@ -1076,6 +1477,47 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
      */
     public abstract boolean isLeaseExpirationEnabled();
 
+    /**
+     * Publishes a fresh copy of the given application to the {@link RegistrySnapshot}. The copy is built while
+     * holding the monitor of the application's lease map so that concurrent changes to the same application are
+     * published in order and the last published copy reflects all of them.
+     *
+     * @param changedLease the lease of the instance whose change is published.
+     */
+    private void publishApplication(String appName, Lease<InstanceInfo> changedLease) {
+        Map<String, Lease<InstanceInfo>> leaseMap = registry.get(appName);
+        if (leaseMap == null) {
+            snapshot.publish(appName, null, changedLease);
+            return;
+        }
+        synchronized (leaseMap) {
+            Application app = null;
+            for (Lease<InstanceInfo> lease : leaseMap.values()) {
+                if (app == null) {
+                    app = new Application(lease.getHolder().getAppName());
+                }
+                app.addInstance(copyForSnapshot(decorateInstanceInfo(lease)));
+            }
+            snapshot.publish(appName, app, changedLease);
+        }
+    }
+
+    /**
+     * Copies a registered instance for the {@link RegistrySnapshot}. The registered instance is changed in place,
+     * as its status or metadata are updated, and the copy keeps the published view from seeing these changes
+     * before they are published.
+     */
+    private static InstanceInfo copyForSnapshot(InstanceInfo info) {
+        InstanceInfo copy = new InstanceInfo(info);
+        Map<String, String> metadata = info.getMetadata();
+        if (metadata != null) {
+            new InstanceInfo.Builder(copy).setMetadata(metadata.isEmpty()
+                    ? Collections.<String, String>emptyMap()
+                    : new HashMap<String, String>(metadata));
+        }
+        return copy;
+    }
+
     private InstanceInfo decorateInstanceInfo(Lease<InstanceInfo> lease) {
         InstanceInfo info = lease.getHolder();
 
@@ -1246,8 +1688,12 @@ public abstract class AbstractInstanceRegistry implements InstanceRegistry {
                     r.getStatus(), r.getId());
             return r.getStatus();
         }
-        // Overrides are the status like OUT_OF_SERVICE and UP set by NAC
-        InstanceStatus overridden = overriddenInstanceStatusMap.get(r.getId());
+        // Overrides are the status like OUT_OF_SERVICE and UP set by NAC. They are always stored on the instance
+        // as well, so the map is only consulted for instances that have one, sparing renewals the lookup.
+        InstanceStatus overridden = null;
+        if (!InstanceStatus.UNKNOWN.equals(r.getOverriddenStatus())) {
+            overridden = overriddenInstanceStatusMap.get(r.getId());
+        }
         // If there are instance specific overrides, then they win - otherwise the ASG status
         if (overridden != null) {
             logger.debug("The instance specific override for instance {} and the value is {}",
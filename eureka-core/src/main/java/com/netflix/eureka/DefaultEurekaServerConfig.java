@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.Deflater;
 
 import com.netflix.config.ConfigurationManager;
 import com.netflix.config.DynamicBooleanProperty;
@@ -279,6 +280,84 @@ public class DefaultEurekaServerConfig implements EurekaServerConfig {
                 .get();
     }
 
+    @Override
+    public int getRegistryChangeLogSize() {
+        return configInstance.getIntProperty(
+                namespace + "registryChangeLogSize", 10000).get();
+    }
+
+    @Override
+    public int getRegistrySegmentCount() {
+        return configInstance.getIntProperty(
+                namespace + "registrySegmentCount", 16).get();
+    }
+
+    @Override
+    public long getRegistryDeltaLockTimeoutMs() {
+        return configInstance.getLongProperty(
+                namespace + "registryDeltaLockTimeoutMs", 100).get();
+    }
+
+    @Override
+    public String getRegistrySnapshotFile() {
+        return configInstance.getStringProperty(
+                namespace + "registrySnapshotFile", null).get();
+    }
+
+    @Override
+    public long getRegistrySnapshotIntervalMs() {
+        return configInstance.getLongProperty(
+                namespace + "registrySnapshotIntervalMs", (30 * 1000)).get();
+    }
+
+    @Override
+    public long getRegistrySnapshotMaxAgeMs() {
+        return configInstance.getLongProperty(
+                namespace + "registrySnapshotMaxAgeMs", (5 * 60 * 1000)).get();
+    }
+
+    @Override
+    public String getRegistryMutationLogDir() {
+        return configInstance.getStringProperty(
+                namespace + "registryMutationLogDir", null).get();
+    }
+
+    @Override
+    public long getRegistryMutationLogSegmentSizeBytes() {
+        return configInstance.getLongProperty(
+                namespace + "registryMutationLogSegmentSizeBytes", (64 * 1024 * 1024)).get();
+    }
+
+    @Override
+    public int getRegistryMutationLogQueueSize() {
+        return configInstance.getIntProperty(
+                namespace + "registryMutationLogQueueSize", 10000).get();
+    }
+
+    @Override
+    public boolean shouldSyncUpFromAllPeers() {
+        return configInstance.getBooleanProperty(
+                namespace + "syncUpFromAllPeers", false).get();
+    }
+
+    @Override
+    public long getSyncUpFromAllPeersTimeoutMs() {
+        return configInstance.getLongProperty(
+                namespace + "syncUpFromAllPeersTimeoutMs", (30 * 1000)).get();
+    }
+
+    @Override
+    public boolean shouldRepairPeerRegistries() {
+        return configInstance.getBooleanProperty(
+                namespace + "repairPeerRegistries", false).get();
+    }
+
+    @Override
+    public long getPeerRegistryRepairIntervalMs() {
+        return configInstance.getLongProperty(
+                namespace + "peerRegistryRepairIntervalMs", (60 * 1000)).get();
+    }
+
     @Override
     public long getEvictionIntervalTimerInMs() {
         return configInstance.getLongProperty(
@@ -315,12 +394,56 @@ public class DefaultEurekaServerConfig implements EurekaServerConfig {
                 namespace + "responseCacheUpdateIntervalMs", (30 * 1000)).get();
     }
 
+    @Override
+    public int getResponseCacheRefreshThreads() {
+        return configInstance.getIntProperty(
+                namespace + "responseCacheRefreshThreads", 2).get();
+    }
+
+    @Override
+    public boolean shouldKeepResponseCachePayloadsOffHeap() {
+        return configInstance.getBooleanProperty(
+                namespace + "responseCachePayloadsOffHeap", false).get();
+    }
+
+    @Override
+    public int getResponseCacheCompressionThreads() {
+        return configInstance.getIntProperty(
+                namespace + "responseCacheCompressionThreads", 2).get();
+    }
+
+    @Override
+    public long getResponseCacheCompressionWaitMs() {
+        return configInstance.getLongProperty(
+                namespace + "responseCacheCompressionWaitMs", 200).get();
+    }
+
+    @Override
+    public int getResponseCacheCompressionLevel(String keyName) {
+        int defaultLevel = configInstance.getIntProperty(
+                namespace + "responseCacheCompressionLevel", Deflater.DEFAULT_COMPRESSION).get();
+        return configInstance.getIntProperty(
+                namespace + "responseCacheCompressionLevel." + keyName, defaultLevel).get();
+    }
+
+    @Override
+    public String getResponseCacheContentEncodings() {
+        return configInstance.getStringProperty(
+                namespace + "responseCacheContentEncodings", "gzip").get();
+    }
+
     @Override
     public boolean shouldUseReadOnlyResponseCache() {
         return configInstance.getBooleanProperty(
                 namespace + "shouldUseReadOnlyResponseCache", true).get();
     }
 
+    @Override
+    public long getResponseCacheInvalidationWindowMs() {
+        return configInstance.getLongProperty(
+                namespace + "responseCacheInvalidationWindowMs", 0).get();
+    }
+
     @Override
     public boolean shouldDisableDelta() {
         return configInstance.getBooleanProperty(namespace + "disableDelta",
@@ -231,6 +231,160 @@ public interface EurekaServerConfig {
      */
     long getDeltaRetentionTimerIntervalInMs();
 
+    /**
+     * Get the number of most recent registry changes that are kept, so that clients can retrieve the changes
+     * made after the registry version they last saw. Clients whose version is older than that have to fetch
+     * the full registry.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return the number of registry changes kept.
+     */
+    int getRegistryChangeLogSize();
+
+    /**
+     * Get the number of segments the registry is partitioned into by application name. Every segment has its
+     * own lock and change counters, so that changes to applications in different segments do not contend.
+     * The number is rounded up to a power of two.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return the number of registry segments.
+     */
+    int getRegistrySegmentCount();
+
+    /**
+     * Get the time a delta waits at most for the changes in progress in all registry segments to complete, when
+     * the registry keeps changing while the delta is generated. The changes of a segment are blocked while the
+     * delta waits for it. If the wait times out, the delta is generated without blocking the changes, and the
+     * clients it does not match fetch the full registry.
+     *
+     * @return the time to wait in milliseconds.
+     */
+    long getRegistryDeltaLockTimeoutMs();
+
+    /**
+     * Get the file the local registry is periodically copied to, so that the server can restore its registry
+     * from it when it restarts instead of waiting for a full copy from its peers. No copy is kept if this is
+     * not set.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return the path of the registry snapshot file, or null.
+     */
+    String getRegistrySnapshotFile();
+
+    /**
+     * Get the time interval with which the local registry is copied to the
+     * {@link #getRegistrySnapshotFile() registry snapshot file}.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return time in milliseconds.
+     */
+    long getRegistrySnapshotIntervalMs();
+
+    /**
+     * Get the maximum age of a {@link #getRegistrySnapshotFile() registry snapshot file} the server restores
+     * its registry from on startup. Older copies are ignored, as most of the instances in them may be gone.
+     *
+     * @return time in milliseconds.
+     */
+    long getRegistrySnapshotMaxAgeMs();
+
+    /**
+     * Get the directory of the log the registrations, cancellations and status changes are appended to, so
+     * that a restarting server can replay the changes made after the last
+     * {@link #getRegistrySnapshotFile() registry snapshot}. The log is only kept if the registry snapshot file
+     * is set as well.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return the path of the registry mutation log directory, or null.
+     */
+    String getRegistryMutationLogDir();
+
+    /**
+     * Get the size of a segment of the {@link #getRegistryMutationLogDir() registry mutation log}, after which
+     * the log continues in a new segment.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return the segment size in bytes.
+     */
+    long getRegistryMutationLogSegmentSizeBytes();
+
+    /**
+     * Get the number of changes that can wait to be written to the
+     * {@link #getRegistryMutationLogDir() registry mutation log}. Changes beyond that are not logged, and are
+     * only kept on disk by the next registry snapshot.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return the maximum number of queued changes.
+     */
+    int getRegistryMutationLogQueueSize();
+
+    /**
+     * Checks whether the registry is copied from all peers at once on startup,
+     * instead of from the single server the embedded client fetches from. The
+     * instances of every peer are registered as soon as its registry arrives.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return true if the registry is copied from all peers in parallel, false otherwise.
+     */
+    boolean shouldSyncUpFromAllPeers();
+
+    /**
+     * Get the time to wait for the peers when {@link #shouldSyncUpFromAllPeers() copying the
+     * registry from all peers} on startup. The server stops waiting earlier if all peers answered.
+     *
+     * @return time in milliseconds.
+     */
+    long getSyncUpFromAllPeersTimeoutMs();
+
+    /**
+     * Checks whether the server periodically compares a digest of its registry with the digests of its
+     * peers, and replicates the instances a peer is missing or holds an older copy of. This repairs the
+     * registries of the peers after replication events were dropped.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return true if the registries of the peers are repaired, false otherwise.
+     */
+    boolean shouldRepairPeerRegistries();
+
+    /**
+     * Get the time interval with which the registries of the peers are
+     * {@link #shouldRepairPeerRegistries() repaired}.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return time in milliseconds.
+     */
+    long getPeerRegistryRepairIntervalMs();
+
     /**
      * Get the time interval with which the task that expires instances should
      * wake up and run.
@@ -272,12 +426,91 @@ public interface EurekaServerConfig {
 
     /**
      * Gets the time interval with which the payload cache of the client should
-     * be updated.
+     * be updated. Payloads invalidated by registry changes are updated as soon as
+     * they are invalidated; this interval only controls how often the payloads
+     * older than {@link #getResponseCacheAutoExpirationInSeconds()} are looked for.
      *
      * @return time in milliseconds.
      */
     long getResponseCacheUpdateIntervalMs();
 
+    /**
+     * Gets the number of threads updating the payload cache of the client with the payloads of the
+     * invalidated keys. The payloads of all applications and of their delta are updated first.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return the number of threads.
+     */
+    int getResponseCacheRefreshThreads();
+
+    /**
+     * Checks whether the payloads cached by the {@link com.netflix.eureka.resources.ResponseCache} are kept in
+     * direct buffers outside of the heap. This keeps the large and long lived payloads out of the old generation,
+     * which makes the garbage collection pauses shorter, and the buffers are reused as the payloads are replaced.
+     * The direct memory the JVM may use has to allow for all cached payloads.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return true if the payloads are kept outside of the heap, false otherwise.
+     */
+    boolean shouldKeepResponseCachePayloadsOffHeap();
+
+    /**
+     * Gets the number of threads compressing the payloads cached by the
+     * {@link com.netflix.eureka.resources.ResponseCache}. Requests for a payload which is not compressed yet
+     * wait for it up to {@link #getResponseCacheCompressionWaitMs()}. If set to 0, the payloads are compressed
+     * by the threads generating them.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return the number of threads.
+     */
+    int getResponseCacheCompressionThreads();
+
+    /**
+     * Gets the time, in milliseconds, a request accepting a compressed response waits for the cached payload
+     * to be compressed, if it is not yet. The payload is sent uncompressed if it is not compressed by then.
+     *
+     * @return time in milliseconds.
+     */
+    long getResponseCacheCompressionWaitMs();
+
+    /**
+     * Gets the <em>deflate</em> compression level, from 0 to 9, of the cached payloads of the given key.
+     * The key is either {@link com.netflix.eureka.resources.ResponseCache#ALL_APPS},
+     * {@link com.netflix.eureka.resources.ResponseCache#ALL_APPS_DELTA}, or the name of an application or of a
+     * VIP address. Keys with no level of their own use the level configured for all keys, or the default
+     * compression level of <em>deflate</em> if there is none.
+     *
+     * @param keyName
+     *            the name of the cache key.
+     * @return the compression level, or -1 for the default level.
+     */
+    int getResponseCacheCompressionLevel(String keyName);
+
+    /**
+     * Gets the content encodings the payloads cached by the {@link com.netflix.eureka.resources.ResponseCache}
+     * are kept in, as a comma separated list in the order the server prefers them. A payload is sent in the first
+     * encoding the client accepts. The encodings are either built in, <tt>gzip</tt>, <tt>deflate</tt> and
+     * <tt>lz4</tt>, or the class names of {@link com.netflix.eureka.resources.ContentEncoder} implementations.
+     * <tt>lz4</tt> requires the optional <em>lz4-java</em> library. Payloads are always kept in <tt>gzip</tt>
+     * encoding too, as older clients only accept it.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return the comma separated content encodings.
+     */
+    String getResponseCacheContentEncodings();
+
     /**
      * The {@link com.netflix.eureka.resources.ResponseCache} currently uses a two level caching
      * strategy to responses. A readWrite cache with an expiration policy, and a readonly cache
@@ -287,6 +520,21 @@ public interface EurekaServerConfig {
      */
     boolean shouldUseReadOnlyResponseCache();
 
+    /**
+     * Gets the time window within which the invalidations of the response cache are collected and applied
+     * together. Every registry change invalidates the payloads of its application, its VIP addresses and all
+     * applications, so a burst of changes, such as a replication batch, invalidates the same payloads many times
+     * over. Within the window each payload is invalidated once, at the price of serving payloads that are up to
+     * the window older. A value of 0 invalidates the payloads right away.
+     *
+     * <p>
+     * <em>The changes to this property are effective only after the server restarts.</em>
+     * </p>
+     *
+     * @return time in milliseconds.
+     */
+    long getResponseCacheInvalidationWindowMs();
+
     /**
      * Checks to see if the delta information can be served to client or not.
      * <p>
@@ -7,4 +7,10 @@ import com.netflix.appinfo.InstanceInfo;
  */
 public interface PeerAwareInstanceRegistry extends InstanceRegistry {
     void register(InstanceInfo info, boolean isReplication);
+
+    /**
+     * Checks if the lease of the given instance is still held, and was registered or renewed within the given
+     * number of milliseconds.
+     */
+    boolean isLeaseRenewedWithin(String appName, String id, long periodMs);
 }
@@ -16,14 +16,32 @@
 
 package com.netflix.eureka;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.ws.rs.core.Response.Status;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.appinfo.AmazonInfo;
 import com.netflix.appinfo.AmazonInfo.MetaDataKey;
 import com.netflix.appinfo.ApplicationInfoManager;
@@ -36,14 +54,22 @@ import com.netflix.discovery.DiscoveryManager;
 import com.netflix.discovery.EurekaClientConfig;
 import com.netflix.discovery.shared.Application;
 import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.shared.EurekaHttpClient.HttpResponse;
 import com.netflix.discovery.shared.LookupService;
+import com.netflix.discovery.shared.Pair;
 import com.netflix.eureka.cluster.PeerEurekaNode;
 import com.netflix.eureka.cluster.PeerEurekaNodes;
+import com.netflix.eureka.cluster.protocol.RegistryDigest;
+import com.netflix.eureka.cluster.protocol.RegistryDigestEntry;
+import com.netflix.eureka.cluster.protocol.RegistryDigestEntryList;
 import com.netflix.eureka.lease.Lease;
 import com.netflix.eureka.resources.ASGResource.ASGStatus;
 import com.netflix.eureka.util.MeasuredRate;
 import com.netflix.servo.DefaultMonitorRegistry;
 import com.netflix.servo.annotations.DataSourceType;
+import com.netflix.servo.monitor.BasicTimer;
+import com.netflix.servo.monitor.DynamicCounter;
+import com.netflix.servo.monitor.MonitorConfig;
 import com.netflix.servo.monitor.Monitors;
 import com.netflix.servo.monitor.Stopwatch;
 import org.slf4j.Logger;
@@ -86,6 +112,8 @@ public class PeerAwareInstanceRegistryImpl extends AbstractInstanceRegistry impl
 
     private static final int REGISTRY_SYNC_RETRY_MS = 30000;
 
+    private static final int MAX_REPAIRED_DIGEST_BUCKETS = 256;
+
     private static final Logger logger = LoggerFactory
             .getLogger(PeerAwareInstanceRegistryImpl.class);
 
@@ -124,10 +152,33 @@ public class PeerAwareInstanceRegistryImpl extends AbstractInstanceRegistry impl
     private Timer timer = new Timer(
             "ReplicaAwareInstanceRegistry - RenewalThresholdUpdater", true);
 
+    private final RegistrySnapshotFile registrySnapshotFile;
+    // Writes the registry snapshot off the shared timer, as a write of a large registry takes a while
+    private final ScheduledExecutorService registrySnapshotWriter;
+    private final File mutationLogDirectory;
+    // The registry is restored from disk only when the server starts
+    private boolean registryRestored;
+    // The digest of the local registry view it was computed from
+    private volatile Pair<Applications, RegistryDigest> registryDigest;
+
+    private final com.netflix.servo.monitor.Timer registrySyncTimer = Monitors.newTimer("registrySyncTime");
+    // The time the copy of the registry of each peer took, by the service URL of the peer
+    private final ConcurrentMap<String, com.netflix.servo.monitor.Timer> registrySyncPeerTimers =
+            new ConcurrentHashMap<String, com.netflix.servo.monitor.Timer>();
+
     private static final PeerAwareInstanceRegistryImpl instance = new PeerAwareInstanceRegistryImpl();
 
     PeerAwareInstanceRegistryImpl() {
         this.peerEurekaNodes = new PeerEurekaNodes(this, EUREKA_SERVER_CONFIG);
+        String registrySnapshotPath = EUREKA_SERVER_CONFIG.getRegistrySnapshotFile();
+        this.registrySnapshotFile = registrySnapshotPath == null ? null : new RegistrySnapshotFile(new File(registrySnapshotPath));
+        this.registrySnapshotWriter = registrySnapshotFile == null ? null : Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("ReplicaAwareInstanceRegistry - RegistrySnapshotWriter")
+                        .setDaemon(true)
+                        .build());
+        String mutationLogPath = EUREKA_SERVER_CONFIG.getRegistryMutationLogDir();
+        this.mutationLogDirectory = registrySnapshotFile == null || mutationLogPath == null ? null : new File(mutationLogPath);
 
         try {
             Monitors.registerObject(this);
@@ -150,6 +201,12 @@ public class PeerAwareInstanceRegistryImpl extends AbstractInstanceRegistry impl
     private void init() {
         peerEurekaNodes.start();
         scheduleRenewalThresholdUpdateTask();
+        if (registrySnapshotFile != null) {
+            scheduleRegistrySnapshotTask();
+        }
+        if (EUREKA_SERVER_CONFIG.shouldRepairPeerRegistries()) {
+            schedulePeerRegistryRepairTask();
+        }
     }
 
     /**
@@ -172,12 +229,379 @@ public class PeerAwareInstanceRegistryImpl extends AbstractInstanceRegistry impl
                 EUREKA_SERVER_CONFIG.getRenewalThresholdUpdateIntervalMs());
     }
 
+    /**
+     * Schedule the task that copies the local registry to the
+     * {@link EurekaServerConfig#getRegistrySnapshotFile() registry snapshot file} periodically.
+     * It runs on its own thread, so that a slow disk does not delay the renewal threshold updates.
+     */
+    private void scheduleRegistrySnapshotTask() {
+        registrySnapshotWriter.scheduleWithFixedDelay(new Runnable() {
+
+                           @Override
+                           public void run() {
+                               writeRegistrySnapshot();
+                           }
+
+                       }, EUREKA_SERVER_CONFIG.getRegistrySnapshotIntervalMs(),
+                EUREKA_SERVER_CONFIG.getRegistrySnapshotIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedule the task that {@link EurekaServerConfig#shouldRepairPeerRegistries() repairs}
+     * the registries of the peers periodically. It runs on its own timer, as it waits for the peers.
+     */
+    private void schedulePeerRegistryRepairTask() {
+        new Timer("ReplicaAwareInstanceRegistry - PeerRegistryRepairer", true).schedule(new TimerTask() {
+
+                           @Override
+                           public void run() {
+                               repairPeerRegistries();
+                           }
+
+                       }, EUREKA_SERVER_CONFIG.getPeerRegistryRepairIntervalMs(),
+                EUREKA_SERVER_CONFIG.getPeerRegistryRepairIntervalMs());
+    }
+
+    /**
+     * Compares the digest of the local registry with the digest of every peer,
+     * and replicates the instances a peer is missing or holds an older copy of.
+     */
+    private void repairPeerRegistries() {
+        Applications localApps = getRegistrySnapshot().getApplications();
+        RegistryDigest localDigest = getRegistryDigest(localApps);
+        for (PeerEurekaNode node : peerEurekaNodes.getPeerEurekaNodes()) {
+            if (isThisMe(node.getServiceUrl())) {
+                continue;
+            }
+            try {
+                int repaired = node.repairRegistry(localApps, localDigest, MAX_REPAIRED_DIGEST_BUCKETS);
+                if (repaired > 0) {
+                    logger.info("Replicated {} instances missing or outdated on peer {}", repaired, node.getServiceUrl());
+                    DynamicCounter.increment(MonitorConfig.builder("peerRegistryRepairs")
+                            .withTag("peer", node.getServiceUrl()).build(), repaired);
+                }
+            } catch (Throwable e) {
+                logger.warn("Cannot repair the registry of peer " + node.getServiceUrl(), e);
+            }
+        }
+    }
+
+    /**
+     * Gets the digest of the local registry, which the peers compare with the
+     * digest of their own registry to find the instances to repair.
+     */
+    public RegistryDigest getRegistryDigest() {
+        return getRegistryDigest(getRegistrySnapshot().getApplications());
+    }
+
+    private RegistryDigest getRegistryDigest(Applications localApps) {
+        // The view of the snapshot is shared until the registry changes, so is the digest
+        Pair<Applications, RegistryDigest> current = registryDigest;
+        if (current != null && current.first() == localApps) {
+            return current.second();
+        }
+        RegistryDigest digest = RegistryDigest.of(localApps, RegistryDigest.DEFAULT_DEPTH);
+        registryDigest = new Pair<Applications, RegistryDigest>(localApps, digest);
+        return digest;
+    }
+
+    /**
+     * Gets the versions of the local instances in the given buckets of the
+     * {@link #getRegistryDigest() registry digest}.
+     */
+    public RegistryDigestEntryList getRegistryDigestEntries(Set<Integer> buckets) {
+        RegistryDigestEntryList entries = new RegistryDigestEntryList();
+        for (Application app : getRegistrySnapshot().getApplications().getRegisteredApplications()) {
+            for (InstanceInfo info : app.getInstancesAsIsFromEureka()) {
+                if (buckets.contains(RegistryDigest.bucketOf(app.getName(), info.getId(), RegistryDigest.DEFAULT_DEPTH))) {
+                    entries.addEntry(new RegistryDigestEntry(app.getName(), info.getId(), info.getLastDirtyTimestamp()));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Copies the local registry to the registry snapshot file. An empty registry, as while the registry
+     * is being cleared and synced up again, is not written so it never replaces a complete copy.
+     *
+     * <p>
+     * The registry mutation log moves to a new segment before the registry is copied, so the segments
+     * before it are covered by the copy and are deleted once it is written.
+     * </p>
+     */
+    private void writeRegistrySnapshot() {
+        try {
+            RegistryMutationLog mutationLog = getMutationLog();
+            long firstUncoveredSegment = mutationLog == null ? 0 : mutationLog.rotate();
+            Applications applications = getApplicationsFromLocalRegionOnly();
+            if (applications.getRegisteredApplications().isEmpty()) {
+                return;
+            }
+            int count = registrySnapshotFile.write(applications);
+            logger.debug("Wrote {} instances to the registry snapshot", count);
+            if (mutationLog != null) {
+                mutationLog.deleteSegmentsBefore(firstUncoveredSegment);
+            }
+        } catch (Throwable e) {
+            logger.error("Cannot write the registry snapshot", e);
+        }
+    }
+
+    /**
+     * Restores the registry from the registry snapshot file, if there is one
+     * that is recent enough, and replays the registry mutation log on top of
+     * it. The changes made from then on are appended to the log.
+     *
+     * @return the number of instances restored.
+     */
+    private int restoreRegistry() {
+        if (registrySnapshotFile == null || registryRestored) {
+            return 0;
+        }
+        registryRestored = true;
+        int count = 0;
+        List<InstanceInfo> instances = registrySnapshotFile.read(EUREKA_SERVER_CONFIG.getRegistrySnapshotMaxAgeMs());
+        for (InstanceInfo instance : instances) {
+            try {
+                if (isRegisterable(instance)) {
+                    register(instance, instance.getLeaseInfo()
+                            .getDurationInSecs(), true);
+                    count++;
+                }
+            } catch (Throwable t) {
+                logger.error("During registry snapshot restore", t);
+            }
+        }
+        logger.info("Restored {} instances from the registry snapshot", count);
+
+        if (mutationLogDirectory != null) {
+            // Without a usable snapshot the log is incomplete, and it is dropped with the next snapshot
+            if (!instances.isEmpty()) {
+                int changes = RegistryMutationLog.replay(mutationLogDirectory, new MutationLogReplayer());
+                count = getLocalInstanceCount();
+                logger.info("Replayed {} changes from the registry mutation log, {} instances restored", changes, count);
+            }
+            RegistryMutationLog mutationLog = new RegistryMutationLog(mutationLogDirectory,
+                    EUREKA_SERVER_CONFIG.getRegistryMutationLogSegmentSizeBytes(),
+                    EUREKA_SERVER_CONFIG.getRegistryMutationLogQueueSize());
+            try {
+                mutationLog.start();
+                setMutationLog(mutationLog);
+            } catch (IOException e) {
+                logger.error("Cannot start the registry mutation log", e);
+            }
+        }
+        return count;
+    }
+
+    private int getLocalInstanceCount() {
+        int count = 0;
+        for (Application app : getApplicationsFromLocalRegionOnly().getRegisteredApplications()) {
+            count += app.getInstances().size();
+        }
+        return count;
+    }
+
+    /**
+     * Applies the changes read back from the registry mutation log like replicated changes.
+     */
+    private class MutationLogReplayer implements RegistryMutationLog.Replayer {
+
+        @Override
+        public void register(InstanceInfo info, int leaseDuration) {
+            if (isRegisterable(info)) {
+                PeerAwareInstanceRegistryImpl.this.register(info, leaseDuration, true);
+            }
+        }
+
+        @Override
+        public void cancel(String appName, String id) {
+            PeerAwareInstanceRegistryImpl.this.cancel(appName, id, true);
+        }
+
+        @Override
+        public void statusUpdate(String appName, String id, InstanceStatus newStatus, String lastDirtyTimestamp) {
+            PeerAwareInstanceRegistryImpl.this.statusUpdate(appName, id, newStatus, lastDirtyTimestamp, true);
+        }
+
+        @Override
+        public void deleteStatusOverride(String appName, String id, InstanceStatus newStatus, String lastDirtyTimestamp) {
+            PeerAwareInstanceRegistryImpl.this.deleteStatusOverride(appName, id, newStatus, lastDirtyTimestamp, true);
+        }
+
+        @Override
+        public void clear() {
+            clearRegistry();
+        }
+    }
+
+    /**
+     * Fetches the registry of all peers in parallel, and registers the
+     * instances of each peer as soon as its registry arrives, so that the
+     * slowest peer only delays its own instances. The server waits until all
+     * peers answered, or until {@link EurekaServerConfig#getSyncUpFromAllPeersTimeoutMs()}
+     * passed.
+     *
+     * @return the number of instances in the registry, or 0 if no peer answered.
+     */
+    private int syncUpFromAllPeers() {
+        List<PeerEurekaNode> nodes = new ArrayList<PeerEurekaNode>();
+        for (PeerEurekaNode node : peerEurekaNodes.getPeerEurekaNodes()) {
+            if (!isThisMe(node.getServiceUrl())) {
+                nodes.add(node);
+            }
+        }
+        return syncUpFromPeers(nodes, EUREKA_SERVER_CONFIG.getSyncUpFromAllPeersTimeoutMs());
+    }
+
+    /**
+     * Fetches the registry of the given peers in parallel, for at most the given time. The fetches still
+     * running when the time is up are cancelled.
+     *
+     * @return the number of instances in the registry, or 0 if no peer answered.
+     */
+    @VisibleForTesting
+    int syncUpFromPeers(List<PeerEurekaNode> nodes, long timeoutMs) {
+        if (nodes.isEmpty()) {
+            return 0;
+        }
+
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(nodes.size(),
+                new ThreadFactoryBuilder().setNameFormat("Eureka-RegistrySync-%d").setDaemon(true).build());
+        CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executor);
+        List<Future<Integer>> fetches = new ArrayList<Future<Integer>>(nodes.size());
+        for (final PeerEurekaNode node : nodes) {
+            fetches.add(completionService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return syncUpFromPeer(node);
+                }
+            }));
+        }
+
+        int answered = 0;
+        long deadline = startTime + timeoutMs;
+        try {
+            for (int i = 0; i < nodes.size(); i++) {
+                Future<Integer> result = completionService.poll(
+                        deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (result == null) {
+                    logger.warn("Stopped waiting for {} peers to send their registry", nodes.size() - i);
+                    break;
+                }
+                try {
+                    result.get();
+                    answered++;
+                } catch (ExecutionException e) {
+                    logger.error("Cannot copy the registry of a peer", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted during registry transfer..");
+            Thread.currentThread().interrupt();
+        } finally {
+            // The peers that did not answer in time are not waited for, nor left to register their instances later
+            for (Future<Integer> fetch : fetches) {
+                fetch.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+
+        long elapsed = System.currentTimeMillis() - startTime;
+        registrySyncTimer.record(elapsed, TimeUnit.MILLISECONDS);
+        if (answered == 0) {
+            logger.warn("None of {} peers sent their registry in {} ms", nodes.size(), elapsed);
+            return 0;
+        }
+        int count = getLocalInstanceCount();
+        logger.info("Copied the registry of {} of {} peers in {} ms, {} instances registered",
+                answered, nodes.size(), elapsed, count);
+        return count;
+    }
+
+    /**
+     * Fetches the registry of the given peer and registers its instances.
+     *
+     * @return the number of instances registered.
+     */
+    private int syncUpFromPeer(PeerEurekaNode node) {
+        long startTime = System.currentTimeMillis();
+        HttpResponse<Applications> response = node.getApplications();
+        if (response.getStatusCode() != Status.OK.getStatusCode() || response.getEntity() == null) {
+            throw new IllegalStateException("Peer " + node.getServiceUrl()
+                    + " answered the registry fetch with status " + response.getStatusCode());
+        }
+        int count = 0;
+        for (Application app : response.getEntity().getRegisteredApplications()) {
+            for (InstanceInfo instance : app.getInstances()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    logger.warn("Stopped copying the registry of peer {} after {} instances",
+                            node.getServiceUrl(), count);
+                    return count;
+                }
+                try {
+                    if (isRegisterable(instance)) {
+                        register(instance, instance.getLeaseInfo()
+                                .getDurationInSecs(), true);
+                        count++;
+                    }
+                } catch (Throwable t) {
+                    logger.error("During DS init copy", t);
+                }
+            }
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        DynamicCounter.increment(MonitorConfig.builder("registrySyncInstances")
+                .withTag("peer", node.getServiceUrl()).build(), count);
+        getRegistrySyncPeerTimer(node.getServiceUrl()).record(elapsed, TimeUnit.MILLISECONDS);
+        logger.info("Copied {} instances from peer {} in {} ms", count, node.getServiceUrl(), elapsed);
+        return count;
+    }
+
+    private com.netflix.servo.monitor.Timer getRegistrySyncPeerTimer(String serviceUrl) {
+        com.netflix.servo.monitor.Timer peerTimer = registrySyncPeerTimers.get(serviceUrl);
+        if (peerTimer == null) {
+            peerTimer = new BasicTimer(MonitorConfig.builder("registrySyncPeerTime").withTag("peer", serviceUrl).build());
+            com.netflix.servo.monitor.Timer existing = registrySyncPeerTimers.putIfAbsent(serviceUrl, peerTimer);
+            if (existing != null) {
+                return existing;
+            }
+            DefaultMonitorRegistry.getInstance().register(peerTimer);
+        }
+        return peerTimer;
+    }
+
     /**
      * Populates the registry information from a peer eureka node. This
      * operation fails over to other nodes until the list is exhausted if the
      * communication fails.
+     *
+     * <p>
+     * If the registry could be restored from the
+     * {@link EurekaServerConfig#getRegistrySnapshotFile() registry snapshot file} and the
+     * {@link EurekaServerConfig#getRegistryMutationLogDir() registry mutation log}, the
+     * registry of the peers is merged into it if they have one, but the server does not
+     * wait for them.
+     * </p>
+     *
+     * <p>
+     * If {@link EurekaServerConfig#shouldSyncUpFromAllPeers()} is set, the
+     * registry is fetched from all peers in parallel first, and the peer
+     * nodes are only failed over to if none of the peers answered.
+     * </p>
      */
     public int syncUp() {
+        int restoredCount = restoreRegistry();
+
+        if (EUREKA_SERVER_CONFIG.shouldSyncUpFromAllPeers()) {
+            int syncedCount = syncUpFromAllPeers();
+            if (syncedCount > 0) {
+                return Math.max(syncedCount, restoredCount);
+            }
+        }
+
         // Copy entire entry from neighboring DS node
         LookupService lookupService = DiscoveryManager.getInstance()
                 .getLookupService();
@@ -199,6 +623,9 @@ public class PeerAwareInstanceRegistryImpl extends AbstractInstanceRegistry impl
                     }
                 }
             }
+            if (count == 0 && restoredCount > 0) {
+                break;
+            }
             if (count == 0) {
                 try {
                     Thread.sleep(REGISTRY_SYNC_RETRY_MS);
@@ -208,7 +635,7 @@ public class PeerAwareInstanceRegistryImpl extends AbstractInstanceRegistry impl
                 }
             }
         }
-        return count;
+        return Math.max(count, restoredCount);
     }
 
     public void openForTraffic(int count) {
@@ -511,9 +938,28 @@ public class PeerAwareInstanceRegistryImpl extends AbstractInstanceRegistry impl
      * Perform all cleanup and shutdown operations.
      */
     void shutdown() {
+        if (registrySnapshotFile != null) {
+            // Lets a running write finish, so that the last snapshot is not written concurrently with it
+            registrySnapshotWriter.shutdown();
+            try {
+                registrySnapshotWriter.awaitTermination(EUREKA_SERVER_CONFIG.getRegistrySnapshotIntervalMs(),
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writeRegistrySnapshot();
+        }
+        RegistryMutationLog mutationLog = getMutationLog();
+        if (mutationLog != null) {
+            setMutationLog(null);
+            mutationLog.shutdown();
+        }
         try {
             DefaultMonitorRegistry.getInstance().unregister(
                     Monitors.newObjectMonitor(this));
+            for (com.netflix.servo.monitor.Timer peerTimer : registrySyncPeerTimers.values()) {
+                DefaultMonitorRegistry.getInstance().unregister(peerTimer);
+            }
         } catch (Throwable t) {
             logger.error("Cannot shutdown monitor registry", t);
         }
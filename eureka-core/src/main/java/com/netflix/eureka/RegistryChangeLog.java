@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.eureka.lease.Lease;
+
+/**
+ * A bounded ring of the most recent registry changes, indexed by their sequence number.
+ *
+ * <p>
+ * Every change published to the {@link RegistrySnapshot} gets the next sequence number and the lease of the
+ * instance it changed is stored in the slot of that number, overwriting the change made {@code capacity}
+ * sequence numbers earlier. The changes after a given sequence number can thus be read back for as long as
+ * they have not been overwritten, and a missing or overwritten slot tells that they cannot.
+ * </p>
+ *
+ * <p>
+ * Sequence numbers are handed out to clients as registry versions, which carry a random epoch chosen when
+ * this log is created. A version handed out by another server, or by this server before a restart, does not
+ * match the epoch and is never mistaken for a position in this log.
+ * </p>
+ */
+class RegistryChangeLog {
+
+    private static final int EPOCH_SHIFT = 40;
+    private static final long SEQUENCE_MASK = (1L << EPOCH_SHIFT) - 1;
+    private static final int EPOCH_BITS = 22;
+
+    private final long epoch;
+    private final AtomicReferenceArray<Change> changes;
+
+    RegistryChangeLog(int capacity) {
+        this.changes = new AtomicReferenceArray<Change>(Math.max(1, capacity));
+        this.epoch = 1 + new Random().nextInt((1 << EPOCH_BITS) - 1);
+    }
+
+    /**
+     * Records the change with the given sequence number.
+     *
+     * @param sequence the sequence number of the change.
+     * @param lease the lease of the instance that changed, or null for a change that is not tied to a single
+     *              instance, which makes all earlier versions unusable as a cursor.
+     */
+    void append(long sequence, Lease<InstanceInfo> lease) {
+        changes.set(indexOf(sequence), lease == null ? null : new Change(sequence, lease));
+    }
+
+    /**
+     * Gets the leases changed after the given registry version and up to the given sequence number, oldest
+     * first. The caller must make sure that all changes up to that sequence number have been appended.
+     *
+     * @return the changed leases, or null if the version is not from this log or some of the changes after it
+     *         have been overwritten.
+     */
+    List<Lease<InstanceInfo>> getChangesSince(long registryVersion, long upToSequence) {
+        if ((registryVersion >>> EPOCH_SHIFT) != epoch) {
+            return null;
+        }
+        long sinceSequence = registryVersion & SEQUENCE_MASK;
+        if (sinceSequence > upToSequence || upToSequence - sinceSequence > changes.length()) {
+            return null;
+        }
+        List<Lease<InstanceInfo>> leases = new ArrayList<Lease<InstanceInfo>>((int) (upToSequence - sinceSequence));
+        for (long sequence = sinceSequence + 1; sequence <= upToSequence; sequence++) {
+            Change change = changes.get(indexOf(sequence));
+            if (change == null || change.sequence != sequence) {
+                return null;
+            }
+            leases.add(change.lease);
+        }
+        return leases;
+    }
+
+    /**
+     * Gets the registry version handed out to clients for the given sequence number.
+     */
+    long toRegistryVersion(long sequence) {
+        return (epoch << EPOCH_SHIFT) | (sequence & SEQUENCE_MASK);
+    }
+
+    /**
+     * Drops all recorded changes.
+     */
+    void clear() {
+        for (int i = 0; i < changes.length(); i++) {
+            changes.set(i, null);
+        }
+    }
+
+    private int indexOf(long sequence) {
+        return (int) (sequence % changes.length());
+    }
+
+    private static final class Change {
+        private final long sequence;
+        private final Lease<InstanceInfo> lease;
+
+        Change(long sequence, Lease<InstanceInfo> lease) {
+            this.sequence = sequence;
+            this.lease = lease;
+        }
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import com.google.common.io.CountingInputStream;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import com.netflix.discovery.converters.EurekaJacksonCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only log of the registrations, cancellations and status changes made to the registry, which lets a
+ * restarting server replay the changes made after the last {@link RegistrySnapshotFile registry snapshot}.
+ *
+ * <p>
+ * Changes are handed to a background writer through a bounded queue, so the registry operations never wait for
+ * the disk. The writer takes all changes queued at a time, writes them in one go and syncs them to disk once
+ * for the whole group. A change that does not fit into the queue is dropped; the next snapshot covers it.
+ * </p>
+ *
+ * <p>
+ * The log is split into numbered segment files. The writer starts a new segment when the current one is full or
+ * when it is asked to {@link #rotate()}, which is done before a snapshot is taken so that the segments before it
+ * can be deleted once the snapshot is written. Every record carries a checksum, and replaying a segment stops at
+ * the first incomplete or corrupted record, which is where a crash interrupted the writer.
+ * </p>
+ */
+class RegistryMutationLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistryMutationLog.class);
+
+    private static final String SEGMENT_PREFIX = "registry-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final Object STOP = new Object();
+
+    enum Type {
+        Register, Cancel, StatusUpdate, DeleteStatusOverride, Clear
+    }
+
+    /**
+     * Receives the changes read back from the log, in the order they were made.
+     */
+    interface Replayer {
+        void register(InstanceInfo info, int leaseDuration);
+
+        void cancel(String appName, String id);
+
+        void statusUpdate(String appName, String id, InstanceStatus newStatus, String lastDirtyTimestamp);
+
+        void deleteStatusOverride(String appName, String id, InstanceStatus newStatus, String lastDirtyTimestamp);
+
+        void clear();
+    }
+
+    private final File directory;
+    private final long segmentSizeBytes;
+    private final BlockingQueue<Object> queue;
+    private final AtomicLong nextSegment;
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final Thread writer;
+
+    // Only accessed by the writer once it is started
+    private FileChannel segmentChannel;
+    private long currentSegment;
+    private long segmentSize;
+
+    RegistryMutationLog(File directory, long segmentSizeBytes, int queueSize) {
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.queue = new LinkedBlockingQueue<Object>(queueSize);
+        long[] segments = listSegments(directory);
+        this.nextSegment = new AtomicLong(segments.length == 0 ? 0 : segments[segments.length - 1] + 1);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "Eureka-RegistryMutationLogWriter");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Replays all segments of the log in the given directory, oldest first.
+     *
+     * @return the number of changes replayed.
+     */
+    static int replay(File directory, Replayer replayer) {
+        int count = 0;
+        for (long segment : listSegments(directory)) {
+            File segmentFile = segmentFile(directory, segment);
+            try {
+                count += replaySegment(segmentFile, replayer);
+            } catch (IOException e) {
+                logger.warn("Cannot replay registry mutation log segment " + segmentFile, e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Starts the background writer on a new segment.
+     */
+    void start() throws IOException {
+        directory.mkdirs();
+        openSegment(nextSegment.getAndIncrement());
+        writer.start();
+    }
+
+    /**
+     * Stops the background writer after it has written the changes queued so far.
+     */
+    void shutdown() {
+        try {
+            queue.put(STOP);
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Appends a registration. The instance is encoded right away, as it may change before the writer gets to it.
+     */
+    void appendRegister(InstanceInfo info, int leaseDuration) {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try {
+            EurekaJacksonCodec.getInstance().writeTo(info, encoded);
+        } catch (IOException e) {
+            logger.error("Cannot encode registry mutation {}/{}", info.getAppName(), info.getId(), e);
+            return;
+        }
+        enqueue(new Record(Type.Register, info.getAppName(), info.getId(), leaseDuration, null, null,
+                encoded.toByteArray(), null));
+    }
+
+    void appendCancel(String appName, String id) {
+        enqueue(new Record(Type.Cancel, appName, id, 0, null, null, null, null));
+    }
+
+    void appendStatusUpdate(String appName, String id, InstanceStatus newStatus, String lastDirtyTimestamp) {
+        enqueue(new Record(Type.StatusUpdate, appName, id, 0, newStatus, lastDirtyTimestamp, null, null));
+    }
+
+    void appendDeleteStatusOverride(String appName, String id, InstanceStatus newStatus, String lastDirtyTimestamp) {
+        enqueue(new Record(Type.DeleteStatusOverride, appName, id, 0, newStatus, lastDirtyTimestamp, null, null));
+    }
+
+    void appendClear() {
+        enqueue(new Record(Type.Clear, "", "", 0, null, null, null, null));
+    }
+
+    /**
+     * Makes the writer start a new segment after the changes queued so far.
+     *
+     * @return the number of the new segment; the changes queued after this call are in this or later segments.
+     */
+    long rotate() {
+        long segment = nextSegment.getAndIncrement();
+        try {
+            queue.put(new Rotation(segment));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return segment;
+    }
+
+    /**
+     * Deletes the segments before the given one, once their changes are covered by a snapshot.
+     */
+    void deleteSegmentsBefore(long segment) {
+        for (long existing : listSegments(directory)) {
+            if (existing < segment && !segmentFile(directory, existing).delete()) {
+                logger.warn("Cannot delete registry mutation log segment {}", segmentFile(directory, existing));
+            }
+        }
+    }
+
+    private void enqueue(Record record) {
+        if (!queue.offer(record)) {
+            droppedRecords.incrementAndGet();
+        }
+    }
+
+    private void writeLoop() {
+        List<Object> group = new ArrayList<Object>();
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(group);
+            stopped = group.remove(STOP);
+            try {
+                writeGroup(group);
+            } catch (Throwable e) {
+                logger.error("Cannot write to the registry mutation log", e);
+            }
+            group.clear();
+            long dropped = droppedRecords.getAndSet(0);
+            if (dropped > 0) {
+                logger.warn("Dropped {} registry mutation log records because the writer fell behind", dropped);
+            }
+        }
+        closeSegment();
+    }
+
+    private void writeGroup(List<Object> group) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        for (Object item : group) {
+            if (item instanceof Rotation) {
+                // The segment was full and already replaced by a later one if it is not ahead of the current one
+                long segment = ((Rotation) item).segment;
+                if (segment > currentSegment) {
+                    flush(buffer);
+                    openSegment(segment);
+                }
+            } else {
+                Record record = (Record) item;
+                try {
+                    record.writeTo(buffer);
+                } catch (IOException e) {
+                    logger.error("Cannot encode registry mutation {}/{}", record.appName, record.id, e);
+                }
+                if (segmentSize + buffer.size() >= segmentSizeBytes) {
+                    flush(buffer);
+                    openSegment(nextSegment.getAndIncrement());
+                }
+            }
+        }
+        flush(buffer);
+    }
+
+    // Group commit: one write and one sync for all records collected so far
+    private void flush(ByteArrayOutputStream buffer) throws IOException {
+        if (buffer.size() == 0) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.wrap(buffer.toByteArray());
+        while (data.hasRemaining()) {
+            segmentChannel.write(data);
+        }
+        segmentChannel.force(false);
+        segmentSize += buffer.size();
+        buffer.reset();
+    }
+
+    private void openSegment(long segment) throws IOException {
+        closeSegment();
+        RandomAccessFile file = new RandomAccessFile(segmentFile(directory, segment), "rw");
+        segmentChannel = file.getChannel();
+        currentSegment = segment;
+        segmentSize = segmentChannel.size();
+        segmentChannel.position(segmentSize);
+    }
+
+    private void closeSegment() {
+        if (segmentChannel != null) {
+            try {
+                segmentChannel.close();
+            } catch (IOException e) {
+                logger.warn("Cannot close registry mutation log segment", e);
+            }
+            segmentChannel = null;
+        }
+    }
+
+    private static int replaySegment(File segmentFile, Replayer replayer) throws IOException {
+        int count = 0;
+        long segmentLength = segmentFile.length();
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(segmentFile)));
+        DataInputStream in = new DataInputStream(counter);
+        try {
+            while (true) {
+                Record record = Record.readFrom(in, segmentLength - counter.getCount());
+                if (record == null) {
+                    return count;
+                }
+                try {
+                    record.replay(replayer);
+                    count++;
+                } catch (Throwable e) {
+                    logger.error("Cannot replay registry mutation {}/{}", record.appName, record.id, e);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long[] listSegments(File directory) {
+        String[] names = directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (names == null) {
+            return new long[0];
+        }
+        long[] segments = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            try {
+                segments[count] = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                count++;
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring unexpected file {} in the registry mutation log directory", name);
+            }
+        }
+        long[] result = Arrays.copyOf(segments, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static File segmentFile(File directory, long segment) {
+        return new File(directory, String.format("%s%019d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static final class Rotation {
+        private final long segment;
+
+        Rotation(long segment) {
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * A single change, written as its length, its checksum and its payload.
+     */
+    private static final class Record {
+        private static final int HEADER_SIZE = 4 + 8;
+
+        private final Type type;
+        private final String appName;
+        private final String id;
+        private final int leaseDuration;
+        private final InstanceStatus status;
+        private final String lastDirtyTimestamp;
+        // The instance of a registration, encoded when it is appended and decoded when it is read back
+        private final byte[] encodedInstance;
+        private final InstanceInfo instance;
+
+        Record(Type type, String appName, String id, int leaseDuration, InstanceStatus status,
+               String lastDirtyTimestamp, byte[] encodedInstance, InstanceInfo instance) {
+            this.type = type;
+            this.appName = appName;
+            this.id = id;
+            this.leaseDuration = leaseDuration;
+            this.status = status;
+            this.lastDirtyTimestamp = lastDirtyTimestamp;
+            this.encodedInstance = encodedInstance;
+            this.instance = instance;
+        }
+
+        void writeTo(ByteArrayOutputStream buffer) throws IOException {
+            ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream();
+            DataOutputStream payload = new DataOutputStream(payloadBuffer);
+            payload.writeByte(type.ordinal());
+            payload.writeUTF(appName);
+            payload.writeUTF(id);
+            payload.writeInt(leaseDuration);
+            payload.writeUTF(status == null ? "" : status.name());
+            payload.writeUTF(lastDirtyTimestamp == null ? "" : lastDirtyTimestamp);
+            payload.writeBoolean(encodedInstance != null);
+            if (encodedInstance != null) {
+                payload.write(encodedInstance);
+            }
+            payload.flush();
+            byte[] bytes = payloadBuffer.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(bytes.length);
+            out.writeLong(crc.getValue());
+            out.write(bytes);
+            out.flush();
+        }
+
+        /**
+         * @param remaining the number of bytes left in the segment, which no record can be longer than.
+         * @return the next record, or null at the end of the segment or at an incomplete or corrupted record.
+         */
+        static Record readFrom(DataInputStream in, long remaining) throws IOException {
+            byte[] bytes;
+            try {
+                int length = in.readInt();
+                long checksum = in.readLong();
+                if (length < 0 || length > remaining - HEADER_SIZE) {
+                    return null;
+                }
+                bytes = new byte[length];
+                in.readFully(bytes);
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if (crc.getValue() != checksum) {
+                    return null;
+                }
+            } catch (EOFException e) {
+                return null;
+            }
+            DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+            Type type = Type.values()[payload.readUnsignedByte()];
+            String appName = payload.readUTF();
+            String id = payload.readUTF();
+            int leaseDuration = payload.readInt();
+            String status = payload.readUTF();
+            String lastDirtyTimestamp = payload.readUTF();
+            InstanceInfo instance = null;
+            if (payload.readBoolean()) {
+                instance = EurekaJacksonCodec.getInstance().readValue(InstanceInfo.class, payload);
+            }
+            return new Record(type, appName, id, leaseDuration, status.isEmpty() ? null : InstanceStatus.valueOf(status),
+                    lastDirtyTimestamp.isEmpty() ? null : lastDirtyTimestamp, null, instance);
+        }
+
+        void replay(Replayer replayer) {
+            switch (type) {
+                case Register:
+                    replayer.register(instance, leaseDuration);
+                    break;
+                case Cancel:
+                    replayer.cancel(appName, id);
+                    break;
+                case StatusUpdate:
+                    replayer.statusUpdate(appName, id, status, lastDirtyTimestamp);
+                    break;
+                case DeleteStatusOverride:
+                    replayer.deleteStatusOverride(appName, id, status, lastDirtyTimestamp);
+                    break;
+                case Clear:
+                    replayer.clear();
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.eureka.lease.Lease;
+
+/**
+ * A copy-on-write, versioned view of the applications registered in the local region.
+ *
+ * <p>
+ * The {@link AbstractInstanceRegistry} publishes a freshly built {@link Application} every time
+ * one of its instances is registered, cancelled or changes status, so a mutation costs only as
+ * much as the application it touches. Every publish advances a registry wide version. The
+ * {@link Applications} view handed out to readers is assembled from the published applications
+ * at most once per version and shared by all readers until the next mutation, so payload
+ * generation and hash computation neither lock the registry nor copy it.
+ * </p>
+ *
+ * <p>
+ * The instances of every published application are also indexed by their VIP and secure VIP addresses, so
+ * that the instances of a VIP can be found without looking at the rest of the registry.
+ * </p>
+ *
+ * <p>
+ * The number of instances in every status is kept up to date as applications are published, by adding the
+ * counts of the new copy of an application and subtracting those of the copy it replaces. The reconcile hash
+ * code of the registry is derived from these counts, without looking at the instances.
+ * </p>
+ *
+ * <p>
+ * The lease of the instance that caused every publish is kept in a bounded {@link RegistryChangeLog}. The
+ * {@link Applications} view carries the registry version it is current with, so that clients can later ask
+ * for only the changes made after that version.
+ * </p>
+ *
+ * <p>
+ * Published {@link Application} and {@link Applications} objects are shared and must be treated
+ * as read only. The instances of a published application are copies of the registered ones taken
+ * when it was published, so a view only changes through a publish, which replaces it. The lease
+ * information of an instance is the one captured when its application was last published.
+ * </p>
+ */
+public class RegistrySnapshot {
+
+    private static final int DEFAULT_CHANGE_LOG_SIZE = 10000;
+
+    private final AtomicLong version = new AtomicLong(0);
+    private final AtomicLong modCount = new AtomicLong(0);
+    private final ConcurrentMap<String, VersionedApplication> applications =
+            new ConcurrentHashMap<String, VersionedApplication>();
+    private volatile View view = new View(-1, null);
+    // instance count per InstanceStatus ordinal
+    private final AtomicIntegerArray statusCounts = new AtomicIntegerArray(InstanceStatus.values().length);
+    private volatile ReconcileHashCode reconcileHashCode = new ReconcileHashCode(-1, null);
+
+    // vip address -> app name -> the instances of the app having that vip address
+    private final ConcurrentMap<String, ConcurrentMap<String, Application>> vipIndex =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Application>>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Application>> secureVipIndex =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Application>>();
+    private final ConcurrentMap<String, String[]> parsedVipAddresses = CacheBuilder
+            .newBuilder().expireAfterAccess(1, TimeUnit.HOURS)
+            .<String, String[]>build().asMap();
+    private final RegistryChangeLog changeLog;
+
+    public RegistrySnapshot() {
+        this(DEFAULT_CHANGE_LOG_SIZE);
+    }
+
+    /**
+     * @param changeLogSize the number of most recent changes for which the changes since a registry version
+     *                      can be served.
+     */
+    public RegistrySnapshot(int changeLogSize) {
+        this.changeLog = new RegistryChangeLog(changeLogSize);
+    }
+
+    /**
+     * Publishes a new copy of the given application, replacing the previous one, without recording which
+     * instance changed. Clients that saw an earlier registry version have to fetch the full registry.
+     *
+     * @see #publish(String, Application, Lease)
+     */
+    public long publish(String appName, Application app) {
+        return publish(appName, app, null);
+    }
+
+    /**
+     * Publishes a new copy of the given application, replacing the previous one.
+     *
+     * @param appName the name of the application.
+     * @param app the new copy of the application, or null to remove an application that has no
+     *            instances anymore.
+     * @param changedLease the lease of the instance whose change caused this publish.
+     * @return the version of the registry after the change.
+     */
+    public long publish(String appName, Application app, Lease<InstanceInfo> changedLease) {
+        long newVersion = version.incrementAndGet();
+        VersionedApplication previous;
+        VersionedApplication current = null;
+        if (app == null) {
+            previous = applications.remove(appName);
+        } else {
+            current = new VersionedApplication(newVersion, app,
+                    groupByVipAddress(app, false), groupByVipAddress(app, true));
+            previous = applications.put(appName, current);
+        }
+        // Every published copy is added once when it is put and subtracted once when the map hands it back
+        // as replaced, so the counts match the published applications however publishes interleave.
+        updateStatusCounts(previous, current);
+        updateVipIndex(vipIndex, appName,
+                previous == null ? null : previous.vipApplications,
+                current == null ? null : current.vipApplications);
+        updateVipIndex(secureVipIndex, appName,
+                previous == null ? null : previous.secureVipApplications,
+                current == null ? null : current.secureVipApplications);
+        changeLog.append(modCount.incrementAndGet(), changedLease);
+        return newVersion;
+    }
+
+    /**
+     * Drops all published applications.
+     */
+    public void clear() {
+        version.incrementAndGet();
+        for (String appName : applications.keySet()) {
+            VersionedApplication previous = applications.remove(appName);
+            if (previous != null) {
+                updateStatusCounts(previous, null);
+            }
+        }
+        vipIndex.clear();
+        secureVipIndex.clear();
+        changeLog.clear();
+        changeLog.append(modCount.incrementAndGet(), null);
+    }
+
+    /**
+     * Gets the version of the registry, which advances on every change published to this snapshot.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Gets the registry version handed out to clients, which identifies the last change published to this
+     * snapshot.
+     */
+    public long getRegistryVersion() {
+        return changeLog.toRegistryVersion(modCount.get());
+    }
+
+    /**
+     * Gets the leases of the instances changed after the given registry version, oldest first. The caller must
+     * make sure that no publish is in progress, otherwise the changes may be reported as unavailable.
+     *
+     * @param registryVersion a registry version previously handed out by this snapshot.
+     * @return the changed leases, or null if the changes after the given version are not retained anymore and
+     *         the full registry has to be fetched.
+     */
+    public List<Lease<InstanceInfo>> getChangesSince(long registryVersion) {
+        return changeLog.getChangesSince(registryVersion, modCount.get());
+    }
+
+    /**
+     * Gets the latest published copy of an application.
+     *
+     * @return the application with the version at which it was published, or null if the
+     * application has no instances.
+     */
+    public VersionedApplication getApplication(String appName) {
+        return applications.get(appName);
+    }
+
+    /**
+     * Gets the latest published copies of all applications.
+     */
+    public Collection<VersionedApplication> getVersionedApplications() {
+        return Collections.unmodifiableCollection(applications.values());
+    }
+
+    /**
+     * Gets the instances that have the given VIP address, grouped by their applications.
+     *
+     * @param vipAddress the VIP address to look for.
+     * @param secure true to look for a secure VIP address, false for a regular one.
+     * @return applications holding only the instances that have the VIP address.
+     */
+    public Collection<Application> getApplicationsByVipAddress(String vipAddress, boolean secure) {
+        ConcurrentMap<String, Application> apps = (secure ? secureVipIndex : vipIndex).get(vipAddress);
+        if (apps == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableCollection(apps.values());
+    }
+
+    @VisibleForTesting
+    boolean isVipAddressIndexed(String vipAddress, boolean secure) {
+        return (secure ? secureVipIndex : vipIndex).containsKey(vipAddress);
+    }
+
+    /**
+     * Splits a comma separated list of VIP addresses as sent by the instances. The result is cached as
+     * instances of the same application share the same list.
+     */
+    String[] splitVipAddresses(String vipAddresses) {
+        String[] split = parsedVipAddresses.get(vipAddresses);
+        if (split == null) {
+            split = vipAddresses.split(",");
+            parsedVipAddresses.put(vipAddresses, split);
+        }
+        return split;
+    }
+
+    /**
+     * Adds the number of instances in every status to the given map, which is keyed by status name like the
+     * map of {@link Applications#populateInstanceCountMap(TreeMap)}.
+     */
+    public void populateInstanceCountMap(TreeMap<String, AtomicInteger> instanceCountMap) {
+        for (InstanceStatus status : InstanceStatus.values()) {
+            int count = statusCounts.get(status.ordinal());
+            if (count > 0) {
+                AtomicInteger instanceCount = instanceCountMap.get(status.name());
+                if (instanceCount == null) {
+                    instanceCount = new AtomicInteger(0);
+                    instanceCountMap.put(status.name(), instanceCount);
+                }
+                instanceCount.addAndGet(count);
+            }
+        }
+    }
+
+    private void updateStatusCounts(VersionedApplication previous, VersionedApplication current) {
+        for (int i = 0; i < statusCounts.length(); i++) {
+            int delta = (current == null ? 0 : current.statusCounts[i])
+                    - (previous == null ? 0 : previous.statusCounts[i]);
+            if (delta != 0) {
+                statusCounts.addAndGet(i, delta);
+            }
+        }
+    }
+
+    private static int[] countByStatus(Application app) {
+        int[] counts = new int[InstanceStatus.values().length];
+        for (InstanceInfo instanceInfo : app.getInstancesAsIsFromEureka()) {
+            counts[instanceInfo.getStatus().ordinal()]++;
+        }
+        return counts;
+    }
+
+    private Map<String, Application> groupByVipAddress(Application app, boolean secure) {
+        Map<String, Application> vipApps = new HashMap<String, Application>();
+        for (InstanceInfo instanceInfo : app.getInstancesAsIsFromEureka()) {
+            String vipAddresses = secure ? instanceInfo.getSecureVipAddress() : instanceInfo.getVIPAddress();
+            if (vipAddresses == null) {
+                continue;
+            }
+            for (String vipAddress : splitVipAddresses(vipAddresses)) {
+                Application vipApp = vipApps.get(vipAddress);
+                if (vipApp == null) {
+                    vipApp = new Application(app.getName());
+                    vipApps.put(vipAddress, vipApp);
+                }
+                vipApp.addInstance(instanceInfo);
+            }
+        }
+        return vipApps;
+    }
+
+    /**
+     * Moves the copies of the given application between the VIP addresses of the index, and drops the VIP
+     * addresses no application has anymore. Applications in different segments are published concurrently, so
+     * the changes to the index are made under its lock, which keeps a VIP address being dropped from losing an
+     * application added to it meanwhile. Lookups read the index without locking.
+     */
+    private static void updateVipIndex(ConcurrentMap<String, ConcurrentMap<String, Application>> index,
+                                       String appName,
+                                       Map<String, Application> previous,
+                                       Map<String, Application> current) {
+        synchronized (index) {
+            if (current != null) {
+                for (Map.Entry<String, Application> entry : current.entrySet()) {
+                    ConcurrentMap<String, Application> apps = index.get(entry.getKey());
+                    if (apps == null) {
+                        apps = new ConcurrentHashMap<String, Application>();
+                        index.put(entry.getKey(), apps);
+                    }
+                    apps.put(appName, entry.getValue());
+                }
+            }
+            if (previous != null) {
+                for (String vipAddress : previous.keySet()) {
+                    if (current == null || !current.containsKey(vipAddress)) {
+                        ConcurrentMap<String, Application> apps = index.get(vipAddress);
+                        if (apps != null) {
+                            apps.remove(appName);
+                            if (apps.isEmpty()) {
+                                index.remove(vipAddress);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets all published applications, assembled into an {@link Applications} with its reconcile
+     * hash code and registry version set. The returned object is shared until the registry changes and must not be
+     * modified.
+     *
+     * <p>
+     * The view is assembled from the published applications without looking at their instances, so it costs as
+     * much as the number of applications, whatever their size. Its instances are not indexed by VIP address, as
+     * {@link #getApplicationsByVipAddress(String, boolean)} looks them up in the index of this snapshot.
+     * </p>
+     */
+    // The registry version travels in the versions__delta field, which only has deprecated accessors
+    @SuppressWarnings("deprecation")
+    public Applications getApplications() {
+        View current = view;
+        long currentModCount = modCount.get();
+        if (current.modCount == currentModCount) {
+            return current.apps;
+        }
+        // The modification count is bumped after a change is applied and read here before the
+        // applications are collected, so a change that races with this rebuild leaves the view
+        // stale and it is rebuilt again by the next reader. For the same reason the registry version
+        // of the view never covers a change the view does not contain.
+        List<Application> published = new ArrayList<Application>(applications.size());
+        for (VersionedApplication versionedApp : applications.values()) {
+            published.add(versionedApp.getApplication());
+        }
+        Applications apps = new Applications(published);
+        apps.setVersion(changeLog.toRegistryVersion(currentModCount));
+        apps.setAppsHashCode(getReconcileHashCode(currentModCount));
+        View newView = new View(currentModCount, apps);
+        if (view.modCount < currentModCount) {
+            view = newView;
+        }
+        return apps;
+    }
+
+    /**
+     * Gets the reconcile hash code of all published applications, from the instance counts kept per status.
+     */
+    public String getReconcileHashCode() {
+        return getReconcileHashCode(modCount.get());
+    }
+
+    private String getReconcileHashCode(long currentModCount) {
+        ReconcileHashCode current = reconcileHashCode;
+        if (current.modCount == currentModCount) {
+            return current.hashCode;
+        }
+        // Like the view, a hash code that races with a change may already count it, and is then
+        // computed again by the next reader.
+        TreeMap<String, AtomicInteger> instanceCountMap = new TreeMap<String, AtomicInteger>();
+        populateInstanceCountMap(instanceCountMap);
+        String hashCode = Applications.getReconcileHashCode(instanceCountMap);
+        if (reconcileHashCode.modCount < currentModCount) {
+            reconcileHashCode = new ReconcileHashCode(currentModCount, hashCode);
+        }
+        return hashCode;
+    }
+
+    /**
+     * An immutable copy of an application together with the registry version at which it was
+     * published.
+     */
+    public static final class VersionedApplication {
+        private final long version;
+        private final Application application;
+        private final Map<String, Application> vipApplications;
+        private final Map<String, Application> secureVipApplications;
+        private final int[] statusCounts;
+
+        VersionedApplication(long version, Application application,
+                             Map<String, Application> vipApplications,
+                             Map<String, Application> secureVipApplications) {
+            this.version = version;
+            this.application = application;
+            this.vipApplications = vipApplications;
+            this.secureVipApplications = secureVipApplications;
+            this.statusCounts = countByStatus(application);
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public Application getApplication() {
+            return application;
+        }
+    }
+
+    private static final class View {
+        private final long modCount;
+        private final Applications apps;
+
+        View(long modCount, Applications apps) {
+            this.modCount = modCount;
+            this.apps = apps;
+        }
+    }
+
+    private static final class ReconcileHashCode {
+        private final long modCount;
+        private final String hashCode;
+
+        ReconcileHashCode(long modCount, String hashCode) {
+            this.modCount = modCount;
+            this.hashCode = hashCode;
+        }
+    }
+}
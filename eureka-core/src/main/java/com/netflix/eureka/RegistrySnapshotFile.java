@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.converters.EurekaJacksonCodec;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A copy of the local registry on disk, from which a restarting server restores its registry instead of
+ * waiting for a full copy from its peers.
+ *
+ * <p>
+ * The file starts with a header holding the time it was written and the number of instances, followed by
+ * one length prefixed record per instance. Every record is the <tt>JSON</tt> encoding of the instance, which
+ * carries its overridden status, its lease duration and its timestamps. The file is written to a temporary
+ * file first and then moved in place, so a reader sees either the previous or the new copy, and both reading
+ * and writing go through a memory mapping of the file.
+ * </p>
+ */
+class RegistrySnapshotFile {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistrySnapshotFile.class);
+
+    private static final int MAGIC = 0x45524b53;
+    private static final int FORMAT_VERSION = 1;
+    // magic, format version, write time and number of instances
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    private final File file;
+
+    RegistrySnapshotFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Writes the instances of the given applications, replacing the previous copy.
+     *
+     * @return the number of instances written.
+     */
+    int write(Applications applications) throws IOException {
+        List<byte[]> records = new ArrayList<byte[]>();
+        long size = HEADER_SIZE;
+        ByteArrayOutputStream recordStream = new ByteArrayOutputStream();
+        for (Application application : applications.getRegisteredApplications()) {
+            for (InstanceInfo info : application.getInstances()) {
+                recordStream.reset();
+                EurekaJacksonCodec.getInstance().writeTo(info, recordStream);
+                byte[] record = recordStream.toByteArray();
+                records.add(record);
+                size += 4 + record.length;
+            }
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tempFile, "rw");
+        try {
+            out.setLength(size);
+            MappedByteBuffer buffer = out.getChannel().map(MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putInt(records.size());
+            for (byte[] record : records) {
+                buffer.putInt(record.length);
+                buffer.put(record);
+            }
+            buffer.force();
+        } finally {
+            out.close();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return records.size();
+    }
+
+    /**
+     * Reads the instances written last, unless they were written longer than the given age ago.
+     *
+     * @return the instances, or an empty list if there is no usable copy.
+     */
+    List<InstanceInfo> read(long maxAgeMs) {
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = in.getChannel();
+                MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                    logger.warn("Ignoring registry snapshot {} written in an unknown format", file);
+                    return Collections.emptyList();
+                }
+                long age = System.currentTimeMillis() - buffer.getLong();
+                if (age > maxAgeMs) {
+                    logger.info("Ignoring registry snapshot {} written {} ms ago", file, age);
+                    return Collections.emptyList();
+                }
+                int count = buffer.getInt();
+                List<InstanceInfo> instances = new ArrayList<InstanceInfo>(Math.min(count, buffer.remaining() / 4));
+                for (int i = 0; i < count; i++) {
+                    byte[] record = new byte[buffer.getInt()];
+                    buffer.get(record);
+                    instances.add(EurekaJacksonCodec.getInstance().readValue(InstanceInfo.class,
+                            new ByteArrayInputStream(record)));
+                }
+                return instances;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot read registry snapshot " + file, e);
+        } catch (RuntimeException e) {
+            // Truncated or otherwise corrupted
+            logger.warn("Ignoring unreadable registry snapshot " + file, e);
+        }
+        return Collections.emptyList();
+    }
+}
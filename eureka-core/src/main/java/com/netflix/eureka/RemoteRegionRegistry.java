@@ -15,6 +15,8 @@
  */
 package com.netflix.eureka;
 
+import javax.annotation.Nullable;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response.Status;
 import java.net.InetAddress;
@@ -23,6 +25,8 @@ import java.net.UnknownHostException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.SynchronousQueue;
@@ -44,6 +48,7 @@ import com.netflix.discovery.shared.LookupService;
 import com.netflix.servo.monitor.Monitors;
 import com.netflix.servo.monitor.Stopwatch;
 import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.filter.GZIPContentEncodingFilter;
 import com.sun.jersey.client.apache4.ApacheHttpClient4;
 import org.slf4j.Logger;
@@ -76,6 +81,12 @@ public class RemoteRegionRegistry implements LookupService<String> {
 
     private volatile AtomicReference<Applications> applications = new AtomicReference<Applications>();
     private volatile AtomicReference<Applications> applicationsDelta = new AtomicReference<Applications>();
+    // entity tags sent back to the remote region so that it can answer with 304 if the payloads did not change;
+    // the full registry tag is only kept while the applications are the ones fetched with it
+    private final AtomicReference<String> fullRegistryETag = new AtomicReference<String>();
+    private final AtomicReference<String> deltaETag = new AtomicReference<String>();
+    // instance id -> app name of the instances in the current applications
+    private volatile ConcurrentMap<String, String> instanceIdToAppName = new ConcurrentHashMap<String, String>();
     private volatile boolean readyForServingData;
 
     public RemoteRegionRegistry(String regionName, URL remoteRegionURL) {
@@ -219,8 +230,10 @@ public class RemoteRegionRegistry implements LookupService<String> {
             } else {
                 long currDeltaGeneration = deltaGeneration.get();
                 Applications delta = null;
-                response = fetchRemoteRegistry(true);
-                if (null != response) {
+                response = fetchRemoteRegistry(true, deltaETag.get());
+                if (null != response && response.getStatus() == Status.NOT_MODIFIED.getStatusCode()) {
+                    logger.debug("The delta did not change since it was last applied");
+                } else if (null != response) {
                     if (response.getStatus() == Status.OK.getStatusCode()) {
                         delta = response.getEntity(Applications.class);
                         if (delta == null) {
@@ -236,9 +249,11 @@ public class RemoteRegionRegistry implements LookupService<String> {
                         logger.warn("The server does not allow the delta revision to be applied because it is not "
                                 + "safe. Hence got the full registry.");
                         this.closeResponse(response);
-                        response = fetchRemoteRegistry(true);
+                        response = fetchRemoteRegistry(true, null);
                     } else {
+                        fullRegistryETag.set(null);
                         updateDelta(delta);
+                        deltaETag.set(response.getHeaders().getFirst(HttpHeaders.ETAG));
                         String reconcileHashCode = getApplications()
                                 .getReconcileHashCode();
                         // There is a diff in number of instances for some reason
@@ -290,6 +305,7 @@ public class RemoteRegionRegistry implements LookupService<String> {
                             instance.getId());
                     getApplications().getRegisteredApplications(
                             instance.getAppName()).addInstance(instance);
+                    instanceIdToAppName.put(instance.getId(), instance.getAppName());
                 } else if (ActionType.MODIFIED.equals(instance.getActionType())) {
                     Application existingApp = getApplications()
                             .getRegisteredApplications(instance.getAppName());
@@ -301,6 +317,7 @@ public class RemoteRegionRegistry implements LookupService<String> {
 
                     getApplications().getRegisteredApplications(
                             instance.getAppName()).addInstance(instance);
+                    instanceIdToAppName.put(instance.getId(), instance.getAppName());
 
                 } else if (ActionType.DELETED.equals(instance.getActionType())) {
                     Application existingApp = getApplications()
@@ -312,6 +329,7 @@ public class RemoteRegionRegistry implements LookupService<String> {
                             instance.getId());
                     getApplications().getRegisteredApplications(
                             instance.getAppName()).removeInstance(instance);
+                    instanceIdToAppName.remove(instance.getId(), instance.getAppName());
                 }
             }
         }
@@ -321,6 +339,20 @@ public class RemoteRegionRegistry implements LookupService<String> {
 
     }
 
+    /**
+     * Replaces the locally stored applications along with the index of their instance ids.
+     */
+    private void setApplications(Applications apps) {
+        ConcurrentMap<String, String> newIndex = new ConcurrentHashMap<String, String>();
+        for (Application app : apps.getRegisteredApplications()) {
+            for (InstanceInfo instance : app.getInstancesAsIsFromEureka()) {
+                newIndex.put(instance.getId(), app.getName());
+            }
+        }
+        applications.set(apps);
+        instanceIdToAppName = newIndex;
+    }
+
     /**
      * Close HTTP response object and its respective resources.
      *
@@ -339,22 +371,27 @@ public class RemoteRegionRegistry implements LookupService<String> {
 
     /**
      * Gets the full registry information from the eureka server and stores it
-     * locally.
+     * locally, unless the registry did not change since it was last fetched.
      *
      * @return the full registry information.
      */
     public ClientResponse storeFullRegistry() {
         long currentUpdateGeneration = fullRegistryGeneration.get();
-        ClientResponse response = fetchRemoteRegistry(false);
+        ClientResponse response = fetchRemoteRegistry(false, fullRegistryETag.get());
         if (response == null) {
             logger.error("The response is null.");
             return null;
         }
+        if (response.getStatus() == Status.NOT_MODIFIED.getStatusCode()) {
+            logger.info("The registry did not change since it was last fetched");
+            return response;
+        }
         Applications apps = response.getEntity(Applications.class);
         if (apps == null) {
             logger.error("The application is null for some reason. Not storing this information");
         } else if (fullRegistryGeneration.compareAndSet(currentUpdateGeneration, currentUpdateGeneration + 1)) {
-            applications.set(apps);
+            setApplications(apps);
+            fullRegistryETag.set(response.getHeaders().getFirst(HttpHeaders.ETAG));
         } else {
             logger.warn("Not updating applications as another thread is updating it already");
         }
@@ -365,9 +402,11 @@ public class RemoteRegionRegistry implements LookupService<String> {
     /**
      * Fetch registry information from the remote region.
      * @param delta - true, if the fetch needs to get deltas, false otherwise
+     * @param eTag - the entity tag of the payload fetched last, if the remote region is to answer with 304 when
+     *             the payload did not change.
      * @return - response which has information about the data.
      */
-    private ClientResponse fetchRemoteRegistry(boolean delta) {
+    private ClientResponse fetchRemoteRegistry(boolean delta, @Nullable String eTag) {
         logger.info(
                 "Getting instance registry info from the eureka server : {} , delta : {}",
                 this.remoteRegionURL, delta);
@@ -376,13 +415,18 @@ public class RemoteRegionRegistry implements LookupService<String> {
 
             String urlPath = delta ? "apps/delta" : "apps/";
 
-            response = discoveryApacheClient
+            WebResource.Builder builder = discoveryApacheClient
                     .resource(this.remoteRegionURL.toString() + urlPath)
-                    .accept(MediaType.APPLICATION_JSON_TYPE)
-                    .get(ClientResponse.class);
+                    .accept(MediaType.APPLICATION_JSON_TYPE);
+            if (eTag != null) {
+                builder = builder.header(HttpHeaders.IF_NONE_MATCH, eTag);
+            }
+            response = builder.get(ClientResponse.class);
             int httpStatus = response.getStatus();
             if (httpStatus >= 200 && httpStatus < 300) {
                 logger.debug("Got the data successfully : {}", httpStatus);
+            } else if (httpStatus == Status.NOT_MODIFIED.getStatusCode()) {
+                logger.debug("The data did not change : {}", httpStatus);
             } else {
                 logger.warn("Cannot get the data from {} : {}", this.remoteRegionURL.toString(), httpStatus);
                 return null; // To short circuit entity evaluation.
@@ -411,7 +455,7 @@ public class RemoteRegionRegistry implements LookupService<String> {
                 reconcileHashCode, delta.getAppsHashCode());
 
         this.closeResponse(response);
-        response = this.fetchRemoteRegistry(false);
+        response = this.fetchRemoteRegistry(false, null);
         if (null == response) {
             logger.warn("Response is null while fetching remote registry during reconcile difference.");
             return null;
@@ -429,7 +473,7 @@ public class RemoteRegionRegistry implements LookupService<String> {
             reconcileString = reconcileString + "\n";
         }
         logger.warn("The reconcile string is {}", reconcileString);
-        applications.set(serverApps);
+        setApplications(serverApps);
         applicationsDelta.set(serverApps);
         logger.warn(
                 "The Reconcile hashcodes after complete sync up, client : {}, server : {}.",
@@ -466,16 +510,17 @@ public class RemoteRegionRegistry implements LookupService<String> {
 
     @Override
     public List<InstanceInfo> getInstancesById(String id) {
-        List<InstanceInfo> list = Collections.emptyList();
-
-        for (Application app : applications.get().getRegisteredApplications()) {
-            InstanceInfo info = app.getByInstanceId(id);
-            if (info != null) {
-                list.add(info);
-                return list;
+        String appName = instanceIdToAppName.get(id);
+        if (appName != null) {
+            Application app = getApplication(appName);
+            if (app != null) {
+                InstanceInfo info = app.getByInstanceId(id);
+                if (info != null) {
+                    return Collections.singletonList(info);
+                }
             }
         }
-        return list;
+        return Collections.emptyList();
     }
 
     public Applications getApplicationDeltas() {
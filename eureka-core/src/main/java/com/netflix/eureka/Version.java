@@ -28,8 +28,11 @@ package com.netflix.eureka;
 public enum Version {
     V1, V2;
 
+    // values() copies the array on every call, and versions are resolved on every request
+    private static final Version[] VALUES = values();
+
     public static Version toEnum(String v) {
-        for (Version version : Version.values()) {
+        for (Version version : VALUES) {
             if (version.name().equalsIgnoreCase(v)) {
                 return version;
             }
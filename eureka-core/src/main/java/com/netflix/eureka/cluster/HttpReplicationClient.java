@@ -1,6 +1,10 @@
 package com.netflix.eureka.cluster;
 
+import java.util.List;
+
 import com.netflix.discovery.shared.EurekaHttpClient;
+import com.netflix.eureka.cluster.protocol.RegistryDigest;
+import com.netflix.eureka.cluster.protocol.RegistryDigestEntryList;
 import com.netflix.eureka.cluster.protocol.ReplicationList;
 import com.netflix.eureka.cluster.protocol.ReplicationListResponse;
 import com.netflix.eureka.resources.ASGResource.ASGStatus;
@@ -14,4 +18,8 @@ public interface HttpReplicationClient extends EurekaHttpClient {
 
     HttpResponse<ReplicationListResponse> submitBatchUpdates(ReplicationList replicationList);
 
+    HttpResponse<RegistryDigest> getRegistryDigest();
+
+    HttpResponse<RegistryDigestEntryList> getRegistryDigestEntries(List<Integer> buckets);
+
 }
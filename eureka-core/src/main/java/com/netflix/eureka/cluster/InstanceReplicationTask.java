@@ -23,10 +23,13 @@ public abstract class InstanceReplicationTask extends ReplicationTask {
 
     private final boolean replicateInstanceInfo;
 
+    private final String coalescingKey;
+
     protected InstanceReplicationTask(String peerNodeName, Action action, String appName, String id) {
         super(peerNodeName, action);
         this.appName = appName;
         this.id = id;
+        this.coalescingKey = coalescingKeyOf(action, appName, id);
         this.instanceInfo = null;
         this.overriddenStatus = null;
         this.replicateInstanceInfo = false;
@@ -40,6 +43,7 @@ public abstract class InstanceReplicationTask extends ReplicationTask {
         super(peerNodeName, action);
         this.appName = instanceInfo.getAppName();
         this.id = instanceInfo.getId();
+        this.coalescingKey = coalescingKeyOf(action, appName, id);
         this.instanceInfo = instanceInfo;
         this.overriddenStatus = overriddenStatus;
         this.replicateInstanceInfo = replicateInstanceInfo;
@@ -54,6 +58,11 @@ public abstract class InstanceReplicationTask extends ReplicationTask {
         return true;
     }
 
+    @Override
+    public String getCoalescingKey() {
+        return coalescingKey;
+    }
+
     public String getAppName() {
         return appName;
     }
@@ -73,4 +82,22 @@ public abstract class InstanceReplicationTask extends ReplicationTask {
     public boolean shouldReplicateInstanceInfo() {
         return replicateInstanceInfo;
     }
+
+    /**
+     * Heartbeats and status changes carry the latest state of the instance, so the pending ones are superseded
+     * by newer ones. The status updates and the deletions of status overrides share their key, as each of them
+     * sets the overridden status. Registrations and cancellations are never coalesced, so that their order is
+     * kept.
+     */
+    private static String coalescingKeyOf(Action action, String appName, String id) {
+        switch (action) {
+            case Heartbeat:
+                return appName + '/' + id + ':' + action;
+            case StatusUpdate:
+            case DeleteStatusOverride:
+                return appName + '/' + id + ':' + Action.StatusUpdate;
+            default:
+                return null;
+        }
+    }
 }
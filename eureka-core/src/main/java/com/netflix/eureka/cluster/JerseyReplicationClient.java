@@ -6,6 +6,7 @@ import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.List;
 
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.appinfo.InstanceInfo.InstanceStatus;
@@ -15,6 +16,8 @@ import com.netflix.discovery.shared.EurekaJerseyClient.JerseyClient;
 import com.netflix.discovery.shared.JerseyEurekaHttpClient;
 import com.netflix.eureka.EurekaServerConfig;
 import com.netflix.eureka.EurekaServerIdentity;
+import com.netflix.eureka.cluster.protocol.RegistryDigest;
+import com.netflix.eureka.cluster.protocol.RegistryDigestEntryList;
 import com.netflix.eureka.cluster.protocol.ReplicationList;
 import com.netflix.eureka.cluster.protocol.ReplicationListResponse;
 import com.netflix.eureka.resources.ASGResource.ASGStatus;
@@ -162,6 +165,54 @@ public class JerseyReplicationClient extends JerseyEurekaHttpClient implements H
         }
     }
 
+    @Override
+    public HttpResponse<RegistryDigest> getRegistryDigest() {
+        ClientResponse response = null;
+        try {
+            response = jerseyApacheClient.resource(serviceUrl)
+                    .path(PeerEurekaNode.DIGEST_URL_PATH)
+                    .header(PeerEurekaNode.HEADER_REPLICATION, "true")
+                    .accept(MediaType.APPLICATION_JSON_TYPE)
+                    .get(ClientResponse.class);
+            if (!isSuccess(response.getStatus())) {
+                return HttpResponse.responseWith(response.getStatus());
+            }
+            return HttpResponse.responseWith(response.getStatus(), response.getEntity(RegistryDigest.class));
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    @Override
+    public HttpResponse<RegistryDigestEntryList> getRegistryDigestEntries(List<Integer> buckets) {
+        ClientResponse response = null;
+        try {
+            StringBuilder bucketList = new StringBuilder();
+            for (Integer bucket : buckets) {
+                if (bucketList.length() > 0) {
+                    bucketList.append(',');
+                }
+                bucketList.append(bucket);
+            }
+            response = jerseyApacheClient.resource(serviceUrl)
+                    .path(PeerEurekaNode.DIGEST_URL_PATH + "entries")
+                    .queryParam("buckets", bucketList.toString())
+                    .header(PeerEurekaNode.HEADER_REPLICATION, "true")
+                    .accept(MediaType.APPLICATION_JSON_TYPE)
+                    .get(ClientResponse.class);
+            if (!isSuccess(response.getStatus())) {
+                return HttpResponse.responseWith(response.getStatus());
+            }
+            return HttpResponse.responseWith(response.getStatus(), response.getEntity(RegistryDigestEntryList.class));
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
     @Override
     public void shutdown() {
         super.shutdown();
@@ -18,13 +18,24 @@ package com.netflix.eureka.cluster;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
 import com.netflix.discovery.shared.EurekaHttpClient.HttpResponse;
 import com.netflix.eureka.EurekaServerConfig;
 import com.netflix.eureka.PeerAwareInstanceRegistry;
 import com.netflix.eureka.PeerAwareInstanceRegistryImpl.Action;
+import com.netflix.eureka.cluster.protocol.RegistryDigest;
+import com.netflix.eureka.cluster.protocol.RegistryDigestEntry;
+import com.netflix.eureka.cluster.protocol.RegistryDigestEntryList;
 import com.netflix.eureka.resources.ASGResource.ASGStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +63,8 @@ public class PeerEurekaNode {
 
     public static final String BATCH_URL_PATH = "peerreplication/batch/";
 
+    public static final String DIGEST_URL_PATH = "peerreplication/digest/";
+
     public static final String HEADER_REPLICATION = "x-netflix-discovery-replication";
 
     private final String serviceUrl;
@@ -245,6 +258,92 @@ public class PeerEurekaNode {
         });
     }
 
+    /**
+     * Fetches the registry of the peer eureka node, bypassing the replication
+     * batchers. The response is decoded as it is read from the connection.
+     *
+     * @return the response holding the applications registered with the peer.
+     */
+    public HttpResponse<Applications> getApplications() {
+        return replicationClient.getApplications();
+    }
+
+    /**
+     * Repairs the registry of the peer eureka node from the local registry. The
+     * {@link RegistryDigest}s of both registries are compared, and the local
+     * instances in the buckets that differ are replicated if the peer is
+     * missing them or holds an older copy of them. Instances that only the
+     * peer holds are left to the peer, which repairs this node the same way,
+     * or to the expiry of their leases.
+     *
+     * <p>
+     * An instance the peer is missing may have been cancelled on the peer, and
+     * the cancellation not be replicated to this node yet, or at all. It is
+     * only replicated if its lease here was renewed within its renewal interval,
+     * so that a cancelled instance is not registered with the peer again.
+     * </p>
+     *
+     * @param localApps
+     *            the applications in the local registry.
+     * @param localDigest
+     *            the digest of the local applications.
+     * @param maxBuckets
+     *            the maximum number of differing buckets repaired in one go.
+     * @return the number of instances replicated to the peer.
+     * @throws Exception
+     */
+    public int repairRegistry(Applications localApps, RegistryDigest localDigest, int maxBuckets) throws Exception {
+        HttpResponse<RegistryDigest> digestResponse = replicationClient.getRegistryDigest();
+        if (digestResponse.getStatusCode() != 200 || digestResponse.getEntity() == null) {
+            logger.debug("Peer {} did not send its registry digest; statusCode={}", serviceUrl, digestResponse.getStatusCode());
+            return 0;
+        }
+        List<Integer> buckets = localDigest.diff(digestResponse.getEntity(), maxBuckets);
+        if (buckets.isEmpty()) {
+            return 0;
+        }
+        HttpResponse<RegistryDigestEntryList> entriesResponse = replicationClient.getRegistryDigestEntries(buckets);
+        if (entriesResponse.getStatusCode() != 200 || entriesResponse.getEntity() == null) {
+            logger.debug("Peer {} did not send its registry digest entries; statusCode={}", serviceUrl, entriesResponse.getStatusCode());
+            return 0;
+        }
+
+        Map<String, Long> peerTimestamps = new HashMap<String, Long>();
+        for (RegistryDigestEntry entry : entriesResponse.getEntity().getEntries()) {
+            peerTimestamps.put(entry.getAppName() + '/' + entry.getId(), entry.getLastDirtyTimestamp());
+        }
+        Set<Integer> differingBuckets = new HashSet<Integer>(buckets);
+        int repaired = 0;
+        for (Application app : localApps.getRegisteredApplications()) {
+            for (InstanceInfo info : app.getInstancesAsIsFromEureka()) {
+                if (!differingBuckets.contains(RegistryDigest.bucketOf(app.getName(), info.getId(), localDigest.getDepth()))) {
+                    continue;
+                }
+                Long peerTimestamp = peerTimestamps.get(app.getName() + '/' + info.getId());
+                Long localTimestamp = info.getLastDirtyTimestamp();
+                if (peerTimestamp == null) {
+                    if (!registry.isLeaseRenewedWithin(app.getName(), info.getId(), getRenewalIntervalMs(info))) {
+                        continue;
+                    }
+                } else if (localTimestamp == null || localTimestamp <= peerTimestamp) {
+                    continue;
+                }
+                register(info);
+                repaired++;
+            }
+        }
+        logger.debug("Compared {} buckets of the registry digest with peer {}, {} instances replicated",
+                buckets.size(), serviceUrl, repaired);
+        return repaired;
+    }
+
+    private static long getRenewalIntervalMs(InstanceInfo info) {
+        LeaseInfo leaseInfo = info.getLeaseInfo();
+        int renewalIntervalInSecs = leaseInfo == null
+                ? LeaseInfo.DEFAULT_LEASE_RENEWAL_INTERVAL : leaseInfo.getRenewalIntervalInSecs();
+        return renewalIntervalInSecs * 1000L;
+    }
+
     /**
      * Get the service Url of the peer eureka node.
      *
@@ -39,6 +39,14 @@ abstract class ReplicationTask {
 
     public abstract boolean isBatchingSupported();
 
+    /**
+     * Returns the key of the tasks this task supersedes while they are pending, or null if the task must be
+     * executed even if a newer task follows it.
+     */
+    public String getCoalescingKey() {
+        return null;
+    }
+
     public abstract HttpResponse<?> execute() throws Throwable;
 
     public void handleSuccess() {
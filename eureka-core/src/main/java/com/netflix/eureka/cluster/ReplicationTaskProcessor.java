@@ -1,7 +1,10 @@
 package com.netflix.eureka.cluster;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.discovery.shared.EurekaHttpClient.HttpResponse;
@@ -21,6 +24,15 @@ import org.slf4j.LoggerFactory;
 import static com.netflix.eureka.cluster.protocol.ReplicationInstance.ReplicationInstanceBuilder.aReplicationInstance;
 
 /**
+ * Replicates the tasks of one action to a peer, in batches if the peer supports it.
+ *
+ * <p>
+ * Tasks with a {@link ReplicationTask#getCoalescingKey() coalescing key} are coalesced while they are pending:
+ * the queue holds a single entry per key, and the latest task submitted with that key is the one executed
+ * once the entry is dequeued. The tasks it replaces are cancelled. A slow peer then receives the latest
+ * heartbeat of each instance, instead of every heartbeat queued while it was slow.
+ * </p>
+ *
  * @author Tomasz Bak
  */
 public class ReplicationTaskProcessor {
@@ -34,6 +46,11 @@ public class ReplicationTaskProcessor {
     private final long serverUnavailableSleepTime;
     private final MessageBatcher<ReplicationTask> batcher;
 
+    /**
+     * The latest task submitted for each coalescing key that has an entry in the queue.
+     */
+    private final ConcurrentMap<String, ReplicationTask> pendingTasks = new ConcurrentHashMap<String, ReplicationTask>();
+
     ReplicationTaskProcessor(String peerId,
                              String batcherName,
                              String batchedAction,
@@ -64,7 +81,11 @@ public class ReplicationTaskProcessor {
     private MessageProcessor<ReplicationTask> createMessageProcessor() {
         return new MessageProcessor<ReplicationTask>() {
             @Override
-            public void process(List<ReplicationTask> tasks) {
+            public void process(List<ReplicationTask> queued) {
+                List<ReplicationTask> tasks = takeLatest(queued);
+                if (tasks.isEmpty()) {
+                    return;
+                }
                 if (tasks.get(0).isBatchingSupported() && config.shouldBatchReplication()) {
                     executeBatch(tasks);
                 } else {
@@ -75,13 +96,65 @@ public class ReplicationTaskProcessor {
     }
 
     public boolean process(ReplicationTask replicationTask) {
+        return enqueue(replicationTask, true);
+    }
+
+    /**
+     * Queues the given task, unless a task with the same coalescing key is pending already.
+     *
+     * <p>
+     * A task whose key has no entry yet claims the key before it is queued, so the tasks submitted with the same
+     * key until then are coalesced into it. If the queue is full, the key is released and the latest of these
+     * tasks is cancelled, as none of them has an entry in the queue. No other thread removes the key meanwhile,
+     * as the key is only removed once its entry is dequeued.
+     * </p>
+     *
+     * @param replace
+     *            true if the given task is newer than the pending one, and replaces it. A task submitted again
+     *            is older than a pending one, and is cancelled instead.
+     */
+    private boolean enqueue(ReplicationTask replicationTask, boolean replace) {
+        String key = replicationTask.getCoalescingKey();
+        if (key != null) {
+            ReplicationTask pending = replace
+                    ? pendingTasks.put(key, replicationTask)
+                    : pendingTasks.putIfAbsent(key, replicationTask);
+            if (pending != null) {
+                DynamicCounter.increment("Replication_" + replicationTask.getAction().name() + "_coalesced");
+                (replace ? pending : replicationTask).cancel();
+                return true;
+            }
+        }
         boolean success = batcher.process(replicationTask);
         if (!success) {
+            if (key != null) {
+                // The entry has no place in the queue, so the tasks coalesced into it meanwhile are dropped with it
+                ReplicationTask latest = pendingTasks.remove(key);
+                if (latest != null && latest != replicationTask) {
+                    DynamicCounter.increment("Replication_" + latest.getAction().name() + "_dropped");
+                    latest.cancel();
+                }
+            }
             logger.error("Cannot find space in the replication pool for peer {}. Check the network connectivity or the traffic", peerId);
         }
         return success;
     }
 
+    /**
+     * Replaces the dequeued tasks with the latest tasks submitted with their coalescing keys.
+     */
+    private List<ReplicationTask> takeLatest(List<ReplicationTask> queued) {
+        List<ReplicationTask> tasks = new ArrayList<ReplicationTask>(queued.size());
+        for (ReplicationTask task : queued) {
+            String key = task.getCoalescingKey();
+            ReplicationTask latest = key == null ? task : pendingTasks.remove(key);
+            if (latest != null) {
+                tasks.add(latest);
+            }
+        }
+        return tasks;
+    }
+
     public void shutdown() {
         batcher.stop();
     }
@@ -223,7 +296,7 @@ public class ReplicationTaskProcessor {
         }
         for (ReplicationTask task : tasks) {
             if (!isLate(task)) {
-                process(task);
+                enqueue(task, false);
             }
         }
     }
@@ -0,0 +1,166 @@
+package com.netflix.eureka.cluster.protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.provider.Serializer;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+
+/**
+ * A hash tree over the (application, instance id, last dirty timestamp) of every instance in a registry, which
+ * peer eureka nodes exchange to find the instances they disagree on.
+ *
+ * <p>
+ * Every instance falls into one of <tt>2^depth</tt> buckets by the hash of its application name and id. A bucket
+ * hashes the instances in it regardless of their order, and every inner node of the tree hashes its two children,
+ * so two registries holding the same instances at the same timestamps have the same tree. Comparing two trees from
+ * the root down only descends into the subtrees that differ, and ends at the buckets whose instances have to be
+ * compared one by one.
+ * </p>
+ *
+ * <p>
+ * The nodes are stored like a binary heap: the root is at index 1, and the children of node <tt>i</tt> are at
+ * <tt>2i</tt> and <tt>2i + 1</tt>, so the buckets are the last <tt>2^depth</tt> nodes.
+ * </p>
+ */
+@JsonRootName("registryDigest")
+@Serializer("jackson") // For backwards compatibility with DiscoveryJerseyProvider
+public class RegistryDigest {
+
+    public static final int DEFAULT_DEPTH = 10;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int depth;
+    private final long[] nodes;
+
+    @JsonCreator
+    public RegistryDigest(@JsonProperty("depth") int depth, @JsonProperty("nodes") long[] nodes) {
+        this.depth = depth;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Builds the hash tree of the instances of the given applications.
+     */
+    public static RegistryDigest of(Applications applications, int depth) {
+        int bucketCount = 1 << depth;
+        long[] nodes = new long[2 * bucketCount];
+        for (Application app : applications.getRegisteredApplications()) {
+            for (InstanceInfo instanceInfo : app.getInstancesAsIsFromEureka()) {
+                long keyHash = keyHash(app.getName(), instanceInfo.getId());
+                nodes[bucketCount + bucketOf(keyHash, depth)] += entryHash(keyHash, instanceInfo.getLastDirtyTimestamp());
+            }
+        }
+        for (int i = bucketCount - 1; i > 0; i--) {
+            nodes[i] = mix(nodes[2 * i] * 31 + nodes[2 * i + 1]);
+        }
+        return new RegistryDigest(depth, nodes);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long[] getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Finds the buckets in which this tree differs from the given one, descending only into the subtrees whose
+     * hashes differ. If the trees do not have the same shape, all buckets differ.
+     *
+     * @param other the tree to compare with.
+     * @param maxBuckets the maximum number of buckets to return.
+     * @return the differing buckets, in ascending order.
+     */
+    public List<Integer> diff(RegistryDigest other, int maxBuckets) {
+        List<Integer> buckets = new ArrayList<Integer>();
+        int bucketCount = 1 << depth;
+        if (other.depth != depth || other.nodes == null || other.nodes.length != nodes.length) {
+            for (int bucket = 0; bucket < bucketCount && buckets.size() < maxBuckets; bucket++) {
+                buckets.add(bucket);
+            }
+            return buckets;
+        }
+        diff(other, 1, bucketCount, maxBuckets, buckets);
+        return buckets;
+    }
+
+    private void diff(RegistryDigest other, int node, int bucketCount, int maxBuckets, List<Integer> buckets) {
+        if (buckets.size() >= maxBuckets || nodes[node] == other.nodes[node]) {
+            return;
+        }
+        if (node >= bucketCount) {
+            buckets.add(node - bucketCount);
+            return;
+        }
+        diff(other, 2 * node, bucketCount, maxBuckets, buckets);
+        diff(other, 2 * node + 1, bucketCount, maxBuckets, buckets);
+    }
+
+    /**
+     * Gets the bucket of the tree of the given depth in which an instance falls.
+     */
+    public static int bucketOf(String appName, String id, int depth) {
+        return bucketOf(keyHash(appName, id), depth);
+    }
+
+    private static int bucketOf(long keyHash, int depth) {
+        return (int) (mix(keyHash) >>> (64 - depth));
+    }
+
+    private static long keyHash(String appName, String id) {
+        long hash = hash(FNV_OFFSET_BASIS, appName);
+        hash = (hash ^ '/') * FNV_PRIME;
+        return hash(hash, id);
+    }
+
+    private static long entryHash(long keyHash, Long lastDirtyTimestamp) {
+        return mix(keyHash ^ mix(lastDirtyTimestamp == null ? 0 : lastDirtyTimestamp));
+    }
+
+    // FNV-1a, which unlike String.hashCode() spreads over 64 bits
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    // The finalizer of MurmurHash3
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        RegistryDigest that = (RegistryDigest) o;
+
+        return depth == that.depth && Arrays.equals(nodes, that.nodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * depth + Arrays.hashCode(nodes);
+    }
+}
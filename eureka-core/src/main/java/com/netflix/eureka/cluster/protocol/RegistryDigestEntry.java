@@ -0,0 +1,60 @@
+package com.netflix.eureka.cluster.protocol;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.netflix.discovery.provider.Serializer;
+
+/**
+ * The version of an instance a peer eureka node holds in a bucket of its {@link RegistryDigest}.
+ */
+@Serializer("jackson") // For backwards compatibility with DiscoveryJerseyProvider
+public class RegistryDigestEntry {
+    private final String appName;
+    private final String id;
+    private final Long lastDirtyTimestamp;
+
+    @JsonCreator
+    public RegistryDigestEntry(@JsonProperty("appName") String appName,
+                               @JsonProperty("id") String id,
+                               @JsonProperty("lastDirtyTimestamp") Long lastDirtyTimestamp) {
+        this.appName = appName;
+        this.id = id;
+        this.lastDirtyTimestamp = lastDirtyTimestamp;
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getLastDirtyTimestamp() {
+        return lastDirtyTimestamp;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        RegistryDigestEntry that = (RegistryDigestEntry) o;
+
+        if (appName != null ? !appName.equals(that.appName) : that.appName != null)
+            return false;
+        if (id != null ? !id.equals(that.id) : that.id != null)
+            return false;
+        return !(lastDirtyTimestamp != null ? !lastDirtyTimestamp.equals(that.lastDirtyTimestamp) : that.lastDirtyTimestamp != null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = appName != null ? appName.hashCode() : 0;
+        result = 31 * result + (id != null ? id.hashCode() : 0);
+        result = 31 * result + (lastDirtyTimestamp != null ? lastDirtyTimestamp.hashCode() : 0);
+        return result;
+    }
+}
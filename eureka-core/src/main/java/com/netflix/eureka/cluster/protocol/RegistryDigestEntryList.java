@@ -0,0 +1,52 @@
+package com.netflix.eureka.cluster.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.netflix.discovery.provider.Serializer;
+
+/**
+ * The instances a peer eureka node holds in the requested buckets of its {@link RegistryDigest}.
+ */
+@JsonRootName("registryDigestEntryList")
+@Serializer("jackson") // For backwards compatibility with DiscoveryJerseyProvider
+public class RegistryDigestEntryList {
+    private final List<RegistryDigestEntry> entries;
+
+    public RegistryDigestEntryList() {
+        this.entries = new ArrayList<RegistryDigestEntry>();
+    }
+
+    @JsonCreator
+    public RegistryDigestEntryList(@JsonProperty("entries") List<RegistryDigestEntry> entries) {
+        this.entries = entries;
+    }
+
+    public List<RegistryDigestEntry> getEntries() {
+        return entries;
+    }
+
+    public void addEntry(RegistryDigestEntry entry) {
+        entries.add(entry);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        RegistryDigestEntryList that = (RegistryDigestEntryList) o;
+
+        return !(entries != null ? !entries.equals(that.entries) : that.entries != null);
+    }
+
+    @Override
+    public int hashCode() {
+        return entries != null ? entries.hashCode() : 0;
+    }
+}
@@ -45,6 +45,9 @@ public class Lease<T> {
     // Make it volatile so that the expiration task would see this quicker
     private volatile long lastUpdateTimestamp;
     private long duration;
+    // The expiry wheel tracking this lease and the bucket of the wheel the lease is currently in
+    private volatile LeaseExpiryWheel<T> expiryWheel;
+    private volatile long expiryBucket = LeaseExpiryWheel.NOT_SCHEDULED;
 
     public Lease(T r, int durationInSecs) {
         holder = r;
@@ -57,20 +60,25 @@ public class Lease<T> {
     /**
      * Renew the lease, use renewal duration if it was specified by the
      * associated {@link T} during registration, otherwise default duration is
-     * {@link #DEFAULT_DURATION_IN_SECS}.
+     * {@link #DEFAULT_DURATION_IN_SECS}. A {@link LeaseExpiryWheel} tracking the lease moves it to the
+     * bucket of its new deadline only when its old deadline passes, which keeps renewals cheap.
      */
     public void renew() {
         lastUpdateTimestamp = System.currentTimeMillis() + duration;
-
     }
 
     /**
-     * Cancels the lease by updating the eviction time.
+     * Cancels the lease by updating the eviction time. A cancelled lease is no longer tracked by its
+     * {@link LeaseExpiryWheel}.
      */
     public void cancel() {
         if (evictionTimestamp <= 0) {
             evictionTimestamp = System.currentTimeMillis();
         }
+        LeaseExpiryWheel<T> wheel = expiryWheel;
+        if (wheel != null) {
+            wheel.remove(this);
+        }
     }
 
     /**
@@ -102,6 +110,35 @@ public class Lease<T> {
         return (evictionTimestamp > 0 || System.currentTimeMillis() > (lastUpdateTimestamp + duration));
     }
 
+    /**
+     * Checks if the lease was registered or renewed within the given number of milliseconds.
+     */
+    public boolean isRenewedWithin(long periodMs) {
+        // renew() sets the last update timestamp ahead by the duration, see isExpired()
+        long lastRenewal = lastUpdateTimestamp == registrationTimestamp
+                ? lastUpdateTimestamp : lastUpdateTimestamp - duration;
+        return System.currentTimeMillis() - lastRenewal <= periodMs;
+    }
+
+    /**
+     * Gets the milliseconds since epoch after which the lease is expired unless it gets renewed.
+     */
+    long getExpiryTimestamp() {
+        return lastUpdateTimestamp + duration;
+    }
+
+    long getExpiryBucket() {
+        return expiryBucket;
+    }
+
+    void setExpiryBucket(long expiryBucket) {
+        this.expiryBucket = expiryBucket;
+    }
+
+    void setExpiryWheel(LeaseExpiryWheel<T> expiryWheel) {
+        this.expiryWheel = expiryWheel;
+    }
+
     /**
      * Gets the milliseconds since epoch when the lease was registered.
      *
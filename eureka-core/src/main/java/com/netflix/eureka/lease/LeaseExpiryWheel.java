@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.lease;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Tracks {@link Lease}s in buckets of their expiry deadline, so that finding the expired leases only
+ * touches the buckets whose deadline has passed instead of every lease in the registry.
+ *
+ * <p>
+ * A lease is added when it is created. {@link Lease#renew() Renewing} a lease only moves its deadline,
+ * so that renewals, by far the most frequent registry operation, do not touch the shared buckets. A lease that
+ * was renewed is moved to the bucket of its new deadline when its old bucket is polled, which happens at most
+ * once per lease duration. A bucket spans {@code bucketWidthMs} milliseconds of deadlines.
+ * </p>
+ *
+ * @param <T> the type of the lease holder.
+ */
+public class LeaseExpiryWheel<T> {
+
+    static final long NOT_SCHEDULED = Long.MIN_VALUE;
+
+    private final long bucketWidthMs;
+    private final ConcurrentSkipListMap<Long, Set<Lease<T>>> buckets = new ConcurrentSkipListMap<Long, Set<Lease<T>>>();
+
+    public LeaseExpiryWheel(long bucketWidthMs) {
+        this.bucketWidthMs = bucketWidthMs;
+    }
+
+    /**
+     * Starts tracking the expiry of the given lease, which from now on moves within this wheel when it is renewed.
+     */
+    public void add(Lease<T> lease) {
+        lease.setExpiryWheel(this);
+        reschedule(lease);
+    }
+
+    /**
+     * Stops tracking the expiry of the given lease.
+     */
+    public void remove(Lease<T> lease) {
+        long bucket = lease.getExpiryBucket();
+        lease.setExpiryBucket(NOT_SCHEDULED);
+        lease.setExpiryWheel(null);
+        removeFromBucket(bucket, lease);
+    }
+
+    /**
+     * Moves the lease to the bucket of its current deadline. The bucket recorded on the lease is updated before the
+     * lease is added to the new bucket and removed from the old one, so a racing removal may leave a lease in a
+     * bucket it no longer belongs to, but never out of the bucket it belongs to. Stale entries are dropped when their
+     * bucket is polled.
+     */
+    private void reschedule(Lease<T> lease) {
+        long oldBucket = lease.getExpiryBucket();
+        long newBucket = lease.getExpiryTimestamp() / bucketWidthMs;
+        if (oldBucket == newBucket) {
+            return;
+        }
+        lease.setExpiryBucket(newBucket);
+        Set<Lease<T>> leases = buckets.get(newBucket);
+        if (leases == null) {
+            Set<Lease<T>> newLeases = Collections.newSetFromMap(new ConcurrentHashMap<Lease<T>, Boolean>());
+            leases = buckets.putIfAbsent(newBucket, newLeases);
+            if (leases == null) {
+                leases = newLeases;
+            }
+        }
+        leases.add(lease);
+        removeFromBucket(oldBucket, lease);
+    }
+
+    /**
+     * Removes and returns all leases that have expired, looking only at the buckets whose deadlines have passed.
+     * Leases in these buckets that have been renewed since are moved to the bucket of their new deadline.
+     *
+     * @return the expired leases.
+     */
+    public List<Lease<T>> pollExpired() {
+        long currentBucket = System.currentTimeMillis() / bucketWidthMs;
+        List<Lease<T>> expired = new ArrayList<Lease<T>>();
+        ConcurrentNavigableMap<Long, Set<Lease<T>>> dueBuckets = buckets.headMap(currentBucket, true);
+        for (Map.Entry<Long, Set<Lease<T>>> entry : dueBuckets.entrySet()) {
+            long bucket = entry.getKey();
+            Set<Lease<T>> leases = entry.getValue();
+            for (Lease<T> lease : leases) {
+                if (lease.getExpiryBucket() != bucket) {
+                    // No longer tracked.
+                    leases.remove(lease);
+                } else if (lease.isExpired()) {
+                    leases.remove(lease);
+                    if (lease.getExpiryBucket() == bucket) {
+                        expired.add(lease);
+                    }
+                } else {
+                    reschedule(lease);
+                }
+            }
+            // Leases are only moved into future buckets, so buckets in the past do not fill up again.
+            if (bucket < currentBucket && leases.isEmpty()) {
+                buckets.remove(bucket, leases);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Gets the number of leases tracked by this wheel.
+     */
+    public int size() {
+        int size = 0;
+        for (Set<Lease<T>> leases : buckets.values()) {
+            size += leases.size();
+        }
+        return size;
+    }
+
+    /**
+     * Stops tracking all leases.
+     */
+    public void clear() {
+        buckets.clear();
+    }
+
+    private void removeFromBucket(long bucket, Lease<T> lease) {
+        if (bucket == NOT_SCHEDULED) {
+            return;
+        }
+        Set<Lease<T>> leases = buckets.get(bucket);
+        if (leases != null) {
+            leases.remove(lease);
+        }
+    }
+}
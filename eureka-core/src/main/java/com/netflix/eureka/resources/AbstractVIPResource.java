@@ -16,6 +16,7 @@
 
 package com.netflix.eureka.resources;
 
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 import com.netflix.eureka.CurrentRequestVersion;
@@ -33,7 +34,7 @@ abstract class AbstractVIPResource {
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractVIPResource.class);
 
-    protected Response getVipResponse(String version, String entityName, String acceptHeader,
+    protected Response getVipResponse(String version, String entityName, String acceptHeader, Request request,
                                       ResponseCache.Key.EntityType entityType) {
         if (!PeerAwareInstanceRegistryImpl.getInstance().shouldAllowAccess(false)) {
             return Response.status(Response.Status.FORBIDDEN).build();
@@ -44,15 +45,18 @@ abstract class AbstractVIPResource {
             keyType = ResponseCache.KeyType.XML;
         }
 
-        ResponseCache.Key cacheKey = new ResponseCache.Key(entityType, entityName, keyType,
+        ResponseCache.Key cacheKey = ResponseCache.getInstance().getKeys().getKey(entityType, entityName, keyType,
                 CurrentRequestVersion.get());
 
-        String payLoad = ResponseCache.getInstance().get(cacheKey);
+        ResponseCache.Value payLoad = ResponseCache.getInstance().getValue(cacheKey);
 
-        if (payLoad != null) {
+        if (payLoad != null && !payLoad.isEmpty()) {
             logger.debug("Found: {}", entityName);
-            return Response.ok(payLoad).build();
+            return CachedResponses.toResponse(request, payLoad, null);
         } else {
+            if (payLoad != null) {
+                payLoad.release();
+            }
             logger.debug("Not Found: {}", entityName);
             return Response.status(Response.Status.NOT_FOUND).build();
         }
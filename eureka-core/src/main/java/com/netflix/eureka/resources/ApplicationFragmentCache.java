@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.netflix.discovery.converters.EurekaJacksonCodec;
+import com.netflix.discovery.converters.XmlXStream;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.eureka.RegistrySnapshot;
+import com.netflix.eureka.RegistrySnapshot.VersionedApplication;
+import com.netflix.eureka.Version;
+import com.netflix.eureka.resources.ResponseCache.KeyType;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Monitors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the serialized form of every application published to the {@link RegistrySnapshot}, so that the
+ * full registry payload can be written by concatenating them and only the applications that changed since
+ * the last payload are serialized again.
+ *
+ * <p>
+ * A fragment is the exact text the configured codec produces for an application inside an
+ * {@link Applications} document, encoded in <em>UTF-8</em>. The fragments are written to the payload as they
+ * are, so the payload is never held as a single string. It is cut out of a single application document by
+ * removing the envelope the codec writes around an empty one, which keeps the assembled payload identical to
+ * what serializing the whole {@link Applications} would produce. Fragments are tied to the snapshot version of
+ * their application and applications that are not the published snapshot copy, like the ones merged with remote
+ * regions, are always serialized.
+ * </p>
+ */
+class ApplicationFragmentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApplicationFragmentCache.class);
+
+    private static final String DUMMY_HASH_CODE = "";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Cache<FragmentKey, Fragment> fragments;
+    private final ConcurrentMap<FragmentKey, Envelope> envelopes = new ConcurrentHashMap<FragmentKey, Envelope>();
+
+    private final Counter fragmentHits = Monitors.newCounter("serialize-all-fragment-hits");
+    private final Counter fragmentMisses = Monitors.newCounter("serialize-all-fragment-misses");
+
+    ApplicationFragmentCache(long expirationInSeconds) {
+        fragments = CacheBuilder.newBuilder().initialCapacity(1000)
+                .expireAfterWrite(expirationInSeconds, TimeUnit.SECONDS)
+                .build();
+        try {
+            Monitors.registerObject(this);
+        } catch (Throwable e) {
+            logger.warn("Cannot register the JMX monitor for the application fragment cache :", e);
+        }
+    }
+
+    /**
+     * Serializes the given applications to the given stream in <em>UTF-8</em>, reusing the fragments of the
+     * applications that are unchanged in the snapshot.
+     */
+    // The registry version travels in the versions__delta field, which only has deprecated accessors
+    @SuppressWarnings("deprecation")
+    void serialize(KeyType type, Version version, Applications apps, RegistrySnapshot snapshot,
+                   OutputStream out) throws IOException {
+        Envelope envelope = getEnvelope(type, version);
+        String head = serialize(type, emptyApplications(apps.getVersion(), apps.getAppsHashCode()));
+        int tailStart = head.length() - envelope.tailLength;
+
+        List<Application> registeredApps = apps.getRegisteredApplications();
+        out.write(head.substring(0, tailStart).getBytes(UTF_8));
+        boolean first = true;
+        for (Application app : registeredApps) {
+            if (!first) {
+                out.write(envelope.separator);
+            }
+            first = false;
+            out.write(getFragment(type, version, app, snapshot, envelope));
+        }
+        out.write(head.substring(tailStart).getBytes(UTF_8));
+    }
+
+    private byte[] getFragment(KeyType type, Version version, Application app, RegistrySnapshot snapshot,
+                               Envelope envelope) {
+        VersionedApplication published = snapshot.getApplication(app.getName());
+        if (published == null || published.getApplication() != app) {
+            fragmentMisses.increment();
+            return envelope.cut(serialize(type, singleApplication(app)));
+        }
+        FragmentKey key = new FragmentKey(app.getName(), type, version);
+        Fragment fragment = fragments.getIfPresent(key);
+        if (fragment != null && fragment.appVersion == published.getVersion()) {
+            fragmentHits.increment();
+            return fragment.bytes;
+        }
+        fragmentMisses.increment();
+        fragment = new Fragment(published.getVersion(), envelope.cut(serialize(type, singleApplication(app))));
+        fragments.put(key, fragment);
+        return fragment.bytes;
+    }
+
+    /**
+     * Derives where the applications go in the document of the given type by comparing an empty document with
+     * a document holding a single application.
+     */
+    private Envelope getEnvelope(KeyType type, Version version) {
+        FragmentKey key = new FragmentKey(null, type, version);
+        Envelope envelope = envelopes.get(key);
+        if (envelope == null) {
+            String empty = serialize(type, emptyApplications(1L, DUMMY_HASH_CODE));
+            Application probe = new Application("PROBE");
+            String single = serialize(type, singleApplication(probe));
+
+            int headLength = 0;
+            int maxHead = Math.min(empty.length(), single.length());
+            while (headLength < maxHead && empty.charAt(headLength) == single.charAt(headLength)) {
+                headLength++;
+            }
+            int tailLength = 0;
+            int maxTail = Math.min(empty.length() - headLength, single.length() - headLength);
+            while (tailLength < maxTail && empty.charAt(empty.length() - 1 - tailLength)
+                    == single.charAt(single.length() - 1 - tailLength)) {
+                tailLength++;
+            }
+            envelope = new Envelope(headLength, tailLength, type == KeyType.JSON ? "," : "");
+            envelopes.putIfAbsent(key, envelope);
+        }
+        return envelope;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Applications emptyApplications(Long version, String appsHashCode) {
+        Applications apps = new Applications();
+        apps.setVersion(version);
+        apps.setAppsHashCode(appsHashCode);
+        return apps;
+    }
+
+    private static Applications singleApplication(Application app) {
+        Applications apps = emptyApplications(1L, DUMMY_HASH_CODE);
+        apps.addApplication(app);
+        return apps;
+    }
+
+    private static String serialize(KeyType type, Applications apps) {
+        if (type == KeyType.JSON) {
+            return EurekaJacksonCodec.getInstance().writeToString(apps);
+        } else {
+            return XmlXStream.getInstance().toXML(apps);
+        }
+    }
+
+    private static final class Envelope {
+        private final int headLength;
+        private final int tailLength;
+        private final byte[] separator;
+
+        Envelope(int headLength, int tailLength, String separator) {
+            this.headLength = headLength;
+            this.tailLength = tailLength;
+            this.separator = separator.getBytes(UTF_8);
+        }
+
+        byte[] cut(String singleApplicationDocument) {
+            return singleApplicationDocument.substring(headLength, singleApplicationDocument.length() - tailLength)
+                    .getBytes(UTF_8);
+        }
+    }
+
+    private static final class Fragment {
+        private final long appVersion;
+        private final byte[] bytes;
+
+        Fragment(long appVersion, byte[] bytes) {
+            this.appVersion = appVersion;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class FragmentKey {
+        private final String appName;
+        private final KeyType type;
+        private final Version version;
+
+        FragmentKey(String appName, KeyType type, Version version) {
+            this.appName = appName;
+            this.type = type;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FragmentKey)) {
+                return false;
+            }
+            FragmentKey that = (FragmentKey) o;
+            return (appName == null ? that.appName == null : appName.equals(that.appName))
+                    && type == that.type && version == that.version;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = appName != null ? appName.hashCode() : 0;
+            result = 31 * result + type.hashCode();
+            result = 31 * result + (version != null ? version.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -23,6 +23,8 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
@@ -66,12 +68,16 @@ public class ApplicationResource {
      * @param acceptHeader
      *            the accept header of the request to indicate whether to serve
      *            JSON or XML data.
+     * @param request
+     *            the request, answered with {@link Status#NOT_MODIFIED} if its
+     *            <tt>If-None-Match</tt> header holds the tag of the current payload.
      * @return the response containing information about a particular
      *         application.
      */
     @GET
     public Response getApplication(@PathParam("version") String version,
-                                   @HeaderParam("Accept") final String acceptHeader) {
+                                   @HeaderParam("Accept") final String acceptHeader,
+                                   @Context Request request) {
         if (!PeerAwareInstanceRegistryImpl.getInstance().shouldAllowAccess(false)) {
             return Response.status(Status.FORBIDDEN).build();
         }
@@ -84,14 +90,18 @@ public class ApplicationResource {
             keyType = KeyType.XML;
         }
 
-        Key cacheKey = new Key(Key.EntityType.Application, appName, keyType, CurrentRequestVersion.get());
+        Key cacheKey = ResponseCache.getInstance().getKeys().getKey(Key.EntityType.Application, appName, keyType,
+                CurrentRequestVersion.get());
 
-        String payLoad = ResponseCache.getInstance().get(cacheKey);
+        ResponseCache.Value payLoad = ResponseCache.getInstance().getValue(cacheKey);
 
-        if (payLoad != null) {
+        if (payLoad != null && !payLoad.isEmpty()) {
             logger.debug("Found: {}", appName);
-            return Response.ok(payLoad).build();
+            return CachedResponses.toResponse(request, payLoad, null);
         } else {
+            if (payLoad != null) {
+                payLoad.release();
+            }
             logger.debug("Not Found: {}", appName);
             return Response.status(Status.NOT_FOUND).build();
         }
@@ -24,10 +24,11 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
-import java.util.Arrays;
+import java.io.IOException;
 
 import com.netflix.eureka.AbstractInstanceRegistry;
 import com.netflix.eureka.CurrentRequestVersion;
@@ -38,6 +39,8 @@ import com.netflix.eureka.Version;
 import com.netflix.eureka.resources.ResponseCache.Key;
 import com.netflix.eureka.resources.ResponseCache.KeyType;
 import com.netflix.eureka.util.EurekaMonitors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A <em>jersey</em> resource that handles request related to all
@@ -49,10 +52,10 @@ import com.netflix.eureka.util.EurekaMonitors;
 @Path("/{version}/apps")
 @Produces({"application/xml", "application/json"})
 public class ApplicationsResource {
+    private static final Logger logger = LoggerFactory.getLogger(ApplicationsResource.class);
+
     private static final String HEADER_ACCEPT = "Accept";
     private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
-    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
-    private static final String HEADER_GZIP_VALUE = "gzip";
     private static final String HEADER_JSON_VALUE = "json";
     private final EurekaServerConfig eurekaConfig = EurekaServerConfigurationManager
             .getInstance().getConfiguration();
@@ -89,6 +92,9 @@ public class ApplicationsResource {
      *            compressed or uncompressed data.
      * @param uriInfo
      *            the {@link java.net.URI} information of the request made.
+     * @param request
+     *            the request, answered with {@link Status#NOT_MODIFIED} if its
+     *            <tt>If-None-Match</tt> header holds the tag of the current payload.
      * @param regionsStr A comma separated list of remote regions from which the
      *                instances will also be returned. The applications returned
      *                from the remote region can be limited to the applications
@@ -100,15 +106,13 @@ public class ApplicationsResource {
     public Response getContainers(@PathParam("version") String version,
                                   @HeaderParam(HEADER_ACCEPT) String acceptHeader,
                                   @HeaderParam(HEADER_ACCEPT_ENCODING) String acceptEncoding,
-                                  @Context UriInfo uriInfo, @Nullable @QueryParam("regions") String regionsStr) {
+                                  @Context UriInfo uriInfo, @Context Request request,
+                                  @Nullable @QueryParam("regions") String regionsStr) {
 
         boolean isRemoteRegionRequested = null != regionsStr && !regionsStr.isEmpty();
-        String[] regions = null;
         if (!isRemoteRegionRequested) {
             EurekaMonitors.GET_ALL.increment();
         } else {
-            regions = regionsStr.toLowerCase().split(",");
-            Arrays.sort(regions); // So we don't have different caches for same regions queried in different order.
             EurekaMonitors.GET_ALL_WITH_REMOTE_REGIONS.increment();
         }
 
@@ -124,17 +128,10 @@ public class ApplicationsResource {
             keyType = KeyType.XML;
         }
 
-        Key cacheKey = new Key(Key.EntityType.Application, ResponseCache.ALL_APPS, regions, keyType,
-                CurrentRequestVersion.get());
+        Key cacheKey = ResponseCache.getInstance().getKeys().getAllAppsKey(ResponseCache.ALL_APPS,
+                regionsStr, keyType, CurrentRequestVersion.get());
 
-        if (acceptEncoding != null
-                && acceptEncoding.contains(HEADER_GZIP_VALUE)) {
-            return Response.ok(ResponseCache.getInstance().getGZIP(cacheKey))
-                    .header(HEADER_CONTENT_ENCODING, HEADER_GZIP_VALUE).build();
-        } else {
-            return Response.ok(ResponseCache.getInstance().get(cacheKey))
-                    .build();
-        }
+        return toResponse(request, ResponseCache.getInstance().getValue(cacheKey), acceptEncoding);
     }
 
     /**
@@ -157,6 +154,18 @@ public class ApplicationsResource {
      * are expected to handle this duplicate information.
      * <p>
      *
+     * <p>
+     * Clients that only query the local region can instead pass the registry
+     * version of the last registry information they received, in which case
+     * only the changes made after that version are returned. If these changes
+     * are no longer retained, as configured by
+     * {@link EurekaServerConfig#getRegistryChangeLogSize()}, the response is
+     * {@link Status#GONE} and the client has to fetch the full registry. The
+     * version is ignored if the full registry these clients get also holds
+     * applications of remote regions, see
+     * {@link AbstractInstanceRegistry#isFullRegistryLocalOnly()}.
+     * </p>
+     *
      * @param version
      *            the version of the request.
      * @param acceptHeader
@@ -168,6 +177,12 @@ public class ApplicationsResource {
      *            compressed or uncompressed data.
      * @param uriInfo
      *            the {@link java.net.URI} information of the request made.
+     * @param request
+     *            the request, answered with {@link Status#NOT_MODIFIED} if its
+     *            <tt>If-None-Match</tt> header holds the tag of the current payload.
+     * @param sinceStr the registry version the client is current with, ignored
+     *                 if remote regions are requested or included in the full
+     *                 registry.
      * @return response containing the delta information of the
      *         {@link AbstractInstanceRegistry}.
      */
@@ -177,7 +192,9 @@ public class ApplicationsResource {
             @PathParam("version") String version,
             @HeaderParam(HEADER_ACCEPT) String acceptHeader,
             @HeaderParam(HEADER_ACCEPT_ENCODING) String acceptEncoding,
-            @Context UriInfo uriInfo, @Nullable @QueryParam("regions") String regionsStr) {
+            @Context UriInfo uriInfo, @Context Request request,
+            @Nullable @QueryParam("regions") String regionsStr,
+            @Nullable @QueryParam("since") String sinceStr) {
 
         boolean isRemoteRegionRequested = null != regionsStr && !regionsStr.isEmpty();
 
@@ -188,12 +205,9 @@ public class ApplicationsResource {
             return Response.status(Status.FORBIDDEN).build();
         }
 
-        String[] regions = null;
         if (!isRemoteRegionRequested) {
             EurekaMonitors.GET_ALL_DELTA.increment();
         } else {
-            regions = regionsStr.toLowerCase().split(",");
-            Arrays.sort(regions); // So we don't have different caches for same regions queried in different order.
             EurekaMonitors.GET_ALL_DELTA_WITH_REMOTE_REGIONS.increment();
         }
 
@@ -202,15 +216,44 @@ public class ApplicationsResource {
         if (acceptHeader == null || !acceptHeader.contains(HEADER_JSON_VALUE)) {
             keyType = KeyType.XML;
         }
-        Key cacheKey = new Key(Key.EntityType.Application, ResponseCache.ALL_APPS_DELTA, regions, keyType,
-                CurrentRequestVersion.get());
-        if (acceptEncoding != null
-                && acceptEncoding.contains(HEADER_GZIP_VALUE)) {
-            return Response.ok(ResponseCache.getInstance().getGZIP(cacheKey))
-                    .header(HEADER_CONTENT_ENCODING, HEADER_GZIP_VALUE).build();
-        } else {
-            return Response.ok(ResponseCache.getInstance().get(cacheKey))
-                    .build();
+        Key cacheKey = ResponseCache.getInstance().getKeys().getAllAppsKey(ResponseCache.ALL_APPS_DELTA,
+                regionsStr, keyType, CurrentRequestVersion.get());
+        if (!isRemoteRegionRequested && sinceStr != null && !sinceStr.isEmpty()
+                && PeerAwareInstanceRegistryImpl.getInstance().isFullRegistryLocalOnly()) {
+            return getContainerDifferentialSince(cacheKey, sinceStr, request, acceptEncoding);
+        }
+        return toResponse(request, ResponseCache.getInstance().getValue(cacheKey), acceptEncoding);
+    }
+
+    private static Response getContainerDifferentialSince(Key key, String sinceStr, Request request,
+                                                          String acceptEncoding) {
+        long since;
+        try {
+            since = Long.parseLong(sinceStr);
+        } catch (NumberFormatException e) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        ResponseCache.Value delta;
+        try {
+            delta = ResponseCache.getInstance().getDeltaSince(key, since);
+        } catch (IOException e) {
+            logger.error("Cannot serialize the registry delta since version " + since, e);
+            return Response.serverError().build();
+        }
+        if (delta == null) {
+            return Response.status(Status.GONE).build();
+        }
+        return toResponse(request, delta, acceptEncoding);
+    }
+
+    private static Response toResponse(Request request, @Nullable ResponseCache.Value value, String acceptEncoding) {
+        if (value == null) {
+            return Response.ok().build();
+        }
+        if (value.isEmpty()) {
+            value.release();
+            return Response.ok().build();
         }
+        return CachedResponses.toResponse(request, value, acceptEncoding);
     }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.netflix.eureka.Version;
+import com.netflix.eureka.resources.ResponseCache.Key;
+import com.netflix.eureka.resources.ResponseCache.KeyType;
+
+/**
+ * The canonical {@link Key}s of the requests served from the {@link ResponseCache}, so that the requests
+ * reading the cache do not create a key each.
+ *
+ * <p>
+ * The keys of the full registry and of its delta are built up front, for every set of the configured remote
+ * regions, the set being the bitmask of the indexes of its regions. The requested regions are matched in place
+ * against the configured ones, and the key of a request listing a region that is not configured is created
+ * for that request, as it was before. The keys of applications and VIPs are built on their first request, up
+ * to {@link #MAX_NAMED_ENTITIES} names per entity type.
+ * </p>
+ */
+class CacheKeys {
+
+    /**
+     * The number of remote regions the keys are built for, as there are 2^n sets of n regions.
+     */
+    static final int MAX_REMOTE_REGIONS = 8;
+
+    /**
+     * The number of names the keys are kept for per entity type, as the names are requested by clients.
+     */
+    static final int MAX_NAMED_ENTITIES = 10000;
+
+    private static final KeyType[] KEY_TYPES = KeyType.values();
+    private static final Version[] VERSIONS = Version.values();
+    private static final int FORMS = KEY_TYPES.length * VERSIONS.length;
+
+    private final String[] remoteRegions;
+    private final Key[] allAppsKeys;
+    private final Key[] allAppsDeltaKeys;
+    private final EnumMap<Key.EntityType, ConcurrentMap<String, Key[]>> namedKeys =
+            new EnumMap<Key.EntityType, ConcurrentMap<String, Key[]>>(Key.EntityType.class);
+
+    CacheKeys(Collection<String> remoteRegionNames) {
+        List<String> regions = new ArrayList<String>();
+        for (String region : remoteRegionNames) {
+            String lowerCase = region.toLowerCase();
+            if (!regions.contains(lowerCase)) {
+                regions.add(lowerCase);
+            }
+        }
+        String[] sorted = regions.toArray(new String[regions.size()]);
+        Arrays.sort(sorted);
+        this.remoteRegions = Arrays.copyOf(sorted, Math.min(sorted.length, MAX_REMOTE_REGIONS));
+
+        this.allAppsKeys = buildRegionKeys(ResponseCache.ALL_APPS);
+        this.allAppsDeltaKeys = buildRegionKeys(ResponseCache.ALL_APPS_DELTA);
+        for (Key.EntityType entityType : Key.EntityType.values()) {
+            namedKeys.put(entityType, new ConcurrentHashMap<String, Key[]>());
+        }
+    }
+
+    /**
+     * Gets the key of the full registry, or of its delta.
+     *
+     * @param name
+     *            either {@link ResponseCache#ALL_APPS} or {@link ResponseCache#ALL_APPS_DELTA}.
+     * @param regionsStr
+     *            the comma separated remote regions requested, or null if none is.
+     */
+    Key getAllAppsKey(String name, @Nullable String regionsStr, KeyType type, Version version) {
+        Key[] keys = ResponseCache.ALL_APPS_DELTA.equals(name) ? allAppsDeltaKeys : allAppsKeys;
+        int mask = regionsStr == null || regionsStr.isEmpty() ? 0 : regionMask(regionsStr);
+        if (mask < 0) {
+            String[] regions = regionsStr.toLowerCase().split(",");
+            Arrays.sort(regions); // So we don't have different caches for same regions queried in different order.
+            return new Key(Key.EntityType.Application, name, regions, type, version);
+        }
+        return keys[mask * FORMS + formIndex(type, version)];
+    }
+
+    /**
+     * Gets the key of a single application or VIP.
+     */
+    Key getKey(Key.EntityType entityType, String name, KeyType type, Version version) {
+        ConcurrentMap<String, Key[]> keysByName = namedKeys.get(entityType);
+        Key[] keys = keysByName.get(name);
+        if (keys == null) {
+            if (keysByName.size() >= MAX_NAMED_ENTITIES) {
+                return new Key(entityType, name, type, version);
+            }
+            keys = new Key[FORMS];
+            for (KeyType keyType : KEY_TYPES) {
+                for (Version v : VERSIONS) {
+                    keys[formIndex(keyType, v)] = new Key(entityType, name, keyType, v);
+                }
+            }
+            Key[] existing = keysByName.putIfAbsent(name, keys);
+            if (existing != null) {
+                keys = existing;
+            }
+        }
+        return keys[formIndex(type, version)];
+    }
+
+    private Key[] buildRegionKeys(String name) {
+        Key[] keys = new Key[(1 << remoteRegions.length) * FORMS];
+        for (int mask = 0; mask < 1 << remoteRegions.length; mask++) {
+            String[] regions = mask == 0 ? null : regionsOf(mask);
+            for (KeyType type : KEY_TYPES) {
+                for (Version version : VERSIONS) {
+                    keys[mask * FORMS + formIndex(type, version)] =
+                            new Key(Key.EntityType.Application, name, regions, type, version);
+                }
+            }
+        }
+        return keys;
+    }
+
+    private String[] regionsOf(int mask) {
+        String[] regions = new String[Integer.bitCount(mask)];
+        int count = 0;
+        for (int i = 0; i < remoteRegions.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                regions[count++] = remoteRegions[i];
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Matches the given comma separated regions against the configured ones, ignoring their case.
+     *
+     * @return the bitmask of the indexes of the regions, or -1 if a region is not configured.
+     */
+    private int regionMask(String regionsStr) {
+        int mask = 0;
+        int length = regionsStr.length();
+        int start = 0;
+        while (start <= length) {
+            int end = regionsStr.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int index = regionIndex(regionsStr, start, end);
+            if (index < 0) {
+                return -1;
+            }
+            mask |= 1 << index;
+            start = end + 1;
+        }
+        return mask;
+    }
+
+    private int regionIndex(String regionsStr, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < remoteRegions.length; i++) {
+            String region = remoteRegions[i];
+            if (region.length() == length && regionsStr.regionMatches(true, start, region, 0, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int formIndex(KeyType type, Version version) {
+        return type.ordinal() * VERSIONS.length + version.ordinal();
+    }
+}
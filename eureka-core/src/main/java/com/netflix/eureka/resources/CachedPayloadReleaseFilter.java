@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+/**
+ * Filter releasing the {@link ResponseCache} payloads retained for the responses to a request once the request
+ * completes. The payloads are released when they are written, so this only releases the ones that were not,
+ * like the payloads of responses to <tt>HEAD</tt> requests, or of responses that failed or were replaced before
+ * they were written.
+ *
+ * <p>
+ * The filter has to be mapped ahead of the <em>jersey</em> container, as it tracks the payloads retained by the
+ * thread processing the request.
+ * </p>
+ */
+public class CachedPayloadReleaseFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!CachedResponses.beginRequest()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            CachedResponses.completeRequest();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import com.netflix.eureka.resources.CachedResponses.PendingPayload;
+
+/**
+ * A <em>jersey</em> provider writing the payloads of the {@link ResponseCache} straight from the buffers they are
+ * kept in. The length of the payload is known up front, so the responses carry a content length.
+ */
+@Provider
+public class CachedPayloadWriter implements MessageBodyWriter<PendingPayload> {
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == PendingPayload.class;
+    }
+
+    @Override
+    public long getSize(PendingPayload payload, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return payload.getLength();
+    }
+
+    @Override
+    public void writeTo(PendingPayload payload, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+                        OutputStream entityStream) throws IOException {
+        payload.writeTo(entityStream);
+    }
+}
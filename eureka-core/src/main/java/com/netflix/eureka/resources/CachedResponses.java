@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.netflix.eureka.EurekaServerConfigurationManager;
+
+/**
+ * Builds the responses carrying {@link ResponseCache} payloads.
+ *
+ * <p>
+ * Every response is tagged with the entity tag of its payload, and a request whose <tt>If-None-Match</tt>
+ * header holds that tag gets a <tt>304 Not Modified</tt> response without the payload.
+ * </p>
+ *
+ * <p>
+ * Payloads are sent in the first configured content encoding the client accepts. A request for a payload
+ * which is not encoded yet waits a little for it to be, and is sent the uncompressed payload if it is not
+ * encoded by then. Payloads are written from the buffers they are kept in by {@link CachedPayloadWriter}, and
+ * stay retained until they are written.
+ * </p>
+ *
+ * <p>
+ * Responses whose payload is never written, like the ones to <tt>HEAD</tt> requests or the ones failed before
+ * they are written, are released when their request completes, by {@link CachedPayloadReleaseFilter}.
+ * </p>
+ */
+final class CachedResponses {
+
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String IDENTITY_ENCODING = "identity";
+
+    /**
+     * The payloads retained for the responses to the request processed by the thread, if its completion is
+     * tracked.
+     */
+    private static final ThreadLocal<List<PendingPayload>> PENDING_PAYLOADS = new ThreadLocal<List<PendingPayload>>();
+
+    private CachedResponses() {
+    }
+
+    /**
+     * Starts tracking the payloads retained for the responses to the request processed by the thread.
+     *
+     * @return true if the request was not tracked yet, in which case the caller has to complete it.
+     */
+    static boolean beginRequest() {
+        if (PENDING_PAYLOADS.get() != null) {
+            return false;
+        }
+        PENDING_PAYLOADS.set(new ArrayList<PendingPayload>(1));
+        return true;
+    }
+
+    /**
+     * Releases the payloads retained for the responses to the request processed by the thread which were not
+     * written, and stops tracking them.
+     */
+    static void completeRequest() {
+        List<PendingPayload> pending = PENDING_PAYLOADS.get();
+        if (pending == null) {
+            return;
+        }
+        PENDING_PAYLOADS.remove();
+        for (int i = 0; i < pending.size(); i++) {
+            pending.get(i).release();
+        }
+    }
+
+    /**
+     * Builds the response for the given payload, taking over the reference the caller holds to it.
+     *
+     * @param request
+     *            the request, used to evaluate its <tt>If-None-Match</tt> header.
+     * @param value
+     *            the non empty payload.
+     * @param acceptEncoding
+     *            the <tt>Accept-Encoding</tt> header of the request, or null to send the uncompressed payload.
+     */
+    static Response toResponse(Request request, ResponseCache.Value value, @Nullable String acceptEncoding) {
+        boolean released = true;
+        try {
+            String encoding = value.selectEncoding(acceptEncoding);
+            if (encoding == null && acceptEncoding != null) {
+                // The wait is only read when the payload may have to be waited for, as reading it allocates
+                encoding = value.awaitEncoding(acceptEncoding, EurekaServerConfigurationManager.getInstance()
+                        .getConfiguration().getResponseCacheCompressionWaitMs());
+            }
+            CachedPayload entity = value.getEntity(encoding);
+            ResponseBuilder notModified = request.evaluatePreconditions(entity.getEntityTag());
+            if (notModified != null) {
+                return notModified.build();
+            }
+            PendingPayload pending = new PendingPayload(entity);
+            List<PendingPayload> pendingPayloads = PENDING_PAYLOADS.get();
+            if (pendingPayloads != null) {
+                pendingPayloads.add(pending);
+            }
+            released = false;
+            ResponseBuilder builder = Response.ok(pending);
+            if (encoding != null) {
+                builder.header(HEADER_CONTENT_ENCODING, encoding);
+            } else if (acceptEncoding != null) {
+                // Keeps the container from compressing the payload on the request thread
+                builder.header(HEADER_CONTENT_ENCODING, IDENTITY_ENCODING);
+            }
+            return builder.tag(entity.getEntityTag()).build();
+        } finally {
+            if (released) {
+                value.release();
+            }
+        }
+    }
+
+    /**
+     * A cached payload in a content encoding or uncompressed, as a response entity. The entities are created
+     * once per form of the payload, and shared by the requests it is sent to.
+     */
+    static final class CachedPayload {
+        private final ResponseCache.Value value;
+        private final String encoding;
+        private final EntityTag eTag;
+
+        CachedPayload(ResponseCache.Value value, @Nullable String encoding) {
+            this.value = value;
+            this.encoding = encoding;
+            this.eTag = new EntityTag(value.getETag(encoding));
+        }
+
+        EntityTag getEntityTag() {
+            return eTag;
+        }
+
+        long getLength() {
+            return value.getLength(encoding);
+        }
+
+        void writeTo(OutputStream output) throws IOException {
+            value.writeTo(output, encoding);
+        }
+    }
+
+    /**
+     * A cached payload retained for a response, which is released once it is written or once its request
+     * completes, whichever comes first.
+     */
+    static final class PendingPayload {
+        private final CachedPayload payload;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        PendingPayload(CachedPayload payload) {
+            this.payload = payload;
+        }
+
+        long getLength() {
+            return payload.getLength();
+        }
+
+        /**
+         * Writes the payload and releases it.
+         */
+        void writeTo(OutputStream output) throws IOException {
+            if (released.get()) {
+                throw new IOException("The payload was released before it was written");
+            }
+            try {
+                payload.writeTo(output);
+            } finally {
+                release();
+            }
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                payload.value.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An HTTP content coding the payloads of the {@link ResponseCache} are encoded in, alongside their
+ * uncompressed form. Every payload is encoded once by every configured encoder, and the encoded form is sent to
+ * the clients listing the encoding in their <tt>Accept-Encoding</tt> header.
+ *
+ * <p>
+ * Encoders are configured with {@link com.netflix.eureka.EurekaServerConfig#getResponseCacheContentEncodings()},
+ * either by the name of a built in encoding, <tt>gzip</tt>, <tt>deflate</tt> and <tt>lz4</tt>, or by the name of a class
+ * implementing this interface, which must have a public no argument constructor. Encoders are shared by the
+ * threads encoding the payloads, so they must be thread safe.
+ * </p>
+ */
+public interface ContentEncoder {
+
+    /**
+     * Gets the name of the encoding, as sent in the <tt>Accept-Encoding</tt> and <tt>Content-Encoding</tt>
+     * headers.
+     */
+    String getName();
+
+    /**
+     * Creates a stream encoding what is written to it into the given stream. Closing the returned stream
+     * completes the encoded form.
+     *
+     * @param out
+     *            the stream the encoded form is written to.
+     * @param level
+     *            the compression level configured for the payload, from 0 to 9, or -1 for the default level.
+     *            Encoders with no such levels may ignore it.
+     */
+    OutputStream encode(OutputStream out, int level) throws IOException;
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The built in {@link ContentEncoder}s, and the resolution of the configured ones.
+ *
+ * <p>
+ * The built in encoders compress with {@link Deflater}s kept in a pool, as allocating a deflater allocates
+ * its native buffers as well.
+ * </p>
+ */
+final class ContentEncoders {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentEncoders.class);
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+    static final String LZ4 = "lz4";
+
+    // Loaded by name, as the lz4 library it depends on is optional
+    private static final String LZ4_ENCODER_CLASS = "com.netflix.eureka.resources.Lz4Encoder";
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int DEFLATE_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_FREE_DEFLATERS = 8;
+
+    private static final Queue<Deflater> freeRawDeflaters = new ConcurrentLinkedQueue<Deflater>();
+    private static final Queue<Deflater> freeZlibDeflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    /**
+     * The <tt>gzip</tt> format, which wraps raw <em>deflate</em> data with a header and a checksum.
+     */
+    static final ContentEncoder GZIP_ENCODER = new DeflateEncoder(GZIP, true);
+
+    /**
+     * The <tt>deflate</tt> HTTP content coding, which is <em>deflate</em> data in the <em>zlib</em> format. It
+     * compresses as <tt>gzip</tt> does, but is checked with the cheaper adler32 checksum.
+     */
+    static final ContentEncoder DEFLATE_ENCODER = new DeflateEncoder(DEFLATE, false);
+
+    private ContentEncoders() {
+    }
+
+    /**
+     * Resolves the given comma separated encoder names, in the order of preference of the server. The
+     * <tt>gzip</tt> encoder is always included, as older clients only accept it.
+     */
+    static List<ContentEncoder> fromNames(@Nullable String names) {
+        List<ContentEncoder> encoders = new ArrayList<ContentEncoder>();
+        if (names != null) {
+            for (String name : names.split(",")) {
+                ContentEncoder encoder = fromName(name.trim());
+                if (encoder != null && indexOf(encoders, encoder.getName()) < 0) {
+                    encoders.add(encoder);
+                }
+            }
+        }
+        if (indexOf(encoders, GZIP) < 0) {
+            encoders.add(GZIP_ENCODER);
+        }
+        return Collections.unmodifiableList(encoders);
+    }
+
+    private static ContentEncoder fromName(String name) {
+        if (name.isEmpty()) {
+            return null;
+        }
+        if (GZIP.equalsIgnoreCase(name)) {
+            return GZIP_ENCODER;
+        }
+        if (DEFLATE.equalsIgnoreCase(name)) {
+            return DEFLATE_ENCODER;
+        }
+        if (LZ4.equalsIgnoreCase(name)) {
+            name = LZ4_ENCODER_CLASS;
+        }
+        try {
+            return (ContentEncoder) Class.forName(name).newInstance();
+        } catch (Throwable e) {
+            logger.error("Cannot create the content encoder " + name + ", it is ignored", e);
+            return null;
+        }
+    }
+
+    private static int indexOf(List<ContentEncoder> encoders, String name) {
+        for (int i = 0; i < encoders.size(); i++) {
+            if (encoders.get(i).getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether the given <tt>Accept-Encoding</tt> header value lists the given encoding, with a non zero
+     * quality value. The header is scanned in place, as it is checked on every request.
+     */
+    static boolean isAccepted(@Nullable String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        int length = acceptEncoding.length();
+        int start = 0;
+        while (start < length) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int paramsStart = acceptEncoding.indexOf(';', start);
+            if (paramsStart < 0 || paramsStart > end) {
+                paramsStart = end;
+            }
+            int nameStart = skipWhitespace(acceptEncoding, start, paramsStart);
+            int nameEnd = trimWhitespace(acceptEncoding, nameStart, paramsStart);
+            if (nameEnd - nameStart == encoding.length()
+                    && acceptEncoding.regionMatches(true, nameStart, encoding, 0, encoding.length())) {
+                return paramsStart == end || !isZeroQuality(acceptEncoding, paramsStart + 1, end);
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the parameters between the given indexes hold a zero quality value, that is a <tt>q</tt>
+     * parameter made of zeros and a decimal point only.
+     */
+    private static boolean isZeroQuality(String header, int start, int end) {
+        while (start < end) {
+            int paramEnd = header.indexOf(';', start);
+            if (paramEnd < 0 || paramEnd > end) {
+                paramEnd = end;
+            }
+            int paramStart = skipWhitespace(header, start, paramEnd);
+            if (paramEnd - paramStart >= 2 && header.regionMatches(paramStart, "q=", 0, 2)) {
+                int valueStart = skipWhitespace(header, paramStart + 2, paramEnd);
+                int valueEnd = trimWhitespace(header, valueStart, paramEnd);
+                boolean zero = false;
+                for (int i = valueStart; i < valueEnd; i++) {
+                    char c = header.charAt(i);
+                    if (c == '0') {
+                        zero = true;
+                    } else if (c != '.') {
+                        return false;
+                    }
+                }
+                return zero;
+            }
+            start = paramEnd + 1;
+        }
+        return false;
+    }
+
+    private static int skipWhitespace(String header, int start, int end) {
+        while (start < end && Character.isWhitespace(header.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimWhitespace(String header, int start, int end) {
+        while (end > start && Character.isWhitespace(header.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static final class DeflateEncoder implements ContentEncoder {
+        private final String name;
+        private final boolean gzip;
+
+        DeflateEncoder(String name, boolean gzip) {
+            this.name = name;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out, int level) throws IOException {
+            if (gzip) {
+                out.write(GZIP_HEADER);
+            }
+            return new PooledDeflaterStream(out, borrowDeflater(level, gzip), gzip);
+        }
+    }
+
+    private static Deflater borrowDeflater(int level, boolean raw) {
+        Deflater deflater = (raw ? freeRawDeflaters : freeZlibDeflaters).poll();
+        if (deflater == null) {
+            return new Deflater(level, raw);
+        }
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    private static void returnDeflater(Deflater deflater, boolean raw) {
+        deflater.reset();
+        Queue<Deflater> freeDeflaters = raw ? freeRawDeflaters : freeZlibDeflaters;
+        if (freeDeflaters.size() >= MAX_FREE_DEFLATERS) {
+            deflater.end();
+        } else {
+            freeDeflaters.offer(deflater);
+        }
+    }
+
+    /**
+     * Deflates to the given stream, and returns the deflater to its pool once closed. Closing the stream does
+     * not close the stream it writes to.
+     */
+    private static final class PooledDeflaterStream extends DeflaterOutputStream {
+        private final CRC32 crc;
+        private final boolean gzip;
+        private int length;
+        private boolean closed;
+
+        PooledDeflaterStream(OutputStream out, Deflater deflater, boolean gzip) {
+            super(out, deflater, DEFLATE_BUFFER_SIZE);
+            this.gzip = gzip;
+            this.crc = gzip ? new CRC32() : null;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            super.write(bytes, offset, count);
+            if (crc != null) {
+                crc.update(bytes, offset, count);
+            }
+            length += count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                finish();
+                if (gzip) {
+                    writeIntLittleEndian((int) crc.getValue());
+                    writeIntLittleEndian(length);
+                }
+            } finally {
+                returnDeflater(def, gzip);
+            }
+        }
+
+        private void writeIntLittleEndian(int value) throws IOException {
+            out.write(value & 0xff);
+            out.write((value >> 8) & 0xff);
+            out.write((value >> 16) & 0xff);
+            out.write((value >> 24) & 0xff);
+        }
+    }
+}
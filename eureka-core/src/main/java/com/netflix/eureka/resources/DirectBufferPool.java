@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.netflix.servo.annotations.DataSourceType;
+import com.netflix.servo.annotations.Monitor;
+import com.netflix.servo.monitor.Monitors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of direct buffers holding the {@link ResponseCache} payloads outside of the heap.
+ *
+ * <p>
+ * Buffers are handed out in power of two sizes, and a released buffer is kept for the next payload of the same
+ * size class, up to a few buffers per class. Allocating direct memory is expensive and it is only freed when
+ * the garbage collector finds the buffer unreachable, so reusing the buffers keeps the direct memory in use
+ * close to the size of the cached payloads even though these are replaced on every registry change.
+ * </p>
+ */
+class DirectBufferPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectBufferPool.class);
+
+    private static final int MIN_SIZE_SHIFT = 10;
+    private static final int SIZE_CLASSES = 31 - MIN_SIZE_SHIFT;
+    private static final int MAX_FREE_BUFFERS_PER_CLASS = 4;
+
+    private final List<Queue<ByteBuffer>> freeBuffers = new ArrayList<Queue<ByteBuffer>>(SIZE_CLASSES);
+    private final AtomicIntegerArray freeBufferCounts = new AtomicIntegerArray(SIZE_CLASSES);
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    DirectBufferPool() {
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            freeBuffers.add(new ConcurrentLinkedQueue<ByteBuffer>());
+        }
+        try {
+            Monitors.registerObject(this);
+        } catch (Throwable e) {
+            logger.warn("Cannot register the JMX monitor for the direct buffer pool :", e);
+        }
+    }
+
+    /**
+     * Copies the given bytes into a direct buffer, positioned at 0 and limited to their length.
+     */
+    ByteBuffer copyOf(byte[] bytes) {
+        ByteBuffer buffer = acquire(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Copies the content of the given payload buffer into a direct buffer, positioned at 0 and limited to its
+     * length.
+     */
+    ByteBuffer copyOf(PayloadBuffer payload) {
+        ByteBuffer buffer = acquire(payload.size());
+        payload.copyTo(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private ByteBuffer acquire(int size) {
+        int sizeClass = sizeClassOf(size);
+        ByteBuffer buffer = freeBuffers.get(sizeClass).poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SIZE_SHIFT));
+            allocatedBytes.addAndGet(buffer.capacity());
+        } else {
+            freeBufferCounts.decrementAndGet(sizeClass);
+            pooledBytes.addAndGet(-buffer.capacity());
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards.
+     */
+    void release(ByteBuffer buffer) {
+        int sizeClass = sizeClassOf(buffer.capacity());
+        if (freeBufferCounts.incrementAndGet(sizeClass) <= MAX_FREE_BUFFERS_PER_CLASS) {
+            pooledBytes.addAndGet(buffer.capacity());
+            freeBuffers.get(sizeClass).offer(buffer);
+        } else {
+            // Left to the garbage collector
+            freeBufferCounts.decrementAndGet(sizeClass);
+            allocatedBytes.addAndGet(-buffer.capacity());
+        }
+    }
+
+    private static int sizeClassOf(int size) {
+        if (size <= 1 << MIN_SIZE_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SIZE_SHIFT;
+    }
+
+    @Monitor(name = "responseCacheOffHeapBytes", type = DataSourceType.GAUGE)
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    @Monitor(name = "responseCacheOffHeapPooledBytes", type = DataSourceType.GAUGE)
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+}
@@ -17,6 +17,7 @@
 package com.netflix.eureka.resources;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -25,6 +26,10 @@ import javax.ws.rs.core.Response.Status;
 import java.util.List;
 
 import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.InstanceOperation;
+import com.netflix.discovery.shared.InstanceOperationList;
+import com.netflix.discovery.shared.InstanceOperationListResponse;
+import com.netflix.discovery.shared.InstanceOperationResponse;
 import com.netflix.eureka.CurrentRequestVersion;
 import com.netflix.eureka.AbstractInstanceRegistry;
 import com.netflix.eureka.PeerAwareInstanceRegistryImpl;
@@ -60,4 +65,77 @@ public class InstancesResource {
             return Response.status(Status.NOT_FOUND).build();
         }
     }
+
+    /**
+     * Processes a batch of register, heartbeat and cancel requests, as sent by hosts running many instances.
+     *
+     * <p>
+     * Like {@link PeerReplicationResource#batchReplication}, each operation is delegated to the resource that
+     * handles the corresponding single request, so it goes through the same checks, and its outcome is reported
+     * in the {@link InstanceOperationListResponse} without failing the rest of the batch.
+     * </p>
+     *
+     * @param operations the operations to process, in order.
+     * @return a batched response with the result of each operation, in the order of the operations.
+     */
+    @POST
+    @Path("batch")
+    public Response batchUpdate(@PathParam("version") String version, InstanceOperationList operations) {
+        CurrentRequestVersion.set(Version.toEnum(version));
+        try {
+            InstanceOperationListResponse batchResponse = new InstanceOperationListResponse();
+            for (InstanceOperation operation : operations.getOperations()) {
+                try {
+                    batchResponse.addResponse(dispatch(operation));
+                } catch (Exception e) {
+                    batchResponse.addResponse(new InstanceOperationResponse(Status.INTERNAL_SERVER_ERROR.getStatusCode(), null));
+                    logger.error(operation + " request processing failed for batch item", e);
+                }
+            }
+            return Response.ok(batchResponse).build();
+        } catch (Throwable e) {
+            logger.error("Cannot execute batch Request", e);
+            return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    private InstanceOperationResponse dispatch(InstanceOperation operation) {
+        ApplicationResource applicationResource = createApplicationResource(operation);
+        Response response;
+        switch (operation.getAction()) {
+            case Register:
+                applicationResource.addInstance(operation.getInstanceInfo(), null);
+                // Same as the 204 of a single registration
+                return new InstanceOperationResponse(Status.NO_CONTENT.getStatusCode(), null);
+            case Heartbeat:
+                response = createInstanceResource(operation, applicationResource).renewLease(null,
+                        operation.getOverriddenStatus(), operation.getStatus(), toString(operation.getLastDirtyTimestamp()));
+                InstanceInfo responseEntity = null;
+                if (response.getStatus() == Status.OK.getStatusCode() && response.getEntity() != null) {
+                    responseEntity = (InstanceInfo) response.getEntity();
+                }
+                return new InstanceOperationResponse(response.getStatus(), responseEntity);
+            case Cancel:
+                response = createInstanceResource(operation, applicationResource).cancelLease(null);
+                return new InstanceOperationResponse(response.getStatus(), null);
+            default:
+                return new InstanceOperationResponse(Status.BAD_REQUEST.getStatusCode(), null);
+        }
+    }
+
+    /* Visible for testing */ ApplicationResource createApplicationResource(InstanceOperation operation) {
+        return new ApplicationResource(operation.getAppName());
+    }
+
+    /* Visible for testing */ InstanceResource createInstanceResource(InstanceOperation operation,
+                                                                      ApplicationResource applicationResource) {
+        return new InstanceResource(applicationResource, operation.getId());
+    }
+
+    private static <T> String toString(T value) {
+        if (value == null) {
+            return null;
+        }
+        return value.toString();
+    }
 }
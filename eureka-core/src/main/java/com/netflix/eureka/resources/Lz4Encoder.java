@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * The <tt>lz4</tt> encoding, which compresses several times faster than <em>deflate</em> for a lower ratio. The
+ * payloads are encoded in the block stream format of the <em>lz4-java</em> library, which the eureka clients
+ * decode with {@link com.netflix.discovery.Lz4Decoder}.
+ *
+ * <p>
+ * <em>lz4-java</em> is an optional dependency, so this encoder is only available if the library is on the
+ * class path. The payloads compressed at a level above the default one are compressed with the slower high
+ * compression variant of <tt>lz4</tt>.
+ * </p>
+ */
+public class Lz4Encoder implements ContentEncoder {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final LZ4Compressor fastCompressor;
+    private final LZ4Compressor highCompressor;
+
+    public Lz4Encoder() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        fastCompressor = factory.fastCompressor();
+        highCompressor = factory.highCompressor();
+    }
+
+    @Override
+    public String getName() {
+        return ContentEncoders.LZ4;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out, int level) throws IOException {
+        boolean high = level > 6 && level <= Deflater.BEST_COMPRESSION;
+        return new LZ4BlockOutputStream(out, BLOCK_SIZE, high ? highCompressor : fastCompressor);
+    }
+}
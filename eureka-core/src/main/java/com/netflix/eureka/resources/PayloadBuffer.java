@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.hash.PrimitiveSink;
+
+/**
+ * A byte buffer holding a payload of the {@link ResponseCache} in chunks, filled as the payload is serialized.
+ *
+ * <p>
+ * Unlike a {@link java.io.ByteArrayOutputStream}, the buffer never copies what it holds to grow, and it is read
+ * in place instead of being copied into a single array, so a large payload is held once while it is generated.
+ * Chunks double in size up to {@link #MAX_CHUNK_SIZE}, which keeps the space wasted by small payloads low.
+ * </p>
+ *
+ * <p>
+ * The buffer is written by a single thread, and is only read once it is complete.
+ * </p>
+ */
+class PayloadBuffer extends OutputStream {
+
+    static final int MIN_CHUNK_SIZE = 1024;
+    static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    private final List<byte[]> chunks = new ArrayList<byte[]>();
+    private byte[] current;
+    private int currentCount;
+    private int size;
+
+    @Override
+    public void write(int b) {
+        if (current == null || currentCount == current.length) {
+            addChunk();
+        }
+        current[currentCount++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (current == null || currentCount == current.length) {
+                addChunk();
+            }
+            int count = Math.min(length, current.length - currentCount);
+            System.arraycopy(bytes, offset, current, currentCount, count);
+            currentCount += count;
+            size += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void addChunk() {
+        current = new byte[Math.min(Math.max(MIN_CHUNK_SIZE, size), MAX_CHUNK_SIZE)];
+        currentCount = 0;
+        chunks.add(current);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Writes the content of the buffer to the given stream.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        int remaining = size;
+        for (byte[] chunk : chunks) {
+            int count = Math.min(remaining, chunk.length);
+            out.write(chunk, 0, count);
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Copies the content of the buffer into the given buffer, from its position on.
+     */
+    void copyTo(ByteBuffer buffer) {
+        int remaining = size;
+        for (byte[] chunk : chunks) {
+            int count = Math.min(remaining, chunk.length);
+            buffer.put(chunk, 0, count);
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Feeds the content of the buffer to the given sink, like a hasher.
+     */
+    void copyTo(PrimitiveSink sink) {
+        int remaining = size;
+        for (byte[] chunk : chunks) {
+            int count = Math.min(remaining, chunk.length);
+            sink.putBytes(chunk, 0, count);
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Copies the content of the buffer into a new array.
+     */
+    byte[] toByteArray() {
+        byte[] bytes = new byte[size];
+        int position = 0;
+        for (byte[] chunk : chunks) {
+            int count = Math.min(size - position, chunk.length);
+            System.arraycopy(chunk, 0, bytes, position, count);
+            position += count;
+        }
+        return bytes;
+    }
+}
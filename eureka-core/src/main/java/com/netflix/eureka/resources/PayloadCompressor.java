@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.resources;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.eureka.resources.ResponseCache.KeyType;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
+import com.netflix.servo.monitor.StatsMonitor;
+import com.netflix.servo.monitor.StatsTimer;
+import com.netflix.servo.stats.StatsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Encodes the payloads of the {@link ResponseCache} with every configured {@link ContentEncoder}, off the
+ * threads generating them.
+ *
+ * <p>
+ * Generating a payload is never delayed by its compression. The requests for a payload which is not encoded
+ * yet wait a little for it to be, and are sent the uncompressed payload if it is not encoded by then.
+ * </p>
+ */
+class PayloadCompressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadCompressor.class);
+
+    private static final StatsConfig STATS_CONFIG = new StatsConfig.Builder()
+            .withPercentiles(new double[]{50.0, 90.0, 99.0})
+            .withPublishMax(true)
+            .withPublishMean(true)
+            .build();
+
+    private final StatsTimer compressJsonTimer = newTimer(KeyType.JSON);
+    private final StatsTimer compressXmlTimer = newTimer(KeyType.XML);
+    private final RatioMonitor compressJsonRatio = new RatioMonitor(KeyType.JSON);
+    private final RatioMonitor compressXmlRatio = new RatioMonitor(KeyType.XML);
+
+    private final List<ContentEncoder> encoders;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param threads
+     *            the number of threads compressing the payloads, or 0 to compress them on the threads calling
+     *            {@link #compressLater}.
+     * @param encoders
+     *            the encoders every payload is encoded with.
+     */
+    PayloadCompressor(int threads, List<ContentEncoder> encoders) {
+        this.encoders = encoders;
+        if (threads > 0) {
+            executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactoryBuilder().setNameFormat("Eureka-PayloadCompressor-%d").setDaemon(true).build());
+        } else {
+            executor = null;
+        }
+        try {
+            Monitors.registerObject(this);
+        } catch (Throwable e) {
+            logger.warn("Cannot register the JMX monitor for the payload compressor :", e);
+        }
+    }
+
+    /**
+     * Compresses the given payload in the background.
+     */
+    void compressLater(final ResponseCache.Value value, final KeyType type, final int level) {
+        if (executor == null) {
+            compress(value, type, level);
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compress(value, type, level);
+            }
+        });
+    }
+
+    /**
+     * Checks whether a client accepts any of the encodings the payloads are encoded in.
+     *
+     * @param acceptEncoding
+     *            the <tt>Accept-Encoding</tt> header of the client.
+     */
+    boolean encodesAny(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (int i = 0; i < encoders.size(); i++) {
+            if (ContentEncoders.isAccepted(acceptEncoding, encoders.get(i).getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes the given payload with every encoder and sets its encoded forms, unless the payload was released
+     * already, as it was superseded by a newer payload.
+     *
+     * @param type
+     *            the format of the payload, which the compression statistics are recorded for, or null if they
+     *            are not to be recorded.
+     * @param level
+     *            the compression level.
+     */
+    void compress(ResponseCache.Value value, @Nullable KeyType type, int level) {
+        if (value.isEmpty() || !value.retainIfReferenced()) {
+            value.encodingDone();
+            return;
+        }
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            logger.warn("Invalid compression level {}, using the default level", level);
+            level = Deflater.DEFAULT_COMPRESSION;
+        }
+        try {
+            for (ContentEncoder encoder : encoders) {
+                try {
+                    long start = System.nanoTime();
+                    PayloadBuffer encoded = new PayloadBuffer();
+                    OutputStream encoding = encoder.encode(encoded, level);
+                    try {
+                        value.writeTo(encoding, null);
+                    } finally {
+                        encoding.close();
+                    }
+                    value.setEncoded(encoder.getName(), encoded);
+                    if (type != null) {
+                        recordStats(type, System.nanoTime() - start, value.getLength(null), encoded.size());
+                    }
+                } catch (IOException e) {
+                    logger.error("Cannot encode the payload in " + encoder.getName(), e);
+                }
+            }
+        } finally {
+            value.encodingDone();
+            value.release();
+        }
+    }
+
+    private void recordStats(KeyType type, long elapsedNanos, int length, int compressedLength) {
+        StatsTimer timer = type == KeyType.JSON ? compressJsonTimer : compressXmlTimer;
+        RatioMonitor ratio = type == KeyType.JSON ? compressJsonRatio : compressXmlRatio;
+        timer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        ratio.record(length == 0 ? 100 : 100L * compressedLength / length);
+    }
+
+    private static StatsTimer newTimer(KeyType type) {
+        return new StatsTimer(MonitorConfig.builder("compress-payload-" + type.name()).build(), STATS_CONFIG,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The size of the compressed payloads, in percent of their uncompressed size.
+     */
+    private static final class RatioMonitor extends StatsMonitor {
+        RatioMonitor(KeyType type) {
+            super(MonitorConfig.builder("compress-payload-ratio-" + type.name()).build(), STATS_CONFIG,
+                    defaultExecutor, "totalPercent", true);
+        }
+    }
+}
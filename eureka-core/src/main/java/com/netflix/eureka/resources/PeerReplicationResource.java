@@ -16,13 +16,19 @@
 
 package com.netflix.eureka.resources;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
 import com.netflix.appinfo.InstanceInfo;
+import com.netflix.eureka.PeerAwareInstanceRegistryImpl;
 import com.netflix.eureka.cluster.protocol.ReplicationInstance;
 import com.netflix.eureka.cluster.protocol.ReplicationInstanceResponse;
 import com.netflix.eureka.cluster.protocol.ReplicationInstanceResponse.Builder;
@@ -78,6 +84,42 @@ public class PeerReplicationResource {
         }
     }
 
+    /**
+     * Gets the digest of the local registry, which a peer eureka node compares with the digest of its own registry
+     * to find the instances this node is missing or holds an older copy of.
+     *
+     * @return the {@link com.netflix.eureka.cluster.protocol.RegistryDigest} of the local registry.
+     */
+    @Path("digest")
+    @GET
+    public Response getRegistryDigest() {
+        return Response.ok(PeerAwareInstanceRegistryImpl.getInstance().getRegistryDigest()).build();
+    }
+
+    /**
+     * Gets the versions of the local instances in the given buckets of the registry digest.
+     *
+     * @param buckets
+     *            The comma separated buckets of the registry digest a peer eureka node found to differ
+     * @return the {@link com.netflix.eureka.cluster.protocol.RegistryDigestEntryList} of the local instances in
+     *         the buckets
+     */
+    @Path("digest/entries")
+    @GET
+    public Response getRegistryDigestEntries(@QueryParam("buckets") String buckets) {
+        Set<Integer> bucketSet = new HashSet<Integer>();
+        if (buckets != null && !buckets.isEmpty()) {
+            try {
+                for (String bucket : buckets.split(",")) {
+                    bucketSet.add(Integer.valueOf(bucket.trim()));
+                }
+            } catch (NumberFormatException e) {
+                return Response.status(Status.BAD_REQUEST).build();
+            }
+        }
+        return Response.ok(PeerAwareInstanceRegistryImpl.getInstance().getRegistryDigestEntries(bucketSet)).build();
+    }
+
     private ReplicationInstanceResponse dispatch(ReplicationInstance instanceInfo) {
         ApplicationResource applicationResource = createApplicationResource(instanceInfo);
         InstanceResource resource = createInstanceResource(instanceInfo, applicationResource);
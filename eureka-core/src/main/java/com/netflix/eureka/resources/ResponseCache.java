@@ -17,22 +17,40 @@
 package com.netflix.eureka.resources;
 
 import javax.annotation.Nullable;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -40,7 +58,9 @@ import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
-import com.netflix.appinfo.InstanceInfo;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.discovery.converters.EurekaJacksonCodec;
 import com.netflix.discovery.converters.XmlXStream;
 import com.netflix.discovery.shared.Application;
@@ -67,7 +87,8 @@ import org.slf4j.LoggerFactory;
  * The cache is maintained in compressed and non-compressed form for three
  * categories of requests - all applications, delta changes and for individual
  * applications. The compressed form is probably the most efficient in terms of
- * network traffic especially when querying all applications.
+ * network traffic especially when querying all applications. It is kept in every
+ * configured {@link ContentEncoder} encoding.
  *
  * The cache also maintains separate pay load for <em>JSON</em> and <em>XML</em>
  * formats and for multiple versions too.
@@ -85,7 +106,13 @@ public class ResponseCache {
 
     private static final AtomicLong versionDelta = new AtomicLong(0);
     private static final AtomicLong versionDeltaWithRegions = new AtomicLong(0);
-    private static final String EMPTY_PAYLOAD = "";
+    private static final int MAX_RETAIN_ATTEMPTS = 3;
+
+    /**
+     * The number of deltas since a registry version kept at once.
+     */
+    private static final int MAX_DELTAS_SINCE = 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     private static final java.util.Timer timer = new java.util.Timer("Eureka -CacheFillTimer", true);
 
@@ -97,11 +124,13 @@ public class ResponseCache {
             .newTimer("serialize-all_remote_region");
     private final Timer serializeDeltaAppsWithRemoteRegionTimer = Monitors
             .newTimer("serialize-all-delta_remote_region");
+    private final Timer serializeDeltaSinceTimer = Monitors
+            .newTimer("serialize-all-delta-since");
     private final Timer serializeOneApptimer = Monitors
             .newTimer("serialize-one");
     private final Timer serializeViptimer = Monitors.newTimer("serialize-one-vip");
-    private final Timer compressPayloadTimer = Monitors
-            .newTimer("compress-payload");
+    private final Timer readOnlyRefreshLagTimer = Monitors
+            .newTimer("read-only-refresh-lag");
 
     public enum KeyType {
         JSON, XML
@@ -110,6 +139,18 @@ public class ResponseCache {
     private final EurekaServerConfig eurekaConfig = EurekaServerConfigurationManager
             .getInstance().getConfiguration();
 
+    private final DirectBufferPool offHeapPool =
+            eurekaConfig.shouldKeepResponseCachePayloadsOffHeap() ? new DirectBufferPool() : null;
+
+    private final PayloadCompressor compressor = new PayloadCompressor(
+            eurekaConfig.getResponseCacheCompressionThreads(),
+            ContentEncoders.fromNames(eurekaConfig.getResponseCacheContentEncodings()));
+
+    private final CacheKeys cacheKeys = new CacheKeys(eurekaConfig.getRemoteRegionUrlsWithName().keySet());
+
+    private final ApplicationFragmentCache applicationFragments =
+            new ApplicationFragmentCache(eurekaConfig.getResponseCacheAutoExpirationInSeconds());
+
     /**
      * This map holds mapping of keys without regions to a list of keys with region (provided by clients)
      * Since, during invalidation, triggered by a change in registry for local region, we do not know the regions
@@ -127,12 +168,29 @@ public class ResponseCache {
 
     private final ConcurrentMap<Key, Value> readOnlyCacheMap = new ConcurrentHashMap<Key, Value>();
 
+    /**
+     * The deltas since a registry version, with the registry version of the local region they were generated at.
+     * The clients that fetched the registry at the same time are current with the same version, so they share
+     * the delta until the registry changes again.
+     */
+    private final Cache<DeltaSinceKey, DeltaSince> deltasSince = CacheBuilder.newBuilder()
+            .maximumSize(MAX_DELTAS_SINCE)
+            .expireAfterWrite(eurekaConfig.getResponseCacheAutoExpirationInSeconds(), TimeUnit.SECONDS)
+            .removalListener(new RemovalListener<DeltaSinceKey, DeltaSince>() {
+                @Override
+                public void onRemoval(RemovalNotification<DeltaSinceKey, DeltaSince> notification) {
+                    notification.getValue().value.release();
+                }
+            })
+            .build();
+
     private final LoadingCache<Key, Value> readWriteCacheMap =
             CacheBuilder.newBuilder().initialCapacity(1000)
                     .expireAfterWrite(eurekaConfig.getResponseCacheAutoExpirationInSeconds(), TimeUnit.SECONDS)
                     .removalListener(new RemovalListener<Key, Value>() {
                         @Override
                         public void onRemoval(RemovalNotification<Key, Value> notification) {
+                            notification.getValue().release();
                             Key removedKey = notification.getKey();
                             if (removedKey.hasRegions()) {
                                 Key cloneWithNoRegions = removedKey.cloneWithoutRegions();
@@ -154,17 +212,50 @@ public class ResponseCache {
 
     private final boolean shouldUseReadOnlyResponseCache;
 
+    /**
+     * The keys invalidated by registry changes since the last flush, when invalidations are coalesced.
+     */
+    private final Set<Key> pendingInvalidations =
+            Collections.newSetFromMap(new ConcurrentHashMap<Key, Boolean>());
+    private final long invalidationWindowMs;
+    // Flushes the invalidations off the cache fill timer, so that a slow update of the payloads does not delay it
+    private final ScheduledExecutorService invalidationFlusher;
+    private final AtomicLong invalidationsRequested = new AtomicLong(0);
+    private final AtomicLong invalidationsApplied = new AtomicLong(0);
+
+    /**
+     * The keys of the read only cache waiting to be updated, with the time they were marked at.
+     */
+    private final ConcurrentMap<Key, Long> pendingRefreshes = new ConcurrentHashMap<Key, Long>();
+    private final AtomicLong refreshSequence = new AtomicLong(0);
+    private final ThreadPoolExecutor refreshExecutor;
+
     private static final ResponseCache s_instance = new ResponseCache();
 
     private ResponseCache() {
         long responseCacheUpdateIntervalMs = eurekaConfig.getResponseCacheUpdateIntervalMs();
         shouldUseReadOnlyResponseCache = eurekaConfig.shouldUseReadOnlyResponseCache();
+        invalidationWindowMs = eurekaConfig.getResponseCacheInvalidationWindowMs();
 
         if (shouldUseReadOnlyResponseCache) {
+            int refreshThreads = eurekaConfig.getResponseCacheRefreshThreads();
+            refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0, TimeUnit.MILLISECONDS,
+                    new PriorityBlockingQueue<Runnable>(),
+                    new ThreadFactoryBuilder().setNameFormat("Eureka-CacheRefresher-%d").setDaemon(true).build());
             timer.schedule(getCacheUpdateTask(),
                     new Date(((System.currentTimeMillis() / responseCacheUpdateIntervalMs) * responseCacheUpdateIntervalMs)
                             + responseCacheUpdateIntervalMs),
                     responseCacheUpdateIntervalMs);
+        } else {
+            refreshExecutor = null;
+        }
+        if (invalidationWindowMs > 0) {
+            invalidationFlusher = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("Eureka-CacheInvalidationFlusher").setDaemon(true).build());
+            invalidationFlusher.scheduleWithFixedDelay(getInvalidationFlushTask(), invalidationWindowMs,
+                    invalidationWindowMs, TimeUnit.MILLISECONDS);
+        } else {
+            invalidationFlusher = null;
         }
 
         try {
@@ -177,36 +268,146 @@ public class ResponseCache {
         }
     }
 
+    /**
+     * The keys invalidated by registry changes are updated as they are invalidated, so this task only updates
+     * the payloads that outlived the expiry of the read write cache. These can hold changes that do not
+     * invalidate the cache, like the ones fetched from remote regions.
+     */
     private TimerTask getCacheUpdateTask() {
+        final long maxAgeMs = TimeUnit.SECONDS.toMillis(eurekaConfig.getResponseCacheAutoExpirationInSeconds());
         return new TimerTask() {
             @Override
             public void run() {
                 logger.debug("Updating the client cache from response cache");
-                for (Key key : readOnlyCacheMap.keySet()) {
-                    if (logger.isDebugEnabled()) {
-                        Object[] args = {key.getEntityType(), key.getName(), key.getVersion(), key.getType()};
-                        logger.debug("Updating the client cache from response cache for key : {} {} {} {}", args);
-                    }
-                    try {
-                        CurrentRequestVersion.set(key.getVersion());
-                        Value cacheValue = readWriteCacheMap.get(key);
-                        Value currentCacheValue = readOnlyCacheMap.get(key);
-                        if (cacheValue != currentCacheValue) {
-                            readOnlyCacheMap.put(key, cacheValue);
-                        }
-                    } catch (Throwable th) {
-                        logger.error("Error while updating the client cache from response cache", th);
+                long now = System.currentTimeMillis();
+                for (Map.Entry<Key, Value> entry : readOnlyCacheMap.entrySet()) {
+                    if (now - entry.getValue().getGeneratedAt() >= maxAgeMs) {
+                        markForRefresh(entry.getKey());
                     }
                 }
             }
         };
     }
 
+    /**
+     * Schedules the update of the read only cache for the given key, if the cache holds it.
+     */
+    private void markForRefresh(Key key) {
+        if (readOnlyCacheMap.containsKey(key)) {
+            scheduleRefresh(key);
+        }
+    }
+
+    /**
+     * Schedules the payload of an invalidated key to be generated again. The read only cache serves the previous
+     * payload until the refresh replaces and releases it, so that the requests meanwhile are not served from the
+     * read write cache, which would generate the payload on their threads. Without refresh threads, the payload
+     * is removed instead.
+     */
+    private void invalidateReadOnly(Key key) {
+        if (refreshExecutor != null) {
+            markForRefresh(key);
+            return;
+        }
+        Value previous = readOnlyCacheMap.remove(key);
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    /**
+     * Schedules the update of the read only cache for the given key, unless it is already scheduled.
+     */
+    private void scheduleRefresh(Key key) {
+        if (refreshExecutor == null) {
+            return;
+        }
+        if (pendingRefreshes.putIfAbsent(key, System.currentTimeMillis()) == null) {
+            refreshExecutor.execute(new RefreshTask(key, refreshSequence.incrementAndGet()));
+        }
+    }
+
+    private void refresh(Key key) {
+        // Removed first, so that an invalidation while the payload is generated schedules another update
+        Long markedAt = pendingRefreshes.remove(key);
+        if (logger.isDebugEnabled()) {
+            Object[] args = {key.getEntityType(), key.getName(), key.getVersion(), key.getType()};
+            logger.debug("Updating the client cache from response cache for key : {} {} {} {}", args);
+        }
+        try {
+            CurrentRequestVersion.set(key.getVersion());
+            Value cacheValue = readWriteCacheMap.get(key);
+            Value currentCacheValue = readOnlyCacheMap.get(key);
+            if (cacheValue != currentCacheValue) {
+                putReadOnly(key, cacheValue);
+            }
+        } catch (Throwable th) {
+            logger.error("Error while updating the client cache from response cache", th);
+        }
+        if (markedAt != null) {
+            readOnlyRefreshLagTimer.record(System.currentTimeMillis() - markedAt, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Updates the read only cache for a key. The payloads of all applications and of their delta, which most
+     * clients fetch, are updated before the ones of single applications and VIP addresses.
+     */
+    private final class RefreshTask implements Runnable, Comparable<RefreshTask> {
+        private final Key key;
+        private final int priority;
+        private final long sequence;
+
+        RefreshTask(Key key, long sequence) {
+            this.key = key;
+            this.sequence = sequence;
+            if (ALL_APPS.equals(key.getName()) || ALL_APPS_DELTA.equals(key.getName())) {
+                priority = 0;
+            } else if (key.getEntityType() == Key.EntityType.Application) {
+                priority = 1;
+            } else {
+                priority = 2;
+            }
+        }
+
+        @Override
+        public void run() {
+            refresh(key);
+        }
+
+        @Override
+        public int compareTo(RefreshTask other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private Runnable getInvalidationFlushTask() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushInvalidations();
+                } catch (Throwable th) {
+                    logger.error("Error while invalidating the response cache", th);
+                }
+            }
+        };
+    }
 
     public static ResponseCache getInstance() {
         return s_instance;
     }
 
+    /**
+     * Gets the canonical keys of the cached payloads, which the requests look their payload up with.
+     */
+    CacheKeys getKeys() {
+        return cacheKeys;
+    }
+
     /**
      * Get the cached information about applications.
      *
@@ -227,13 +428,56 @@ public class ResponseCache {
     @VisibleForTesting
     String get(final Key key, boolean useReadOnlyCache) {
         Value payload = getValue(key, useReadOnlyCache);
-        if (payload == null || payload.getPayload() == EMPTY_PAYLOAD) {
+        if (payload == null) {
             return null;
-        } else {
-            return payload.getPayload();
+        }
+        try {
+            return payload.isEmpty() ? null : payload.getPayload();
+        } finally {
+            payload.release();
         }
     }
 
+    /**
+     * Get the information about the applications encoded in <em>UTF-8</em>.
+     *
+     * <p>
+     * The bytes are copied out of the buffers the payload is kept in on every call. Responses are better written
+     * straight from these buffers, see {@link #getValue(Key)}.
+     * </p>
+     *
+     * @param key
+     *            the key for which the cached information needs to be obtained.
+     * @return the encoded payload, or null if there is no information for the key.
+     */
+    public byte[] getRaw(Key key) {
+        Value payload = getValue(key, shouldUseReadOnlyResponseCache);
+        if (payload == null) {
+            return null;
+        }
+        try {
+            return payload.isEmpty() ? null : payload.getRaw();
+        } finally {
+            payload.release();
+        }
+    }
+
+    /**
+     * Get the cached payload, in uncompressed form and in the content encodings produced so far, along with its
+     * entity tag.
+     *
+     * <p>
+     * The payload is retained for the caller, who has to {@link Value#release()} it once it is written.
+     * </p>
+     *
+     * @param key
+     *            the key for which the cached information needs to be obtained.
+     * @return the payload, or null if it cannot be generated.
+     */
+    public Value getValue(final Key key) {
+        return getValue(key, shouldUseReadOnlyResponseCache);
+    }
+
     /**
      * Get the compressed information about the applications.
      *
@@ -241,38 +485,118 @@ public class ResponseCache {
      *            the key for which the compressed cached information needs to
      *            be obtained.
      * @return compressed payload which contains information about the
-     *         applications.
+     *         applications, or null if the payload is not compressed yet.
      */
     public byte[] getGZIP(Key key) {
         Value payload = getValue(key, shouldUseReadOnlyResponseCache);
         if (payload == null) {
             return null;
         }
-        return payload.getGzipped();
+        try {
+            return payload.getGzipped();
+        } finally {
+            payload.release();
+        }
+    }
+
+    /**
+     * Get the changes made to the local registry after the given registry version.
+     *
+     * <p>
+     * These payloads depend on the registry version each client last saw, so they are cached by that version and
+     * generated again once the local registry changes. They only hold the changes the client has not seen yet.
+     * </p>
+     *
+     * @param key
+     *            the key of the delta, which determines the format of the payload.
+     * @param registryVersion
+     *            the registry version the client is current with.
+     * @return payload which contains the changes, or null if the changes are not retained anymore and the full
+     *         registry has to be fetched.
+     * @throws IOException
+     *             if the changes cannot be serialized.
+     */
+    public Value getDeltaSince(Key key, long registryVersion) throws IOException {
+        AbstractInstanceRegistry registry = PeerAwareInstanceRegistryImpl.getInstance();
+        long currentVersion = registry.getRegistryVersion();
+        DeltaSinceKey deltaKey = new DeltaSinceKey(key, registryVersion);
+        DeltaSince cached = deltasSince.getIfPresent(deltaKey);
+        if (cached != null && cached.registryVersion == currentVersion && cached.value.retain()) {
+            return cached.value;
+        }
+
+        Stopwatch tracer = serializeDeltaSinceTimer.start();
+        try {
+            Applications delta = registry.getApplicationDeltasSince(registryVersion);
+            if (delta == null) {
+                return null;
+            }
+            PayloadBuffer payload = new PayloadBuffer();
+            writePayLoad(key, delta, payload);
+            // Shared by the clients current with the same version, so it is compressed before it is served
+            Value value = new Value(payload, null);
+            compressor.compress(value, key.getType(), eurekaConfig.getResponseCacheCompressionLevel(key.getName()));
+            // The version read before the changes were collected, so a change made meanwhile makes the entry stale
+            value.retain();
+            deltasSince.put(deltaKey, new DeltaSince(currentVersion, value));
+            return value;
+        } finally {
+            tracer.stop();
+        }
     }
 
     /**
      * Invalidate the cache of a particular application.
      *
+     * <p>
+     * If a response cache invalidation window is configured, the keys are only marked as invalid here and are
+     * invalidated together with the keys marked by other changes within the same window.
+     * </p>
+     *
      * @param appName
      *            the application name of the application.
      */
     public void invalidate(String appName, @Nullable String vipAddress, @Nullable String secureVipAddress) {
         for (KeyType type : KeyType.values()) {
             for (Version v : Version.values()) {
-                invalidate(new Key(Key.EntityType.Application, appName, type, v),
-                        new Key(Key.EntityType.Application, ALL_APPS, type, v),
-                        new Key(Key.EntityType.Application, ALL_APPS_DELTA, type, v));
+                invalidateOrDefer(new Key(Key.EntityType.Application, appName, type, v));
+                invalidateOrDefer(new Key(Key.EntityType.Application, ALL_APPS, type, v));
+                invalidateOrDefer(new Key(Key.EntityType.Application, ALL_APPS_DELTA, type, v));
                 if (null != vipAddress) {
-                    invalidate(new Key(Key.EntityType.VIP, vipAddress, type, v));
+                    invalidateOrDefer(new Key(Key.EntityType.VIP, vipAddress, type, v));
                 }
                 if (null != secureVipAddress) {
-                    invalidate(new Key(Key.EntityType.SVIP, secureVipAddress, type, v));
+                    invalidateOrDefer(new Key(Key.EntityType.SVIP, secureVipAddress, type, v));
                 }
             }
         }
     }
 
+    private void invalidateOrDefer(Key key) {
+        invalidationsRequested.incrementAndGet();
+        if (invalidationWindowMs > 0) {
+            pendingInvalidations.add(key);
+        } else {
+            invalidationsApplied.incrementAndGet();
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Invalidate the keys marked as invalid since the last flush, each of them once.
+     */
+    @VisibleForTesting
+    void flushInvalidations() {
+        // A key marked again after it is removed here stays for the next flush
+        Iterator<Key> it = pendingInvalidations.iterator();
+        while (it.hasNext()) {
+            Key key = it.next();
+            it.remove();
+            invalidationsApplied.incrementAndGet();
+            invalidate(key);
+        }
+    }
+
     /**
      * Invalidate the cache information given the list of keys.
      *
@@ -285,11 +609,14 @@ public class ResponseCache {
             Object[] args = {key.getEntityType(), key.getName(), key.getVersion(), key.getType()};
             logger.debug("Invalidating the response cache key : {} {} {} {}", args);
             readWriteCacheMap.invalidate(key);
-            Collection<Key> keysWithRegions = regionSpecificKeys.get(key);
-            if (null != keysWithRegions && !keysWithRegions.isEmpty()) {
+            invalidateReadOnly(key);
+            // A copy, as the keys invalidated meanwhile are removed from the mapping, and refreshed ones added again
+            Collection<Key> keysWithRegions = new ArrayList<Key>(regionSpecificKeys.get(key));
+            if (!keysWithRegions.isEmpty()) {
                 for (Key keysWithRegion : keysWithRegions) {
                     logger.debug("Invalidating the response cache key : {} {} {} {}", args);
                     readWriteCacheMap.invalidate(keysWithRegion);
+                    invalidateReadOnly(keysWithRegion);
                 }
             }
         }
@@ -324,10 +651,73 @@ public class ResponseCache {
     }
 
     /**
-     * Get the payload in both compressed and uncompressed form.
+     * Get the number of cache keys invalidated by registry changes, before coalescing.
+     *
+     * @return the number of keys invalidated since the server started.
+     */
+    @Monitor(name = "responseCacheInvalidationsRequested", type = DataSourceType.COUNTER)
+    public long getInvalidationsRequested() {
+        return invalidationsRequested.get();
+    }
+
+    /**
+     * Get the number of cache keys actually invalidated, after coalescing.
+     *
+     * @return the number of keys invalidated since the server started.
+     */
+    @Monitor(name = "responseCacheInvalidationsApplied", type = DataSourceType.COUNTER)
+    public long getInvalidationsApplied() {
+        return invalidationsApplied.get();
+    }
+
+    /**
+     * Get the number of key invalidations requested for every key actually invalidated.
+     *
+     * @return the coalescing ratio, which is 1 if nothing was coalesced.
+     */
+    @Monitor(name = "responseCacheInvalidationCoalescingRatio", type = DataSourceType.GAUGE)
+    public double getInvalidationCoalescingRatio() {
+        long applied = invalidationsApplied.get();
+        return applied == 0 ? 1.0 : (double) invalidationsRequested.get() / applied;
+    }
+
+    /**
+     * Get the number of keys of the read only cache waiting to be updated.
+     *
+     * @return the number of keys.
+     */
+    @Monitor(name = "responseCachePendingRefreshes", type = DataSourceType.GAUGE)
+    public int getPendingRefreshes() {
+        return pendingRefreshes.size();
+    }
+
+    /**
+     * Checks whether the read only cache holds a payload for the given key.
+     */
+    @VisibleForTesting
+    boolean isCachedReadOnly(Key key) {
+        return readOnlyCacheMap.containsKey(key);
+    }
+
+    /**
+     * Get the payload in uncompressed form and in the content encodings produced so far, retained for the
+     * caller.
      */
     @VisibleForTesting
     Value getValue(final Key key, boolean useReadOnlyCache) {
+        // A payload released by the caches between the lookup and the retain has been replaced, so the
+        // lookup finds the replacement when it is repeated
+        for (int attempt = 0; attempt < MAX_RETAIN_ATTEMPTS; attempt++) {
+            Value payload = lookupValue(key, useReadOnlyCache);
+            if (payload == null || payload.retain()) {
+                return payload;
+            }
+        }
+        logger.warn("Cannot retain the value for key : {}", key.getName());
+        return null;
+    }
+
+    private Value lookupValue(final Key key, boolean useReadOnlyCache) {
         Value payload = null;
         try {
             if (useReadOnlyCache) {
@@ -336,7 +726,7 @@ public class ResponseCache {
                     payload = currentPayload;
                 } else {
                     payload = readWriteCacheMap.get(key);
-                    readOnlyCacheMap.put(key, payload);
+                    putReadOnly(key, payload);
                 }
             } else {
                 payload = readWriteCacheMap.get(key);
@@ -348,39 +738,61 @@ public class ResponseCache {
     }
 
     /**
-     * Generate pay load with both JSON and XML formats for all applications.
+     * Puts the payload in the read only cache, which holds a reference of its own to it.
      */
-    private static String getPayLoad(Key key, Applications apps) {
-        if (key.getType() == KeyType.JSON) {
-            return EurekaJacksonCodec.getInstance().writeToString(apps);
-        } else {
-            return XmlXStream.getInstance().toXML(apps);
+    private void putReadOnly(Key key, Value payload) {
+        if (payload.retain()) {
+            Value previous = readOnlyCacheMap.put(key, payload);
+            if (previous != null) {
+                previous.release();
+            }
         }
     }
 
     /**
-     * Generate pay load with both JSON and XML formats for a given application.
+     * Write pay load with both JSON and XML formats for all applications.
+     */
+    private static void writePayLoad(Key key, Applications apps, OutputStream out) throws IOException {
+        serialize(key, apps, out);
+    }
+
+    /**
+     * Write pay load with both JSON and XML formats for all applications, reusing the serialized form of the
+     * applications that did not change since the last time they were serialized.
      */
-    private static String getPayLoad(Key key, Application app) {
-        if (app == null) {
-            return EMPTY_PAYLOAD;
+    private void writeAllAppsPayLoad(Key key, Applications apps, AbstractInstanceRegistry registry,
+                                     OutputStream out) throws IOException {
+        applicationFragments.serialize(key.getType(), key.getVersion(), apps, registry.getRegistrySnapshot(), out);
+    }
+
+    /**
+     * Write pay load with both JSON and XML formats for a given application, or nothing if there is no such
+     * application.
+     */
+    private static void writePayLoad(Key key, Application app, OutputStream out) throws IOException {
+        if (app != null) {
+            serialize(key, app, out);
         }
+    }
 
+    private static void serialize(Key key, Object entity, OutputStream out) throws IOException {
         if (key.getType() == KeyType.JSON) {
-            return EurekaJacksonCodec.getInstance().writeToString(app);
+            EurekaJacksonCodec.getInstance().writeTo(entity, out);
         } else {
-            return XmlXStream.getInstance().toXML(app);
+            Writer writer = new OutputStreamWriter(out, UTF_8);
+            XmlXStream.getInstance().toXML(entity, writer);
+            writer.flush();
         }
     }
 
     /*
-     * Generate pay load for the given key.
+     * Generate pay load for the given key, serializing it straight into the buffers it is cached in.
      */
-    private Value generatePayload(Key key) {
+    private Value generatePayload(Key key) throws IOException {
         Stopwatch tracer = null;
         AbstractInstanceRegistry registry = PeerAwareInstanceRegistryImpl.getInstance();
         try {
-            String payload;
+            PayloadBuffer payload = new PayloadBuffer();
             switch (key.getEntityType()) {
                 case Application:
                     boolean isRemoteRegionRequested = key.hasRegions();
@@ -388,38 +800,41 @@ public class ResponseCache {
                     if (ALL_APPS.equals(key.getName())) {
                         if (isRemoteRegionRequested) {
                             tracer = serializeAllAppsWithRemoteRegionTimer.start();
-                            payload = getPayLoad(key, registry.getApplicationsFromMultipleRegions(key.getRegions()));
+                            writeAllAppsPayLoad(key,
+                                    registry.getApplicationsFromMultipleRegions(key.getRegions()), registry, payload);
                         } else {
                             tracer = serializeAllAppsTimer.start();
-                            payload = getPayLoad(key, registry.getApplications());
+                            writeAllAppsPayLoad(key, registry.getApplications(), registry, payload);
                         }
                     } else if (ALL_APPS_DELTA.equals(key.getName())) {
                         if (isRemoteRegionRequested) {
                             tracer = serializeDeltaAppsWithRemoteRegionTimer.start();
                             versionDeltaWithRegions.incrementAndGet();
-                            payload = getPayLoad(key,
-                                    registry.getApplicationDeltasFromMultipleRegions(key.getRegions()));
+                            writePayLoad(key,
+                                    registry.getApplicationDeltasFromMultipleRegions(key.getRegions()), payload);
                         } else {
                             tracer = serializeDeltaAppsTimer.start();
                             versionDelta.incrementAndGet();
-                            payload = getPayLoad(key, registry.getApplicationDeltas());
+                            writePayLoad(key, registry.getApplicationDeltas(), payload);
                         }
                     } else {
                         tracer = serializeOneApptimer.start();
-                        payload = getPayLoad(key, registry.getApplication(key.getName()));
+                        writePayLoad(key, registry.getApplication(key.getName()), payload);
                     }
                     break;
                 case VIP:
                 case SVIP:
                     tracer = serializeViptimer.start();
-                    payload = getPayLoad(key, getApplicationsForVip(key, registry));
+                    writePayLoad(key, getApplicationsForVip(key, registry), payload);
                     break;
                 default:
                     logger.error("Unidentified entity type: " + key.getEntityType() + " found in the cache key.");
-                    payload = "";
                     break;
             }
-            return new Value(payload);
+            Value value = new Value(payload, offHeapPool);
+            compressor.compressLater(value, key.getType(),
+                    eurekaConfig.getResponseCacheCompressionLevel(key.getName()));
+            return value;
         } finally {
             if (tracer != null) {
                 tracer.stop();
@@ -432,37 +847,10 @@ public class ResponseCache {
         logger.debug(
                 "Retrieving applications from registry for key : {} {} {} {}",
                 args);
-        Applications toReturn = new Applications();
-        Applications applications = registry.getApplications();
-        for (Application application : applications.getRegisteredApplications()) {
-            Application appToAdd = null;
-            for (InstanceInfo instanceInfo : application.getInstances()) {
-                String vipAddress;
-                if (Key.EntityType.VIP.equals(key.getEntityType())) {
-                    vipAddress = instanceInfo.getVIPAddress();
-                } else if (Key.EntityType.SVIP.equals(key.getEntityType())) {
-                    vipAddress = instanceInfo.getSecureVipAddress();
-                } else {
-                    // should not happen, but just in case.
-                    continue;
-                }
-
-                if (null != vipAddress) {
-                    String[] vipAddresses = vipAddress.split(",");
-                    Arrays.sort(vipAddresses);
-                    if (Arrays.binarySearch(vipAddresses, key.getName()) >= 0) {
-                        if (null == appToAdd) {
-                            appToAdd = new Application(application.getName());
-                            toReturn.addApplication(appToAdd);
-                        }
-                        appToAdd.addInstance(instanceInfo);
-                    }
-                }
-            }
-        }
-        toReturn.setAppsHashCode(toReturn.getReconcileHashCode());
+        Applications toReturn = registry.getApplicationsByVipAddress(key.getName(),
+                Key.EntityType.SVIP.equals(key.getEntityType()));
         args = new Object[]{key.getEntityType(), key.getName(), key.getVersion(), key.getType(),
-                toReturn.getReconcileHashCode()};
+                toReturn.getAppsHashCode()};
         logger.debug(
                 "Retrieved applications from registry for key : {} {} {} {}, reconcile hashcode: {}",
                 args);
@@ -486,6 +874,7 @@ public class ResponseCache {
         private final KeyType requestType;
         private final Version requestVersion;
         private final String hashKey;
+        private final int hashCode;
         private final EntityType entityType;
 
         public Key(EntityType entityType, String entityName, KeyType type, Version v) {
@@ -500,6 +889,7 @@ public class ResponseCache {
             requestVersion = v;
             hashKey = this.entityType + this.entityName + (null != this.regions ? Arrays.toString(this.regions) : "")
                     + requestType.name() + requestVersion.name();
+            hashCode = hashKey.hashCode();
         }
 
         public String getName() {
@@ -536,14 +926,18 @@ public class ResponseCache {
 
         @Override
         public int hashCode() {
-            String hashKey = getHashKey();
-            return hashKey.hashCode();
+            return hashCode;
         }
 
         @Override
         public boolean equals(Object other) {
+            // The keys of the requests are mostly the canonical ones the cache is keyed with
+            if (this == other) {
+                return true;
+            }
             if (other instanceof Key) {
-                return getHashKey().equals(((Key) other).getHashKey());
+                Key otherKey = (Key) other;
+                return hashCode == otherKey.hashCode && hashKey.equals(otherKey.hashKey);
             } else {
                 return false;
             }
@@ -551,47 +945,356 @@ public class ResponseCache {
     }
 
     /**
-     * The class that stores payload in both compressed and uncompressed form.
+     * The key of a delta since a registry version.
+     */
+    private static final class DeltaSinceKey {
+        private final Key key;
+        private final long registryVersion;
+
+        DeltaSinceKey(Key key, long registryVersion) {
+            this.key = key;
+            this.registryVersion = registryVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + (int) (registryVersion ^ (registryVersion >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof DeltaSinceKey)) {
+                return false;
+            }
+            DeltaSinceKey otherKey = (DeltaSinceKey) other;
+            return registryVersion == otherKey.registryVersion && key.equals(otherKey.key);
+        }
+    }
+
+    /**
+     * A delta since a registry version, with the registry version of the local region it was generated at.
+     */
+    private static final class DeltaSince {
+        private final long registryVersion;
+        private final Value value;
+
+        DeltaSince(long registryVersion, Value value) {
+            this.registryVersion = registryVersion;
+            this.value = value;
+        }
+    }
+
+    private static PayloadBuffer toBuffer(String payload) {
+        PayloadBuffer buffer = new PayloadBuffer();
+        byte[] bytes = payload.getBytes(UTF_8);
+        buffer.write(bytes, 0, bytes.length);
+        return buffer;
+    }
+
+    /**
+     * The class that stores payload in uncompressed form and in every configured content encoding, encoded in
+     * <em>UTF-8</em>.
+     *
+     * <p>
+     * The payload is kept in the chunks it was serialized into, and its encoded forms are added by the
+     * {@link PayloadCompressor} once they are produced. The entity tag of the payload is a hash of its bytes, so
+     * payloads generated again from an unchanged registry keep their tag.
+     * </p>
      *
+     * <p>
+     * Cached payloads may be kept outside of the heap, in which case they are reference counted. The caches
+     * holding a payload and the requests writing it each hold a reference, and the buffers are returned to
+     * their pool once the last reference is released.
+     * </p>
      */
     public class Value {
-        private final String payload;
-        private byte[] gzipped;
+        private final PayloadBuffer raw;
+        private final ByteBuffer offHeapRaw;
+        private final ConcurrentMap<String, PayloadBuffer> encoded = new ConcurrentHashMap<String, PayloadBuffer>(4);
+        private final ConcurrentMap<String, ByteBuffer> offHeapEncoded = new ConcurrentHashMap<String, ByteBuffer>(4);
+        private final List<String> encodings = new CopyOnWriteArrayList<String>();
+        private final ConcurrentMap<String, CachedResponses.CachedPayload> encodedEntities =
+                new ConcurrentHashMap<String, CachedResponses.CachedPayload>(4);
+        private final CachedResponses.CachedPayload entity;
+        private final DirectBufferPool pool;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final CountDownLatch encodingDone = new CountDownLatch(1);
+        private final boolean empty;
+        private final String eTag;
+        private final long generatedAt = System.currentTimeMillis();
 
+        /**
+         * Creates the value of the given payload, compressed right away at the default level.
+         */
         public Value(String payload) {
-            this.payload = payload;
-            if (payload != EMPTY_PAYLOAD) {
-                Stopwatch tracer = compressPayloadTimer.start();
-                try {
-                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                    GZIPOutputStream out = new GZIPOutputStream(bos);
-                    byte[] rawBytes = payload.getBytes();
-                    out.write(rawBytes);
-                    // Finish creation of gzip file
-                    out.finish();
-                    out.close();
-                    bos.close();
-                    gzipped = bos.toByteArray();
-                } catch (IOException e) {
-                    gzipped = null;
-                } finally {
-                    if (tracer != null) {
-                        tracer.stop();
-                    }
+            this(payload, null);
+        }
+
+        Value(String payload, @Nullable DirectBufferPool pool) {
+            this(toBuffer(payload), pool);
+            compressor.compress(this, null, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        /**
+         * Creates the value of the given payload, which has no encoded form until it is set.
+         */
+        Value(PayloadBuffer payload, @Nullable DirectBufferPool pool) {
+            this.empty = payload.size() == 0;
+            Hasher hasher = Hashing.murmur3_128().newHasher();
+            payload.copyTo(hasher);
+            this.eTag = hasher.hash().toString();
+            if (pool != null && !empty) {
+                this.pool = pool;
+                this.offHeapRaw = pool.copyOf(payload);
+                this.raw = null;
+            } else {
+                this.pool = null;
+                this.offHeapRaw = null;
+                this.raw = payload;
+            }
+            this.entity = new CachedResponses.CachedPayload(this, null);
+        }
+
+        /**
+         * Sets the form of the payload in the given content encoding. The caller must hold a reference to the
+         * payload.
+         */
+        void setEncoded(String encoding, PayloadBuffer payload) {
+            if (pool != null) {
+                ByteBuffer previous = offHeapEncoded.put(encoding, pool.copyOf(payload));
+                if (previous != null) {
+                    pool.release(previous);
                 }
             } else {
-                gzipped = null;
+                encoded.put(encoding, payload);
+            }
+            if (!encodedEntities.containsKey(encoding)) {
+                encodedEntities.put(encoding, new CachedResponses.CachedPayload(this, encoding));
+            }
+            if (!encodings.contains(encoding)) {
+                encodings.add(encoding);
             }
         }
 
+        /**
+         * Decodes the payload, which creates a new string on every call.
+         */
         public String getPayload() {
-            return payload;
+            return new String(getRaw(), UTF_8);
+        }
+
+        /**
+         * Gets a copy of the uncompressed payload.
+         */
+        public byte[] getRaw() {
+            return raw != null ? raw.toByteArray() : toArray(offHeapRaw);
         }
 
+        /**
+         * Gets a copy of the payload compressed in <em>gzip</em> format, or null if the payload is empty or is not
+         * compressed yet.
+         */
         public byte[] getGzipped() {
-            return gzipped;
+            return getEncoded(ContentEncoders.GZIP);
         }
 
-    }
+        /**
+         * Gets a copy of the payload in the given content encoding, or null if the payload is empty or is not
+         * encoded yet.
+         */
+        public byte[] getEncoded(String encoding) {
+            if (offHeapRaw != null) {
+                return toArray(offHeapEncoded.get(encoding));
+            }
+            PayloadBuffer payload = encoded.get(encoding);
+            return payload == null ? null : payload.toByteArray();
+        }
+
+        public boolean isEmpty() {
+            return empty;
+        }
+
+        /**
+         * Checks whether the form of the payload in the given content encoding is available. Payloads are
+         * encoded in the background, after they are generated.
+         */
+        public boolean isEncoded(String encoding) {
+            return encoded.containsKey(encoding) || offHeapEncoded.containsKey(encoding);
+        }
+
+        /**
+         * Selects the content encoding the payload is sent in to a client, which is the first encoding the
+         * client accepts, among the ones the payload is encoded in already in the order they are configured in.
+         *
+         * @param acceptEncoding
+         *            the <tt>Accept-Encoding</tt> header of the client.
+         * @return the name of the encoding, or null if the payload is to be sent uncompressed.
+         */
+        @Nullable
+        public String selectEncoding(@Nullable String acceptEncoding) {
+            if (acceptEncoding == null || empty) {
+                return null;
+            }
+            // Indexed, as iterating would allocate an iterator on every request
+            for (int i = 0; i < encodings.size(); i++) {
+                String encoding = encodings.get(i);
+                if (ContentEncoders.isAccepted(acceptEncoding, encoding)) {
+                    return encoding;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Selects the content encoding the payload is sent in to a client like {@link #selectEncoding(String)},
+         * waiting up to the given time for the payload to be encoded if it is not yet and the client accepts one
+         * of the encodings it is being encoded in.
+         *
+         * @param acceptEncoding
+         *            the <tt>Accept-Encoding</tt> header of the client.
+         * @param timeoutMs
+         *            the longest time to wait for the payload to be encoded.
+         * @return the name of the encoding, or null if the payload is to be sent uncompressed.
+         */
+        @Nullable
+        String awaitEncoding(@Nullable String acceptEncoding, long timeoutMs) {
+            String encoding = selectEncoding(acceptEncoding);
+            if (encoding != null || encodingDone.getCount() == 0 || !compressor.encodesAny(acceptEncoding)) {
+                return encoding;
+            }
+            try {
+                encodingDone.await(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return selectEncoding(acceptEncoding);
+        }
+
+        /**
+         * Marks the encoding of the payload as done, whether its encoded forms were set or not, which wakes up
+         * the requests waiting for them.
+         */
+        void encodingDone() {
+            encodingDone.countDown();
+        }
+
+        public boolean isOffHeap() {
+            return offHeapRaw != null;
+        }
+
+        /**
+         * Gets the length of the payload in the given content encoding, or -1 if the payload has no such form.
+         *
+         * @param encoding
+         *            the content encoding, or null for the uncompressed payload.
+         */
+        public int getLength(@Nullable String encoding) {
+            ByteBuffer buffer = encoding != null ? offHeapEncoded.get(encoding) : offHeapRaw;
+            if (buffer != null) {
+                return buffer.remaining();
+            }
+            PayloadBuffer payload = encoding != null ? encoded.get(encoding) : raw;
+            return payload == null ? -1 : payload.size();
+        }
+
+        /**
+         * Writes the payload in the given content encoding, straight from where it is kept.
+         *
+         * @param encoding
+         *            the content encoding, or null for the uncompressed payload.
+         */
+        public void writeTo(OutputStream out, @Nullable String encoding) throws IOException {
+            ByteBuffer buffer = encoding != null ? offHeapEncoded.get(encoding) : offHeapRaw;
+            if (buffer == null) {
+                PayloadBuffer payload = encoding != null ? encoded.get(encoding) : raw;
+                if (payload != null) {
+                    payload.writeTo(out);
+                }
+                return;
+            }
+            ByteBuffer source = buffer.duplicate();
+            WritableByteChannel channel = Channels.newChannel(out);
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+
+        public long getGeneratedAt() {
+            return generatedAt;
+        }
+
+        /**
+         * Gets the entity tag of the payload in the given content encoding, which differs from the tags of the
+         * other forms as these are different entities.
+         *
+         * @param encoding
+         *            the content encoding, or null for the uncompressed payload.
+         */
+        public String getETag(@Nullable String encoding) {
+            return encoding != null ? eTag + "-" + encoding : eTag;
+        }
+
+        /**
+         * Gets the response entity sending the payload in the given content encoding, which is tagged with
+         * {@link #getETag(String)}.
+         *
+         * @param encoding
+         *            the content encoding, or null for the uncompressed payload.
+         */
+        CachedResponses.CachedPayload getEntity(@Nullable String encoding) {
+            return encoding != null ? encodedEntities.get(encoding) : entity;
+        }
+
+        /**
+         * Takes a reference to the payload, unless its last reference was released already.
+         *
+         * @return true if the payload can be read until the reference is released.
+         */
+        public boolean retain() {
+            return retain(pool == null);
+        }
+
+        /**
+         * Takes a reference to the payload, unless its last reference was released already, even if the payload
+         * is kept on the heap and could still be read.
+         *
+         * @return true if the payload is still held by a cache or a request.
+         */
+        boolean retainIfReferenced() {
+            return retain(false);
+        }
+
+        private boolean retain(boolean whenReleased) {
+            while (true) {
+                int current = references.get();
+                if (current == 0 && !whenReleased) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Releases a reference to the payload, returning the buffers holding it to their pool if it was the last.
+         */
+        public void release() {
+            if (references.decrementAndGet() == 0 && pool != null) {
+                pool.release(offHeapRaw);
+                for (ByteBuffer buffer : offHeapEncoded.values()) {
+                    pool.release(buffer);
+                }
+            }
+        }
 
+        private byte[] toArray(ByteBuffer buffer) {
+            if (buffer == null) {
+                return null;
+            }
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return bytes;
+        }
+    }
 }
@@ -21,6 +21,8 @@ import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 /**
@@ -36,8 +38,9 @@ public class SecureVIPResource extends AbstractVIPResource {
     @GET
     @Path("{svipAddress}")
     public Response statusUpdate(@PathParam("version") String version, @PathParam("svipAddress") String svipAddress,
-                                 @HeaderParam("Accept") final String acceptHeader) {
-        return getVipResponse(version, svipAddress, acceptHeader, ResponseCache.Key.EntityType.SVIP);
+                                 @HeaderParam("Accept") final String acceptHeader,
+                                 @Context Request request) {
+        return getVipResponse(version, svipAddress, acceptHeader, request, ResponseCache.Key.EntityType.SVIP);
     }
 
 }
@@ -21,6 +21,8 @@ import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 /**
@@ -36,8 +38,9 @@ public class VIPResource extends AbstractVIPResource {
     @GET
     @Path("{vipAddress}")
     public Response statusUpdate(@PathParam("version") String version, @PathParam("vipAddress") String vipAddress,
-                                 @HeaderParam("Accept") final String acceptHeader) {
-        return getVipResponse(version, vipAddress, acceptHeader, ResponseCache.Key.EntityType.VIP);
+                                 @HeaderParam("Accept") final String acceptHeader,
+                                 @Context Request request) {
+        return getVipResponse(version, vipAddress, acceptHeader, request, ResponseCache.Key.EntityType.VIP);
     }
 
 }
@@ -16,7 +16,6 @@
 
 package com.netflix.eureka.util;
 
-import java.util.concurrent.atomic.AtomicLong;
 
 import com.netflix.appinfo.AmazonInfo;
 import com.netflix.appinfo.AmazonInfo.MetaDataKey;
@@ -50,6 +49,10 @@ public enum EurekaMonitors {
     GET_ALL_WITH_REMOTE_REGIONS_CACHE_MISS_DELTA("getAllWithRemoteRegionCacheMissDeltaCounter",
             "Number of total registry queries for delta with remote region seen since startup"),
     GET_ALL_DELTA("getAllDeltaCounter", "Number of total deltas since startup"),
+    DELTA_WITH_BLOCKED_CHANGES("deltaWithBlockedChangesCounter",
+            "Number of deltas that blocked registry changes as the registry kept changing while they were generated"),
+    DELTA_WITH_UNSETTLED_CHANGES("deltaWithUnsettledChangesCounter",
+            "Number of deltas generated while registry changes were in progress, as these did not complete in time"),
     GET_ALL_DELTA_WITH_REMOTE_REGIONS("getAllDeltaWithRemoteRegionCounter",
             "Number of total deltas with remote regions since startup"),
     GET_ALL("getAllCounter", "Number of total registry queries seen since startup"),
@@ -89,11 +92,12 @@ public enum EurekaMonitors {
         }
     }
 
+    // Striped as some of these, like renewals, are incremented by every request thread
     @com.netflix.servo.annotations.Monitor(name = "count", type = DataSourceType.COUNTER)
-    private final AtomicLong counter = new AtomicLong();
+    private final StripedCounter counter = new StripedCounter();
 
     @com.netflix.servo.annotations.Monitor(name = "count-minus-replication", type = DataSourceType.COUNTER)
-    private final AtomicLong myZoneCounter = new AtomicLong();
+    private final StripedCounter myZoneCounter = new StripedCounter();
 
     /**
      * Increment the counter for the given statistic.
@@ -111,10 +115,10 @@ public enum EurekaMonitors {
      *            true if this a replication, false otherwise.
      */
     public void increment(boolean isReplication) {
-        counter.incrementAndGet();
+        counter.increment();
 
         if (!isReplication) {
-            myZoneCounter.incrementAndGet();
+            myZoneCounter.increment();
         }
     }
 
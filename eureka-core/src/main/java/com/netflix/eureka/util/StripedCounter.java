@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.eureka.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for values incremented by many threads at once, like the number of renewals.
+ *
+ * <p>
+ * Increments are spread over a number of cells, picked by the id of the incrementing thread and padded to sit
+ * on cache lines of their own, so that concurrent increments from different threads rarely update the same
+ * memory. Reading the value sums up the cells and is therefore more expensive than with a single
+ * {@link java.util.concurrent.atomic.AtomicLong}, which suits values that are updated far more often than
+ * they are read. Incrementing does not allocate.
+ * </p>
+ *
+ * <p>
+ * The counter is a {@link Number} so it can be exposed as a <tt>Servo</tt> monitor field.
+ * </p>
+ */
+public class StripedCounter extends Number {
+
+    private static final long serialVersionUID = 1L;
+
+    // 16 longs are 128 bytes, which keeps cells apart even with adjacent cache line prefetching
+    private static final int CELL_PADDING = 16;
+    private static final int MAX_CELLS = 64;
+
+    private final int cellMask;
+    private final AtomicLongArray cells;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrency the expected number of threads incrementing at the same time, rounded up to a
+     *                    power of two and capped to 64 cells.
+     */
+    public StripedCounter(int concurrency) {
+        int numberOfCells = 1;
+        while (numberOfCells < concurrency && numberOfCells < MAX_CELLS) {
+            numberOfCells <<= 1;
+        }
+        this.cellMask = numberOfCells - 1;
+        this.cells = new AtomicLongArray(numberOfCells * CELL_PADDING);
+    }
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds the given value to the counter.
+     */
+    public void add(long value) {
+        cells.getAndAdd(cellIndex(), value);
+    }
+
+    /**
+     * Gets the current value of the counter. Increments that happen while the cells are summed up may or may
+     * not be included.
+     */
+    public long get() {
+        long sum = 0;
+        for (int cell = 0; cell <= cellMask; cell++) {
+            sum += cells.get(cell * CELL_PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the current value of the counter and resets it to zero. Every increment is either included in the
+     * returned value or kept for the next one.
+     */
+    public long getAndReset() {
+        long sum = 0;
+        for (int cell = 0; cell <= cellMask; cell++) {
+            sum += cells.getAndSet(cell * CELL_PADDING, 0);
+        }
+        return sum;
+    }
+
+    private int cellIndex() {
+        long threadId = Thread.currentThread().getId();
+        // Spread sequential thread ids, the multiplier is the 64-bit golden ratio
+        int hash = (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 32);
+        return (hash & cellMask) * CELL_PADDING;
+    }
+
+    @Override
+    public long longValue() {
+        return get();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) get();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) get();
+    }
+
+    @Override
+    public double doubleValue() {
+        return (double) get();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
@@ -1,6 +1,7 @@
 package com.netflix.eureka;
 
 import javax.annotation.Nullable;
+import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -90,6 +91,14 @@ public class AbstractTester {
         registry.initRemoteRegionRegistry();
     }
 
+    /**
+     * Starts fetching the remote region of the mock server into the given registry, as the bootstrap does
+     * for the registry the resources serve.
+     */
+    protected static void initRemoteRegionRegistry(AbstractInstanceRegistry instanceRegistry) throws MalformedURLException {
+        instanceRegistry.initRemoteRegionRegistry();
+    }
+
     protected MockRemoteEurekaServer newMockRemoteServer() {
         return new MockRemoteEurekaServer(0 /* use ephemeral */, remoteRegionApps, remoteRegionAppsDelta);
     }
@@ -1,6 +1,8 @@
 package com.netflix.eureka;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.appinfo.InstanceInfo.InstanceStatus;
@@ -149,6 +151,236 @@ public class InstanceRegistryTest extends AbstractTester {
         verifyLocalInstanceStatus(myInstance.getId(), InstanceStatus.UP);
     }
 
+    @Test
+    public void testLocalSnapshotIsSharedUntilNextChange() throws Exception {
+        InstanceInfo myInstance = createLocalInstance(LOCAL_REGION_INSTANCE_1_HOSTNAME);
+        registerInstanceLocally(myInstance);
+
+        Applications apps = registry.getApplicationsFromLocalRegionOnly();
+        Assert.assertSame("Snapshot rebuilt without a registry change", apps,
+                registry.getApplicationsFromLocalRegionOnly());
+        Assert.assertEquals("UP_1_", apps.getAppsHashCode());
+        long version = registry.getRegistrySnapshot().getVersion();
+
+        registry.statusUpdate(LOCAL_REGION_APP_NAME, myInstance.getId(), InstanceStatus.OUT_OF_SERVICE, "0", false);
+        Applications changedApps = registry.getApplicationsFromLocalRegionOnly();
+        Assert.assertNotSame("Snapshot not rebuilt after a status change", apps, changedApps);
+        Assert.assertEquals("OUT_OF_SERVICE_1_", changedApps.getAppsHashCode());
+        Assert.assertTrue("Snapshot version did not advance", registry.getRegistrySnapshot().getVersion() > version);
+
+        registry.cancel(LOCAL_REGION_APP_NAME, myInstance.getId(), false);
+        Assert.assertNull("Cancelled app still in snapshot",
+                registry.getApplicationsFromLocalRegionOnly().getRegisteredApplications(LOCAL_REGION_APP_NAME));
+    }
+
+    @Test
+    public void testLocalSnapshotOnlyChangesWhenPublished() throws Exception {
+        InstanceInfo myInstance = new InstanceInfo.Builder(createLocalInstance(LOCAL_REGION_INSTANCE_1_HOSTNAME))
+                .add("zone", "a").build();
+        registerInstanceLocally(myInstance);
+        Applications apps = registry.getApplicationsFromLocalRegionOnly();
+
+        // The registered instance is changed in place by status and metadata updates
+        InstanceInfo registered = registry.getInstanceByAppAndId(LOCAL_REGION_APP_NAME, myInstance.getId(), false);
+        registered.getMetadata().put("zone", "b");
+        registry.statusUpdate(LOCAL_REGION_APP_NAME, myInstance.getId(), InstanceStatus.OUT_OF_SERVICE, "0", false);
+
+        InstanceInfo published =
+                apps.getRegisteredApplications(LOCAL_REGION_APP_NAME).getByInstanceId(myInstance.getId());
+        Assert.assertNotSame(registered, published);
+        Assert.assertEquals(InstanceStatus.UP, published.getStatus());
+        Assert.assertEquals("a", published.getMetadata().get("zone"));
+
+        InstanceInfo republished = registry.getApplicationsFromLocalRegionOnly()
+                .getRegisteredApplications(LOCAL_REGION_APP_NAME).getByInstanceId(myInstance.getId());
+        Assert.assertEquals(InstanceStatus.OUT_OF_SERVICE, republished.getStatus());
+        Assert.assertEquals("b", republished.getMetadata().get("zone"));
+    }
+
+    @Test
+    public void testGetInstancesById() throws Exception {
+        InstanceInfo myInstance = createLocalInstance(LOCAL_REGION_INSTANCE_1_HOSTNAME);
+        registerInstanceLocally(myInstance);
+
+        List<InstanceInfo> localInstances = registry.getInstancesById(myInstance.getId(), false);
+        Assert.assertEquals("Local instance not found by id", 1, localInstances.size());
+        Assert.assertEquals(LOCAL_REGION_APP_NAME, localInstances.get(0).getAppName());
+
+        List<InstanceInfo> remoteInstances = registry.getInstancesById(REMOTE_REGION_INSTANCE_1_HOSTNAME, true);
+        Assert.assertEquals("Remote instance not found by id", 1, remoteInstances.size());
+        Assert.assertEquals(REMOTE_REGION_APP_NAME, remoteInstances.get(0).getAppName());
+        Assert.assertTrue("Remote instance returned without remote regions",
+                registry.getInstancesById(REMOTE_REGION_INSTANCE_1_HOSTNAME, false).isEmpty());
+
+        registry.cancel(LOCAL_REGION_APP_NAME, myInstance.getId(), false);
+        Assert.assertTrue("Cancelled instance still found by id",
+                registry.getInstancesById(myInstance.getId(), false).isEmpty());
+    }
+
+    @Test
+    public void testGetApplicationsByVipAddress() throws Exception {
+        registerInstanceLocally(new InstanceInfo.Builder(createLocalInstance(LOCAL_REGION_INSTANCE_1_HOSTNAME))
+                .setVIPAddress("vip1,vip2").build());
+        registerInstanceLocally(new InstanceInfo.Builder(createLocalInstance(LOCAL_REGION_INSTANCE_2_HOSTNAME))
+                .setVIPAddress("vip2").build());
+
+        verifyVipInstanceCount("vip1", 1);
+        verifyVipInstanceCount("vip2", 2);
+        verifyVipInstanceCount("vip", 0);
+
+        registerInstanceLocally(new InstanceInfo.Builder(createLocalInstance(LOCAL_REGION_INSTANCE_1_HOSTNAME))
+                .setVIPAddress("vip2").build());
+        verifyVipInstanceCount("vip1", 0);
+        verifyVipInstanceCount("vip2", 2);
+
+        registry.cancel(LOCAL_REGION_APP_NAME, LOCAL_REGION_INSTANCE_2_HOSTNAME, false);
+        verifyVipInstanceCount("vip2", 1);
+    }
+
+    @Test
+    public void testGetApplicationDeltasSince() throws Exception {
+        InstanceInfo myInstance = createLocalInstance(LOCAL_REGION_INSTANCE_1_HOSTNAME);
+        registerInstanceLocally(myInstance);
+        long version = registry.getApplicationsFromLocalRegionOnly().getVersion();
+
+        registry.statusUpdate(LOCAL_REGION_APP_NAME, myInstance.getId(), InstanceStatus.OUT_OF_SERVICE, "0", false);
+        registry.statusUpdate(LOCAL_REGION_APP_NAME, myInstance.getId(), InstanceStatus.DOWN, "0", false);
+        registerInstanceLocally(createLocalInstance(LOCAL_REGION_INSTANCE_2_HOSTNAME));
+
+        Applications delta = registry.getApplicationDeltasSince(version);
+        Applications apps = registry.getApplicationsFromLocalRegionOnly();
+        Assert.assertEquals("Changed instances not returned once", 2,
+                delta.getRegisteredApplications(LOCAL_REGION_APP_NAME).getInstances().size());
+        Assert.assertEquals(InstanceStatus.DOWN,
+                delta.getRegisteredApplications(LOCAL_REGION_APP_NAME).getByInstanceId(myInstance.getId()).getStatus());
+        Assert.assertEquals(apps.getVersion(), delta.getVersion());
+        Assert.assertEquals(apps.getAppsHashCode(), delta.getAppsHashCode());
+
+        Assert.assertTrue("Changes returned again",
+                registry.getApplicationDeltasSince(delta.getVersion()).getRegisteredApplications().isEmpty());
+        Assert.assertNull("Version of another registry accepted", registry.getApplicationDeltasSince(1L));
+    }
+
+    @Test
+    public void testDeltasAcrossSegmentsUnderConcurrentChanges() throws Exception {
+        final long version = registry.getApplicationsFromLocalRegionOnly().getVersion();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> writers = new ArrayList<Thread>();
+        final List<InstanceInfo> instances = new ArrayList<InstanceInfo>();
+        for (int i = 0; i < 100; i++) {
+            InstanceInfo.Builder builder = new InstanceInfo.Builder(createLocalInstance("segmenthost" + i));
+            instances.add(builder.setAppName("SEGMENTAPP" + (i % 20)).build());
+        }
+        for (int w = 0; w < 4; w++) {
+            final int writer = w;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = writer; i < instances.size(); i += 4) {
+                            registry.register(instances.get(i), 10000000, false);
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            writers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            while (thread.isAlive()) {
+                Assert.assertNotNull(registry.getApplicationDeltasSince(version));
+            }
+            thread.join();
+        }
+        for (InstanceInfo instance : instances) {
+            registeredApps.add(new Pair<String, String>(instance.getAppName(), instance.getId()));
+        }
+        Assert.assertNull(failure.get());
+
+        Applications delta = registry.getApplicationDeltasSince(version);
+        int count = 0;
+        for (Application app : delta.getRegisteredApplications()) {
+            count += app.getInstances().size();
+        }
+        Assert.assertEquals(instances.size(), count);
+        Assert.assertEquals(registry.getApplicationsFromLocalRegionOnly().getAppsHashCode(), delta.getAppsHashCode());
+    }
+
+    @Test
+    public void testDeltaDoesNotBlockChangesBehindAStalledChange() throws Exception {
+        final String appName = "STALLEDAPP";
+        final InstanceInfo existing = new InstanceInfo.Builder(createLocalInstance("stalledhost1"))
+                .setAppName(appName).build();
+        registry.register(existing, 10000000, false);
+        registeredApps.add(new Pair<String, String>(appName, existing.getId()));
+        final long version = registry.getApplicationsFromLocalRegionOnly().getVersion();
+        final InstanceInfo stalled = new InstanceInfo.Builder(createLocalInstance("stalledhost2"))
+                .setAppName(appName).build();
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread registration = new Thread() {
+            @Override
+            public void run() {
+                registry.register(stalled, 10000000, false);
+            }
+        };
+        Thread delta = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    registry.getApplicationDeltasSince(version);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        Thread change = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    registry.statusUpdate(appName, existing.getId(), InstanceStatus.OUT_OF_SERVICE,
+                            String.valueOf(System.currentTimeMillis()), false);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        // A new registration waits for the registry lock in the middle of its change, as long as it is held here
+        synchronized (registry.lock) {
+            registration.start();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (registration.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(Thread.State.BLOCKED, registration.getState());
+
+            // The delta stops waiting for the stalled change, and releases the change in the same segment
+            delta.start();
+            change.start();
+            delta.join(10000);
+            change.join(10000);
+            Assert.assertFalse("Delta waited for the stalled change.", delta.isAlive());
+            Assert.assertFalse("Change waited for the stalled change.", change.isAlive());
+        }
+        registration.join();
+        registeredApps.add(new Pair<String, String>(appName, stalled.getId()));
+        Assert.assertNull(failure.get());
+
+        Applications changes = registry.getApplicationDeltasSince(version);
+        Assert.assertNotNull(changes);
+        Assert.assertEquals(registry.getApplicationsFromLocalRegionOnly().getAppsHashCode(), changes.getAppsHashCode());
+    }
+
+    private void verifyVipInstanceCount(String vipAddress, int expectedCount) {
+        int count = 0;
+        for (Application app : registry.getApplicationsByVipAddress(vipAddress, false).getRegisteredApplications()) {
+            count += app.getInstances().size();
+        }
+        Assert.assertEquals("Unexpected number of instances for vip " + vipAddress, expectedCount, count);
+    }
+
     private void verifyLocalInstanceStatus(String id, InstanceStatus status) {
         InstanceInfo instanceInfo = registry.getApplication(LOCAL_REGION_APP_NAME).getByInstanceId(id);
         assertThat("InstanceInfo with id " + id + " not found", instanceInfo, is(notNullValue()));
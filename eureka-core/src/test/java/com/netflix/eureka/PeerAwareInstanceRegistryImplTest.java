@@ -0,0 +1,86 @@
+package com.netflix.eureka;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.shared.EurekaHttpClient.HttpResponse;
+import com.netflix.discovery.shared.Pair;
+import com.netflix.eureka.cluster.PeerEurekaNode;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PeerAwareInstanceRegistryImplTest extends AbstractTester {
+
+    @Test
+    public void testRegistryIsCopiedFromAllPeers() throws Exception {
+        PeerEurekaNode first = newPeer("http://peer1/", LOCAL_REGION_INSTANCE_1_HOSTNAME);
+        PeerEurekaNode second = newPeer("http://peer2/", LOCAL_REGION_INSTANCE_2_HOSTNAME);
+
+        int count = registry.syncUpFromPeers(Arrays.asList(first, second), 5000);
+
+        assertEquals(2, count);
+        assertNotNull(registry.getInstanceByAppAndId(LOCAL_REGION_APP_NAME, LOCAL_REGION_INSTANCE_1_HOSTNAME));
+        assertNotNull(registry.getInstanceByAppAndId(LOCAL_REGION_APP_NAME, LOCAL_REGION_INSTANCE_2_HOSTNAME));
+    }
+
+    @Test
+    public void testSlowPeerIsCancelled() throws Exception {
+        PeerEurekaNode answering = newPeer("http://peer1/", LOCAL_REGION_INSTANCE_1_HOSTNAME);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        PeerEurekaNode slow = mock(PeerEurekaNode.class);
+        when(slow.getServiceUrl()).thenReturn("http://peer2/");
+        when(slow.getApplications()).thenAnswer(new Answer<HttpResponse<Applications>>() {
+            @Override
+            public HttpResponse<Applications> answer(InvocationOnMock invocation) throws Throwable {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return HttpResponse.responseWith(200, new Applications());
+            }
+        });
+
+        long startTime = System.currentTimeMillis();
+        int count = registry.syncUpFromPeers(Arrays.asList(answering, slow), 500);
+
+        assertEquals(1, count);
+        assertTrue(System.currentTimeMillis() - startTime < 30000);
+        assertTrue("The slow peer fetch was not cancelled", interrupted.await(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNoPeerAnswered() throws Exception {
+        PeerEurekaNode failing = mock(PeerEurekaNode.class);
+        when(failing.getServiceUrl()).thenReturn("http://peer1/");
+        when(failing.getApplications()).thenReturn(HttpResponse.<Applications>responseWith(503));
+
+        assertEquals(0, registry.syncUpFromPeers(Arrays.asList(failing), 5000));
+    }
+
+    private PeerEurekaNode newPeer(String serviceUrl, String hostname) {
+        InstanceInfo instance = createLocalInstance(hostname);
+        registeredApps.add(new Pair<String, String>(instance.getAppName(), instance.getId()));
+        Application app = new Application(instance.getAppName());
+        app.addInstance(instance);
+        Applications apps = new Applications();
+        apps.addApplication(app);
+
+        PeerEurekaNode node = mock(PeerEurekaNode.class);
+        when(node.getServiceUrl()).thenReturn(serviceUrl);
+        when(node.getApplications()).thenReturn(HttpResponse.responseWith(200, apps));
+        return node;
+    }
+}
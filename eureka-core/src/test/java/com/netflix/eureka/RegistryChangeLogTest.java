@@ -0,0 +1,61 @@
+package com.netflix.eureka;
+
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.util.InstanceInfoGenerator;
+import com.netflix.eureka.lease.Lease;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RegistryChangeLogTest {
+
+    private final RegistryChangeLog changeLog = new RegistryChangeLog(4);
+
+    @Test
+    public void testChangesSinceVersion() throws Exception {
+        Lease<InstanceInfo> first = newLease();
+        Lease<InstanceInfo> second = newLease();
+        changeLog.append(1, first);
+        changeLog.append(2, second);
+
+        List<Lease<InstanceInfo>> changes = changeLog.getChangesSince(changeLog.toRegistryVersion(0), 2);
+        assertEquals(2, changes.size());
+        assertSame(first, changes.get(0));
+        assertSame(second, changes.get(1));
+
+        changes = changeLog.getChangesSince(changeLog.toRegistryVersion(1), 2);
+        assertEquals(1, changes.size());
+        assertSame(second, changes.get(0));
+        assertEquals(0, changeLog.getChangesSince(changeLog.toRegistryVersion(2), 2).size());
+    }
+
+    @Test
+    public void testOverwrittenChangesAreNotReturned() throws Exception {
+        for (long sequence = 1; sequence <= 6; sequence++) {
+            changeLog.append(sequence, newLease());
+        }
+
+        assertNull(changeLog.getChangesSince(changeLog.toRegistryVersion(1), 6));
+        assertEquals(4, changeLog.getChangesSince(changeLog.toRegistryVersion(2), 6).size());
+    }
+
+    @Test
+    public void testUnknownVersionsAreNotAccepted() throws Exception {
+        changeLog.append(1, newLease());
+        changeLog.append(2, null);
+        changeLog.append(3, newLease());
+
+        assertNull("Version of another change log accepted", changeLog.getChangesSince(1, 3));
+        assertNull("Version ahead of the log accepted", changeLog.getChangesSince(changeLog.toRegistryVersion(4), 3));
+        assertNull("Untracked change skipped", changeLog.getChangesSince(changeLog.toRegistryVersion(1), 3));
+        assertEquals(1, changeLog.getChangesSince(changeLog.toRegistryVersion(2), 3).size());
+    }
+
+    private static Lease<InstanceInfo> newLease() {
+        return new Lease<InstanceInfo>(InstanceInfoGenerator.takeOne(), 90);
+    }
+}
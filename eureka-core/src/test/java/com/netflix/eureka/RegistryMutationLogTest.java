@@ -0,0 +1,165 @@
+package com.netflix.eureka;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import com.netflix.eureka.cluster.ClusterSampleData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RegistryMutationLogTest {
+
+    private File directory;
+    private final List<InstanceInfo> registered = new ArrayList<InstanceInfo>();
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("registry", ".log");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testChangesAreReplayedInOrder() throws Exception {
+        InstanceInfo instance = ClusterSampleData.newInstanceInfo(0);
+        RegistryMutationLog log = new RegistryMutationLog(directory, 1024 * 1024, 100);
+        log.start();
+        log.appendRegister(instance, 30);
+        log.appendStatusUpdate(instance.getAppName(), instance.getId(), InstanceStatus.OUT_OF_SERVICE, "1");
+        log.rotate();
+        log.appendDeleteStatusOverride(instance.getAppName(), instance.getId(), null, null);
+        log.appendCancel(instance.getAppName(), instance.getId());
+        log.appendClear();
+        log.shutdown();
+
+        List<String> changes = replay();
+        assertEquals(5, changes.size());
+        assertEquals("register " + instance.getId() + " 30", changes.get(0));
+        assertEquals("statusUpdate " + instance.getId() + " OUT_OF_SERVICE 1", changes.get(1));
+        assertEquals("deleteStatusOverride " + instance.getId() + " null null", changes.get(2));
+        assertEquals("cancel " + instance.getId(), changes.get(3));
+        assertEquals("clear", changes.get(4));
+    }
+
+    @Test
+    public void testReplayStopsAtIncompleteRecord() throws Exception {
+        InstanceInfo instance = ClusterSampleData.newInstanceInfo(0);
+        RegistryMutationLog log = new RegistryMutationLog(directory, 1024 * 1024, 100);
+        log.start();
+        log.appendCancel(instance.getAppName(), instance.getId());
+        log.shutdown();
+
+        // Simulate a crash in the middle of writing the next record
+        File[] segments = directory.listFiles();
+        assertEquals(1, segments.length);
+        FileOutputStream out = new FileOutputStream(segments[0], true);
+        try {
+            out.write(new byte[]{0, 0, 0, 100, 1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        assertEquals(1, replay().size());
+    }
+
+    @Test
+    public void testReplayStopsAtRecordLongerThanSegment() throws Exception {
+        InstanceInfo instance = ClusterSampleData.newInstanceInfo(0);
+        RegistryMutationLog log = new RegistryMutationLog(directory, 1024 * 1024, 100);
+        log.start();
+        log.appendCancel(instance.getAppName(), instance.getId());
+        log.shutdown();
+
+        // A corrupted length must not be allocated before the checksum can reject the record
+        File[] segments = directory.listFiles();
+        assertEquals(1, segments.length);
+        FileOutputStream out = new FileOutputStream(segments[0], true);
+        try {
+            out.write(new byte[]{0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        assertEquals(1, replay().size());
+    }
+
+    @Test
+    public void testRegistrationIsLoggedAsAppended() throws Exception {
+        InstanceInfo instance = ClusterSampleData.newInstanceInfo(0);
+        instance.setStatus(InstanceStatus.UP);
+        RegistryMutationLog log = new RegistryMutationLog(directory, 1024 * 1024, 100);
+        log.start();
+        log.appendRegister(instance, 30);
+        instance.setStatus(InstanceStatus.DOWN);
+        log.shutdown();
+
+        assertEquals(1, replay().size());
+        assertEquals(InstanceStatus.UP, registered.get(0).getStatus());
+    }
+
+    @Test
+    public void testSegmentsBeforeRotationAreDeleted() throws Exception {
+        InstanceInfo instance = ClusterSampleData.newInstanceInfo(0);
+        RegistryMutationLog log = new RegistryMutationLog(directory, 1024 * 1024, 100);
+        log.start();
+        log.appendCancel(instance.getAppName(), "before");
+        long segment = log.rotate();
+        log.appendCancel(instance.getAppName(), "after");
+        log.shutdown();
+
+        log.deleteSegmentsBefore(segment);
+
+        List<String> changes = replay();
+        assertEquals(1, changes.size());
+        assertEquals("cancel after", changes.get(0));
+    }
+
+    private List<String> replay() {
+        final List<String> changes = new ArrayList<String>();
+        RegistryMutationLog.replay(directory, new RegistryMutationLog.Replayer() {
+            @Override
+            public void register(InstanceInfo info, int leaseDuration) {
+                registered.add(info);
+                changes.add("register " + info.getId() + ' ' + leaseDuration);
+            }
+
+            @Override
+            public void cancel(String appName, String id) {
+                changes.add("cancel " + id);
+            }
+
+            @Override
+            public void statusUpdate(String appName, String id, InstanceStatus newStatus, String lastDirtyTimestamp) {
+                changes.add("statusUpdate " + id + ' ' + newStatus + ' ' + lastDirtyTimestamp);
+            }
+
+            @Override
+            public void deleteStatusOverride(String appName, String id, InstanceStatus newStatus, String lastDirtyTimestamp) {
+                changes.add("deleteStatusOverride " + id + ' ' + newStatus + ' ' + lastDirtyTimestamp);
+            }
+
+            @Override
+            public void clear() {
+                changes.add("clear");
+            }
+        });
+        return changes;
+    }
+}
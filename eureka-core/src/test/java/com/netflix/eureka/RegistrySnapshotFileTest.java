@@ -0,0 +1,86 @@
+package com.netflix.eureka;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.eureka.cluster.ClusterSampleData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RegistrySnapshotFileTest {
+
+    private static final long MAX_AGE_MS = 60 * 1000;
+
+    private File file;
+    private RegistrySnapshotFile snapshotFile;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("registry", ".snapshot");
+        file.delete();
+        snapshotFile = new RegistrySnapshotFile(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testWrittenInstancesAreRead() throws Exception {
+        InstanceInfo first = ClusterSampleData.newInstanceInfo(0);
+        InstanceInfo second = ClusterSampleData.newInstanceInfo(1);
+        second.setOverriddenStatus(InstanceStatus.OUT_OF_SERVICE);
+        Application application = new Application(first.getAppName());
+        application.addInstance(first);
+        application.addInstance(second);
+        Applications applications = new Applications();
+        applications.addApplication(application);
+
+        assertEquals(2, snapshotFile.write(applications));
+
+        List<InstanceInfo> instances = snapshotFile.read(MAX_AGE_MS);
+        assertEquals(2, instances.size());
+        for (InstanceInfo instance : instances) {
+            InstanceInfo original = instance.getId().equals(first.getId()) ? first : second;
+            assertEquals(original.getAppName(), instance.getAppName());
+            assertEquals(original.getOverriddenStatus(), instance.getOverriddenStatus());
+            assertEquals(original.getLastDirtyTimestamp(), instance.getLastDirtyTimestamp());
+            assertEquals(original.getLeaseInfo().getDurationInSecs(), instance.getLeaseInfo().getDurationInSecs());
+        }
+    }
+
+    @Test
+    public void testOutdatedSnapshotIsIgnored() throws Exception {
+        Application application = new Application("app");
+        application.addInstance(ClusterSampleData.newInstanceInfo(0));
+        Applications applications = new Applications();
+        applications.addApplication(application);
+        snapshotFile.write(applications);
+
+        Thread.sleep(10);
+        assertTrue(snapshotFile.read(1).isEmpty());
+    }
+
+    @Test
+    public void testMissingOrCorruptSnapshotIsIgnored() throws Exception {
+        assertTrue(snapshotFile.read(MAX_AGE_MS).isEmpty());
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[]{0x45, 0x52, 0x4b, 0x53, 0, 0, 0});
+        } finally {
+            out.close();
+        }
+        assertTrue(snapshotFile.read(MAX_AGE_MS).isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package com.netflix.eureka;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.util.InstanceInfoGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RegistrySnapshotTest {
+
+    private final RegistrySnapshot snapshot = new RegistrySnapshot();
+    private Applications applications;
+
+    @Before
+    public void setUp() throws Exception {
+        applications = InstanceInfoGenerator.newBuilder(20, 4).build().toApplications();
+        for (Application app : applications.getRegisteredApplications()) {
+            snapshot.publish(app.getName(), app);
+        }
+    }
+
+    @Test
+    public void testReconcileHashCodeMatchesInstances() throws Exception {
+        assertEquals(applications.getReconcileHashCode(), snapshot.getReconcileHashCode());
+        assertEquals(applications.getReconcileHashCode(), snapshot.getApplications().getAppsHashCode());
+    }
+
+    @Test
+    public void testReconcileHashCodeFollowsStatusChanges() throws Exception {
+        Application app = applications.getRegisteredApplications().get(0);
+        Application changedApp = new Application(app.getName());
+        for (InstanceInfo instanceInfo : app.getInstances()) {
+            InstanceInfo changedInstance = new InstanceInfo(instanceInfo);
+            changedInstance.setStatusWithoutDirty(InstanceStatus.DOWN);
+            changedApp.addInstance(changedInstance);
+        }
+        snapshot.publish(app.getName(), changedApp);
+        assertEquals(snapshot.getApplications().getReconcileHashCode(), snapshot.getReconcileHashCode());
+
+        snapshot.publish(app.getName(), null);
+        assertEquals(snapshot.getApplications().getReconcileHashCode(), snapshot.getReconcileHashCode());
+
+        snapshot.clear();
+        assertEquals("", snapshot.getReconcileHashCode());
+    }
+
+    @Test
+    public void testViewSharesUnchangedApplications() throws Exception {
+        Applications view = snapshot.getApplications();
+        Application changed = applications.getRegisteredApplications().get(0);
+        Application unchanged = applications.getRegisteredApplications().get(1);
+
+        Application changedApp = new Application(changed.getName());
+        changedApp.addInstance(changed.getInstances().get(0));
+        snapshot.publish(changed.getName(), changedApp);
+
+        Applications changedView = snapshot.getApplications();
+        assertSame(changedApp, changedView.getRegisteredApplications(changed.getName()));
+        assertSame(view.getRegisteredApplications(unchanged.getName()),
+                changedView.getRegisteredApplications(unchanged.getName()));
+        assertEquals(applications.getRegisteredApplications().size(),
+                changedView.getRegisteredApplications().size());
+        assertSame(changed, view.getRegisteredApplications(changed.getName()));
+    }
+
+    @Test
+    public void testRetiredVipAddressesAreDropped() throws Exception {
+        Application app = applications.getRegisteredApplications().get(0);
+        InstanceInfo retired = app.getInstances().get(0);
+        assertTrue(snapshot.isVipAddressIndexed(retired.getVIPAddress(), false));
+        assertTrue(snapshot.isVipAddressIndexed(retired.getSecureVipAddress(), true));
+
+        Application changedApp = new Application(app.getName());
+        for (InstanceInfo instanceInfo : app.getInstances()) {
+            if (instanceInfo != retired) {
+                changedApp.addInstance(instanceInfo);
+            }
+        }
+        snapshot.publish(app.getName(), changedApp);
+
+        assertFalse(snapshot.isVipAddressIndexed(retired.getVIPAddress(), false));
+        assertFalse(snapshot.isVipAddressIndexed(retired.getSecureVipAddress(), true));
+        assertTrue(snapshot.getApplicationsByVipAddress(retired.getVIPAddress(), false).isEmpty());
+        InstanceInfo kept = changedApp.getInstances().get(0);
+        assertEquals(1, snapshot.getApplicationsByVipAddress(kept.getVIPAddress(), false).size());
+
+        snapshot.publish(app.getName(), null);
+        assertFalse(snapshot.isVipAddressIndexed(kept.getVIPAddress(), false));
+    }
+}
@@ -9,9 +9,12 @@ import java.util.zip.GZIPOutputStream;
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.appinfo.InstanceInfo.InstanceStatus;
 import com.netflix.discovery.converters.EurekaJacksonCodec;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
 import com.netflix.discovery.shared.EurekaHttpClient.HttpResponse;
 import com.netflix.eureka.DefaultEurekaServerConfig;
 import com.netflix.eureka.EurekaServerConfig;
+import com.netflix.eureka.cluster.protocol.RegistryDigest;
 import com.netflix.eureka.resources.ASGResource.ASGStatus;
 import org.junit.Before;
 import org.junit.Rule;
@@ -167,10 +170,36 @@ public class JerseyReplicationClientTest {
         assertThat(response.getStatusCode(), is(equalTo(204)));
     }
 
-    private static byte[] toGzippedJson(InstanceInfo remoteInfo) throws IOException {
+    @Test
+    public void testRegistryDigestFetch() throws Exception {
+        Applications applications = new Applications();
+        Application application = new Application(instanceInfo.getAppName());
+        application.addInstance(instanceInfo);
+        applications.addApplication(application);
+        RegistryDigest registryDigest = RegistryDigest.of(applications, RegistryDigest.DEFAULT_DEPTH);
+
+        serverMockClient.when(
+                request()
+                        .withMethod("GET")
+                        .withHeader(header(PeerEurekaNode.HEADER_REPLICATION, "true"))
+                        .withPath("/eureka/v2/" + PeerEurekaNode.DIGEST_URL_PATH)
+        ).respond(
+                response()
+                        .withStatusCode(200)
+                        .withHeader(header("Content-Type", MediaType.APPLICATION_JSON))
+                        .withHeader(header("Content-Encoding", "gzip"))
+                        .withBody(toGzippedJson(registryDigest))
+        );
+
+        HttpResponse<RegistryDigest> response = replicationClient.getRegistryDigest();
+        assertThat(response.getStatusCode(), is(equalTo(200)));
+        assertThat(response.getEntity(), is(equalTo(registryDigest)));
+    }
+
+    private static byte[] toGzippedJson(Object entity) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         GZIPOutputStream gos = new GZIPOutputStream(bos);
-        EurekaJacksonCodec.getInstance().writeTo(remoteInfo, gos);
+        EurekaJacksonCodec.getInstance().writeTo(entity, gos);
         gos.flush();
         return bos.toByteArray();
     }
@@ -5,11 +5,16 @@ import java.util.concurrent.TimeUnit;
 
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
 import com.netflix.eureka.EurekaServerConfig;
 import com.netflix.eureka.PeerAwareInstanceRegistry;
 import com.netflix.eureka.PeerAwareInstanceRegistryImpl.Action;
 import com.netflix.eureka.cluster.TestableHttpReplicationClient.HandledRequest;
 import com.netflix.eureka.cluster.TestableHttpReplicationClient.RequestType;
+import com.netflix.eureka.cluster.protocol.RegistryDigest;
+import com.netflix.eureka.cluster.protocol.RegistryDigestEntry;
+import com.netflix.eureka.cluster.protocol.RegistryDigestEntryList;
 import com.netflix.eureka.cluster.protocol.ReplicationInstance;
 import com.netflix.eureka.cluster.protocol.ReplicationList;
 import com.netflix.eureka.resources.ASGResource.ASGStatus;
@@ -26,9 +31,12 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Tomasz Bak
@@ -183,6 +191,66 @@ public class PeerEurekaNodeTest {
         expectRequestType(RequestType.DeleteStatusOverride);
     }
 
+    @Test
+    public void testRepairRegistryReplicatesOutdatedInstances() throws Throwable {
+        InstanceInfo upToDateInstance = ClusterSampleData.newInstanceInfo(2);
+        Applications localApps = new Applications();
+        Application app = new Application(instanceInfo.getAppName());
+        app.addInstance(instanceInfo);
+        app.addInstance(upToDateInstance);
+        localApps.addApplication(app);
+
+        // The peer has an older copy of one instance and an up to date copy of the other
+        RegistryDigestEntryList peerEntries = new RegistryDigestEntryList();
+        peerEntries.addEntry(new RegistryDigestEntry(app.getName(), instanceInfo.getId(), instanceInfo.getLastDirtyTimestamp() - 1));
+        peerEntries.addEntry(new RegistryDigestEntry(app.getName(), upToDateInstance.getId(), upToDateInstance.getLastDirtyTimestamp()));
+        httpReplicationClient.withRegistryDigest(RegistryDigest.of(new Applications(), RegistryDigest.DEFAULT_DEPTH), peerEntries);
+
+        int repaired = createPeerEurekaNode(true).repairRegistry(localApps,
+                RegistryDigest.of(localApps, RegistryDigest.DEFAULT_DEPTH), Integer.MAX_VALUE);
+        assertThat(repaired, is(equalTo(1)));
+
+        ReplicationInstance replicationInstance = expectSingleBatchRequest();
+        assertThat(replicationInstance.getAction(), is(equalTo(Action.Register)));
+        assertThat(replicationInstance.getId(), is(equalTo(instanceInfo.getId())));
+    }
+
+    @Test
+    public void testRepairRegistryDoesNotResurrectCancelledInstances() throws Throwable {
+        InstanceInfo cancelledInstance = ClusterSampleData.newInstanceInfo(2);
+        Applications localApps = new Applications();
+        Application app = new Application(instanceInfo.getAppName());
+        app.addInstance(instanceInfo);
+        app.addInstance(cancelledInstance);
+        localApps.addApplication(app);
+
+        // The peer is missing both instances, but only one of them still renews its lease here
+        when(registry.isLeaseRenewedWithin(eq(app.getName()), eq(instanceInfo.getId()), anyLong())).thenReturn(true);
+        when(registry.isLeaseRenewedWithin(eq(app.getName()), eq(cancelledInstance.getId()), anyLong())).thenReturn(false);
+        httpReplicationClient.withRegistryDigest(RegistryDigest.of(new Applications(), RegistryDigest.DEFAULT_DEPTH),
+                new RegistryDigestEntryList());
+
+        int repaired = createPeerEurekaNode(true).repairRegistry(localApps,
+                RegistryDigest.of(localApps, RegistryDigest.DEFAULT_DEPTH), Integer.MAX_VALUE);
+        assertThat(repaired, is(equalTo(1)));
+
+        ReplicationInstance replicationInstance = expectSingleBatchRequest();
+        assertThat(replicationInstance.getAction(), is(equalTo(Action.Register)));
+        assertThat(replicationInstance.getId(), is(equalTo(instanceInfo.getId())));
+    }
+
+    @Test
+    public void testRepairRegistrySkipsEqualDigests() throws Throwable {
+        Applications localApps = new Applications();
+        Application app = new Application(instanceInfo.getAppName());
+        app.addInstance(instanceInfo);
+        localApps.addApplication(app);
+        RegistryDigest digest = RegistryDigest.of(localApps, RegistryDigest.DEFAULT_DEPTH);
+        httpReplicationClient.withRegistryDigest(digest, null);
+
+        assertThat(createPeerEurekaNode(true).repairRegistry(localApps, digest, Integer.MAX_VALUE), is(equalTo(0)));
+    }
+
     private PeerEurekaNode createPeerEurekaNode(boolean batchEnabled) {
         EurekaServerConfig config = ClusterSampleData.newEurekaServerConfig(batchEnabled);
 
@@ -1,5 +1,9 @@
 package com.netflix.eureka.cluster;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import com.netflix.appinfo.InstanceInfo;
@@ -19,7 +23,9 @@ import static com.netflix.eureka.cluster.TestableInstanceReplicationTask.aBatcha
 import static com.netflix.eureka.cluster.TestableInstanceReplicationTask.aNonBatchableTask;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Tomasz Bak
@@ -100,6 +106,102 @@ public class ReplicationTaskProcessorTest {
         assertThat(task.awaitCompletion(30, TimeUnit.SECONDS), is(equalTo(ProcessingState.Finished)));
     }
 
+    @Test
+    public void testPendingHeartbeatsAreCoalesced() throws Exception {
+        blockProcessing();
+
+        TestableInstanceReplicationTask first = aNonBatchableTask().withId("coalesced").withAction(Action.Heartbeat).build();
+        TestableInstanceReplicationTask second = aNonBatchableTask().withId("coalesced").withAction(Action.Heartbeat).build();
+        TestableInstanceReplicationTask latest = aNonBatchableTask().withId("coalesced").withAction(Action.Heartbeat).build();
+
+        boolean status = replicationTaskProcessor.process(first)
+                && replicationTaskProcessor.process(second)
+                && replicationTaskProcessor.process(latest);
+
+        assertThat(status, is(true));
+        assertThat(latest.awaitCompletion(30, TimeUnit.SECONDS), is(equalTo(ProcessingState.Finished)));
+        assertThat(first.getProcessingState(), is(equalTo(ProcessingState.Cancelled)));
+        assertThat(second.getProcessingState(), is(equalTo(ProcessingState.Cancelled)));
+    }
+
+    @Test
+    public void testRegistrationsAreNotCoalesced() throws Exception {
+        blockProcessing();
+
+        TestableInstanceReplicationTask first = aNonBatchableTask().withId("registered").withAction(Action.Register).build();
+        TestableInstanceReplicationTask second = aNonBatchableTask().withId("registered").withAction(Action.Register).build();
+
+        boolean status = replicationTaskProcessor.process(first) && replicationTaskProcessor.process(second);
+
+        assertThat(status, is(true));
+        assertThat(first.awaitCompletion(30, TimeUnit.SECONDS), is(equalTo(ProcessingState.Finished)));
+        assertThat(second.awaitCompletion(30, TimeUnit.SECONDS), is(equalTo(ProcessingState.Finished)));
+    }
+
+    @Test
+    public void testTasksCoalescedIntoRejectedTaskAreNotStranded() throws Exception {
+        TestableInstanceReplicationTask blocker = blockProcessing(10 * REPLICATION_EXPIRY_TIME_MS);
+        List<TestableInstanceReplicationTask> fillers = new ArrayList<TestableInstanceReplicationTask>();
+        while (true) {
+            TestableInstanceReplicationTask filler =
+                    aNonBatchableTask().withId("filler" + fillers.size()).withAction(Action.Register).build();
+            if (!replicationTaskProcessor.process(filler)) {
+                break;
+            }
+            fillers.add(filler);
+            assertThat("The replication queue is never full", fillers.size() < 1000, is(true));
+        }
+
+        // Every heartbeat is rejected while the queue is full, and the ones coalesced into a rejected heartbeat
+        // before it is rolled back are cancelled with it
+        final List<TestableInstanceReplicationTask> accepted =
+                Collections.synchronizedList(new ArrayList<TestableInstanceReplicationTask>());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> submitters = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread submitter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 200; j++) {
+                        TestableInstanceReplicationTask task =
+                                aNonBatchableTask().withId("coalesced").withAction(Action.Heartbeat).build();
+                        if (replicationTaskProcessor.process(task)) {
+                            accepted.add(task);
+                        }
+                    }
+                }
+            });
+            submitter.start();
+            submitters.add(submitter);
+        }
+        start.countDown();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        for (TestableInstanceReplicationTask task : accepted) {
+            assertThat(task.awaitCompletion(30, TimeUnit.SECONDS), is(not(equalTo(ProcessingState.Pending))));
+        }
+        // Drain the queue, so that the next heartbeat can only be rejected for a stranded entry of its key
+        assertThat(blocker.awaitCompletion(30, TimeUnit.SECONDS), is(not(equalTo(ProcessingState.Pending))));
+        for (TestableInstanceReplicationTask filler : fillers) {
+            assertThat(filler.awaitCompletion(30, TimeUnit.SECONDS), is(not(equalTo(ProcessingState.Pending))));
+        }
+        // The next heartbeat must not expire if the replication thread is slow to pick it up
+        when(config.getMaxTimeForReplication()).thenReturn((int) TimeUnit.SECONDS.toMillis(30));
+
+        // No entry is left for the key without a place in the queue, which would strand the next heartbeat
+        TestableInstanceReplicationTask next =
+                aNonBatchableTask().withId("coalesced").withAction(Action.Heartbeat).withReplyStatusCode(200).build();
+        assertThat(replicationTaskProcessor.process(next), is(true));
+        assertThat(next.awaitCompletion(30, TimeUnit.SECONDS), is(equalTo(ProcessingState.Finished)));
+    }
+
     @Test
     public void testBatchableTaskListExecution() throws Exception {
         TestableInstanceReplicationTask task = aBatchableTask().build();
@@ -165,10 +267,32 @@ public class ReplicationTaskProcessorTest {
 
         replicationClient.withNetworkStatusCode(503, 200);
         replicationClient.withBatchReply(200);
+        // The task must not expire before it is retried, which may take long in a JVM that is still warming up
+        when(config.getMaxTimeForReplication()).thenReturn((int) TimeUnit.SECONDS.toMillis(30));
 
         boolean status = replicationTaskProcessor.process(task);
 
         assertThat(status, is(true));
         assertThat(task.awaitCompletion(30, TimeUnit.SECONDS), is(equalTo(ProcessingState.Finished)));
     }
-}
\ No newline at end of file
+
+    /**
+     * Keeps the single replication thread busy, so that the tasks submitted next stay pending.
+     */
+    private void blockProcessing() throws Exception {
+        blockProcessing(REPLICATION_EXPIRY_TIME_MS / 2);
+    }
+
+    private TestableInstanceReplicationTask blockProcessing(long durationMs) throws Exception {
+        TestableInstanceReplicationTask blocker = aNonBatchableTask()
+                .withId("blocker")
+                .withAction(Action.Heartbeat)
+                .withProcessingDelay(durationMs, TimeUnit.MILLISECONDS)
+                .build();
+        replicationTaskProcessor.process(blocker);
+
+        // Wait a bit, to be sure the blocking task is picked up by the batcher
+        Thread.sleep(REPLICATION_EXPIRY_TIME_MS / 5);
+        return blocker;
+    }
+}
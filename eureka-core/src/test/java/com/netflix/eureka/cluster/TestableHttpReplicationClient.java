@@ -11,6 +11,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.appinfo.InstanceInfo.InstanceStatus;
 import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.shared.InstanceOperationList;
+import com.netflix.discovery.shared.InstanceOperationListResponse;
+import com.netflix.eureka.cluster.protocol.RegistryDigest;
+import com.netflix.eureka.cluster.protocol.RegistryDigestEntryList;
 import com.netflix.eureka.cluster.protocol.ReplicationInstanceResponse;
 import com.netflix.eureka.cluster.protocol.ReplicationList;
 import com.netflix.eureka.cluster.protocol.ReplicationListResponse;
@@ -30,6 +34,9 @@ public class TestableHttpReplicationClient implements HttpReplicationClient {
 
     private int batchStatusCode;
 
+    private RegistryDigest registryDigest;
+    private RegistryDigestEntryList registryDigestEntries;
+
     private final AtomicInteger callCounter = new AtomicInteger();
     private final AtomicInteger networkFailureCounter = new AtomicInteger();
     private long processingDelayMs;
@@ -49,6 +56,11 @@ public class TestableHttpReplicationClient implements HttpReplicationClient {
     }
 
 
+    public void withRegistryDigest(RegistryDigest registryDigest, RegistryDigestEntryList registryDigestEntries) {
+        this.registryDigest = registryDigest;
+        this.registryDigestEntries = registryDigestEntries;
+    }
+
     public void withNetworkError(int networkFailuresRepeatCount) {
         this.networkFailuresRepeatCount = networkFailuresRepeatCount;
     }
@@ -112,6 +124,11 @@ public class TestableHttpReplicationClient implements HttpReplicationClient {
         throw new IllegalStateException("method not supported");
     }
 
+    @Override
+    public HttpResponse<InstanceOperationListResponse> submitInstanceOperations(InstanceOperationList operations) {
+        throw new IllegalStateException("method not supported");
+    }
+
     @Override
     public HttpResponse<ReplicationListResponse> submitBatchUpdates(ReplicationList replicationList) {
         if (networkFailureCounter.get() < networkFailuresRepeatCount) {
@@ -136,6 +153,16 @@ public class TestableHttpReplicationClient implements HttpReplicationClient {
         return new HttpResponse<>(networkStatusCodes[callCounter.getAndIncrement()], replicationListResponse);
     }
 
+    @Override
+    public HttpResponse<RegistryDigest> getRegistryDigest() {
+        return new HttpResponse<>(registryDigest == null ? 404 : 200, registryDigest);
+    }
+
+    @Override
+    public HttpResponse<RegistryDigestEntryList> getRegistryDigestEntries(List<Integer> buckets) {
+        return new HttpResponse<>(registryDigestEntries == null ? 404 : 200, registryDigestEntries);
+    }
+
     @Override
     public void shutdown() {
     }
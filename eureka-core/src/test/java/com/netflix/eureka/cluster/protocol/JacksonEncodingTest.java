@@ -1,6 +1,9 @@
 package com.netflix.eureka.cluster.protocol;
 
+import com.netflix.appinfo.InstanceInfo;
 import com.netflix.discovery.converters.EurekaJacksonCodec;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
 import com.netflix.eureka.cluster.ClusterSampleData;
 import org.junit.Test;
 
@@ -60,4 +63,33 @@ public class JacksonEncodingTest {
 
         assertThat(decodedValue, is(equalTo(replicationListResponse)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRegistryDigestEncoding() throws Exception {
+        Applications applications = new Applications();
+        Application application = new Application(ClusterSampleData.newInstanceInfo(1).getAppName());
+        application.addInstance(ClusterSampleData.newInstanceInfo(1));
+        applications.addApplication(application);
+        RegistryDigest registryDigest = RegistryDigest.of(applications, 4);
+
+        // Encode / decode
+        String jsonText = jacksonCodec.writeToString(registryDigest);
+        RegistryDigest decodedValue = jacksonCodec.readValue(RegistryDigest.class, jsonText);
+
+        assertThat(decodedValue, is(equalTo(registryDigest)));
+    }
+
+    @Test
+    public void testRegistryDigestEntryListEncoding() throws Exception {
+        InstanceInfo instanceInfo = ClusterSampleData.newInstanceInfo(1);
+        RegistryDigestEntryList registryDigestEntryList = new RegistryDigestEntryList();
+        registryDigestEntryList.addEntry(new RegistryDigestEntry(instanceInfo.getAppName(), instanceInfo.getId(),
+                instanceInfo.getLastDirtyTimestamp()));
+
+        // Encode / decode
+        String jsonText = jacksonCodec.writeToString(registryDigestEntryList);
+        RegistryDigestEntryList decodedValue = jacksonCodec.readValue(RegistryDigestEntryList.class, jsonText);
+
+        assertThat(decodedValue, is(equalTo(registryDigestEntryList)));
+    }
+}
@@ -0,0 +1,49 @@
+package com.netflix.eureka.cluster.protocol;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.util.InstanceInfoGenerator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RegistryDigestTest {
+
+    private final Applications applications = InstanceInfoGenerator.newBuilder(100, 5).build().toApplications();
+
+    @Test
+    public void testEqualRegistriesDoNotDiffer() throws Exception {
+        RegistryDigest digest = RegistryDigest.of(applications, RegistryDigest.DEFAULT_DEPTH);
+        RegistryDigest otherDigest = RegistryDigest.of(applications, RegistryDigest.DEFAULT_DEPTH);
+
+        assertTrue(digest.diff(otherDigest, Integer.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testChangedInstanceIsInOnlyDifferingBucket() throws Exception {
+        Application app = applications.getRegisteredApplications().get(0);
+        InstanceInfo instanceInfo = app.getInstances().get(0);
+        RegistryDigest digest = RegistryDigest.of(applications, RegistryDigest.DEFAULT_DEPTH);
+
+        instanceInfo.setLastDirtyTimestamp(instanceInfo.getLastDirtyTimestamp() + 1);
+        RegistryDigest changedDigest = RegistryDigest.of(applications, RegistryDigest.DEFAULT_DEPTH);
+
+        List<Integer> buckets = digest.diff(changedDigest, Integer.MAX_VALUE);
+        assertEquals(Collections.singletonList(
+                RegistryDigest.bucketOf(app.getName(), instanceInfo.getId(), RegistryDigest.DEFAULT_DEPTH)), buckets);
+    }
+
+    @Test
+    public void testDigestsOfDifferentDepthDifferEverywhere() throws Exception {
+        RegistryDigest digest = RegistryDigest.of(applications, 4);
+        RegistryDigest otherDigest = RegistryDigest.of(applications, 5);
+
+        assertEquals(16, digest.diff(otherDigest, Integer.MAX_VALUE).size());
+        assertEquals(3, digest.diff(otherDigest, 3).size());
+    }
+}
@@ -0,0 +1,58 @@
+package com.netflix.eureka.lease;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LeaseExpiryWheelTest {
+
+    private final LeaseExpiryWheel<String> wheel = new LeaseExpiryWheel<String>(100);
+
+    @Test
+    public void testOnlyExpiredLeasesArePolled() throws Exception {
+        Lease<String> expiring = new Lease<String>("expiring", 1);
+        Lease<String> renewed = new Lease<String>("renewed", 1);
+        wheel.add(expiring);
+        wheel.add(renewed);
+        renewed.renew();
+
+        assertTrue("Leases expired before their deadline", wheel.pollExpired().isEmpty());
+
+        Thread.sleep(1200);
+        List<Lease<String>> expired = wheel.pollExpired();
+        assertEquals(1, expired.size());
+        assertSame(expiring, expired.get(0));
+        assertEquals("Renewed lease not tracked anymore", 1, wheel.size());
+        assertTrue("Expired lease polled twice", wheel.pollExpired().isEmpty());
+    }
+
+    @Test
+    public void testRenewedLeaseMovesWhenPolled() throws Exception {
+        Lease<String> lease = new Lease<String>("lease", 1);
+        wheel.add(lease);
+        long bucket = lease.getExpiryBucket();
+
+        lease.renew();
+        assertEquals("Renewal touched the wheel", bucket, lease.getExpiryBucket());
+
+        Thread.sleep(1200);
+        assertTrue("Renewed lease expired", wheel.pollExpired().isEmpty());
+        assertTrue("Renewed lease not moved", lease.getExpiryBucket() > bucket);
+        assertEquals("Renewed lease tracked more than once", 1, wheel.size());
+    }
+
+    @Test
+    public void testCancelledLeaseIsNotTracked() throws Exception {
+        Lease<String> lease = new Lease<String>("lease", 1);
+        wheel.add(lease);
+
+        lease.cancel();
+        lease.renew();
+
+        assertEquals(0, wheel.size());
+    }
+}
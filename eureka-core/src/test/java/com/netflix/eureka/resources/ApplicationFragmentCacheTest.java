@@ -0,0 +1,79 @@
+package com.netflix.eureka.resources;
+
+import java.io.ByteArrayOutputStream;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import com.netflix.discovery.converters.EurekaJacksonCodec;
+import com.netflix.discovery.converters.XmlXStream;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.util.InstanceInfoGenerator;
+import com.netflix.eureka.RegistrySnapshot;
+import com.netflix.eureka.Version;
+import com.netflix.eureka.resources.ResponseCache.KeyType;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ApplicationFragmentCacheTest {
+
+    private final RegistrySnapshot snapshot = new RegistrySnapshot();
+    private final ApplicationFragmentCache fragmentCache = new ApplicationFragmentCache(180);
+
+    @Before
+    public void setUp() throws Exception {
+        Applications generated = InstanceInfoGenerator.newBuilder(20, 4).withMetaData(true).build().toApplications();
+        for (Application app : generated.getRegisteredApplications()) {
+            snapshot.publish(app.getName(), app);
+        }
+    }
+
+    @Test
+    public void testStitchedPayloadMatchesFullSerialization() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            verifyPayloads(snapshot.getApplications());
+        }
+    }
+
+    @Test
+    public void testChangedApplicationIsSerializedAgain() throws Exception {
+        verifyPayloads(snapshot.getApplications());
+
+        Application changed = snapshot.getApplications().getRegisteredApplications().get(0);
+        Application copy = new Application(changed.getName());
+        for (InstanceInfo instanceInfo : changed.getInstances()) {
+            copy.addInstance(new InstanceInfo.Builder(instanceInfo).setStatus(InstanceStatus.DOWN).build());
+        }
+        snapshot.publish(copy.getName(), copy);
+
+        verifyPayloads(snapshot.getApplications());
+    }
+
+    @Test
+    public void testApplicationsOutsideOfSnapshot() throws Exception {
+        Applications apps = new Applications();
+        apps.setVersion(1L);
+        for (Application app : snapshot.getApplications().getRegisteredApplications()) {
+            apps.addApplication(app);
+        }
+        Application remoteApp = new Application("REMOTEAPP");
+        remoteApp.addInstance(InstanceInfoGenerator.takeOne());
+        apps.addApplication(remoteApp);
+        apps.setAppsHashCode(apps.getReconcileHashCode());
+
+        verifyPayloads(apps);
+    }
+
+    private void verifyPayloads(Applications apps) throws Exception {
+        assertEquals(EurekaJacksonCodec.getInstance().writeToString(apps), serialize(KeyType.JSON, apps));
+        assertEquals(XmlXStream.getInstance().toXML(apps), serialize(KeyType.XML, apps));
+    }
+
+    private String serialize(KeyType type, Applications apps) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fragmentCache.serialize(type, Version.V2, apps, snapshot, out);
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,101 @@
+package com.netflix.eureka.resources;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import com.netflix.eureka.AbstractTester;
+import com.netflix.eureka.PeerAwareInstanceRegistryImpl;
+import com.netflix.eureka.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ApplicationResourceTest extends AbstractTester {
+
+    private final InstanceInfo testInstanceInfo = createLocalInstance(LOCAL_REGION_INSTANCE_1_HOSTNAME);
+    private ApplicationResource applicationResource;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        // The resources serve the payloads of the registry singleton
+        PeerAwareInstanceRegistryImpl.getInstance().register(testInstanceInfo, false);
+        applicationResource = new ApplicationResource(testInstanceInfo.getAppName());
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        PeerAwareInstanceRegistryImpl.getInstance().cancel(testInstanceInfo.getAppName(), testInstanceInfo.getId(), false);
+        super.tearDown();
+    }
+
+    @Test
+    public void testResponseIsTaggedWithPayloadETag() throws Exception {
+        Response response = awaitPayloadOtherThan(null);
+
+        assertThat(response.getStatus(), is(equalTo(Status.OK.getStatusCode())));
+        assertThat(response.getEntity(), is(notNullValue()));
+        assertThat(response.getMetadata().getFirst("ETag"), is(notNullValue()));
+    }
+
+    @Test
+    public void testMatchingETagReturnsNotModified() throws Exception {
+        EntityTag eTag = (EntityTag) awaitPayloadOtherThan(null).getMetadata().getFirst("ETag");
+
+        // The payload is unchanged, so a request holding its tag is not sent the payload again
+        Request conditionalRequest = mock(Request.class);
+        when(conditionalRequest.evaluatePreconditions(eTag)).thenReturn(Response.notModified(eTag));
+        Response conditionalResponse =
+                applicationResource.getApplication(Version.V2.name(), "application/json", conditionalRequest);
+
+        assertThat(conditionalResponse.getStatus(), is(equalTo(Status.NOT_MODIFIED.getStatusCode())));
+        assertThat(conditionalResponse.getEntity(), is(nullValue()));
+    }
+
+    @Test
+    public void testPayloadIsRefreshedWhenRegistryChanges() throws Exception {
+        Object eTag = awaitPayloadOtherThan(null).getMetadata().getFirst("ETag");
+
+        PeerAwareInstanceRegistryImpl.getInstance().statusUpdate(testInstanceInfo.getAppName(),
+                testInstanceInfo.getId(), InstanceStatus.OUT_OF_SERVICE, "0", false);
+
+        // The invalidated payload is updated right away, not at the next update interval
+        Object refreshedETag = awaitPayloadOtherThan(eTag).getMetadata().getFirst("ETag");
+        assertThat(refreshedETag, is(not(equalTo(eTag))));
+    }
+
+    /**
+     * The read only cache is updated in the background, so the payload of the registered instance shows up
+     * shortly after it is registered.
+     */
+    private Response awaitPayloadOtherThan(Object eTag) throws Exception {
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(any(EntityTag.class))).thenReturn(null);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            Response response = applicationResource.getApplication(Version.V2.name(), "application/json", request);
+            Object responseETag = response.getMetadata().getFirst("ETag");
+            if (response.getStatus() == Status.OK.getStatusCode() && !responseETag.equals(eTag)
+                    || System.currentTimeMillis() > deadline) {
+                return response;
+            }
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.netflix.eureka.resources;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Variant;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.eureka.AbstractTester;
+import com.netflix.eureka.PeerAwareInstanceRegistryImpl;
+import com.netflix.eureka.Version;
+import com.netflix.eureka.resources.CachedResponses.PendingPayload;
+import com.netflix.eureka.resources.ResponseCache.Key;
+import com.netflix.eureka.resources.ResponseCache.KeyType;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CacheKeysTest extends AbstractTester {
+
+    private static final int LOOKUPS = 100000;
+
+    /**
+     * The bytes the jersey response of a cached payload takes, with its builder and headers, which is about half
+     * of this.
+     */
+    private static final int MAX_RESPONSE_BYTES = 1024;
+
+    private final CacheKeys keys = new CacheKeys(Arrays.asList("us-west-2", "EU-WEST-1"));
+
+    @Test
+    public void testRegionsAreCanonical() throws Exception {
+        Key key = keys.getAllAppsKey(ResponseCache.ALL_APPS, "us-west-2,eu-west-1", KeyType.JSON, Version.V2);
+
+        assertSame(key, keys.getAllAppsKey(ResponseCache.ALL_APPS, "EU-WEST-1,us-west-2", KeyType.JSON, Version.V2));
+        assertArrayEquals(new String[]{"eu-west-1", "us-west-2"}, key.getRegions());
+        assertEquals(new Key(Key.EntityType.Application, ResponseCache.ALL_APPS,
+                new String[]{"eu-west-1", "us-west-2"}, KeyType.JSON, Version.V2), key);
+
+        Key noRegions = keys.getAllAppsKey(ResponseCache.ALL_APPS, null, KeyType.XML, Version.V1);
+        assertNull(noRegions.getRegions());
+        assertEquals(new Key(Key.EntityType.Application, ResponseCache.ALL_APPS, KeyType.XML, Version.V1), noRegions);
+        assertEquals(ResponseCache.ALL_APPS_DELTA,
+                keys.getAllAppsKey(ResponseCache.ALL_APPS_DELTA, "", KeyType.XML, Version.V1).getName());
+    }
+
+    @Test
+    public void testUnknownRegionKeyIsCreated() throws Exception {
+        Key key = keys.getAllAppsKey(ResponseCache.ALL_APPS_DELTA, "us-west-2,AP-SOUTH-1", KeyType.JSON, Version.V2);
+
+        assertNotSame(key, keys.getAllAppsKey(ResponseCache.ALL_APPS_DELTA, "us-west-2,AP-SOUTH-1",
+                KeyType.JSON, Version.V2));
+        assertEquals(new Key(Key.EntityType.Application, ResponseCache.ALL_APPS_DELTA,
+                new String[]{"ap-south-1", "us-west-2"}, KeyType.JSON, Version.V2), key);
+    }
+
+    @Test
+    public void testNamedKeysAreCanonical() throws Exception {
+        Key key = keys.getKey(Key.EntityType.VIP, "myvip", KeyType.JSON, Version.V2);
+
+        assertSame(key, keys.getKey(Key.EntityType.VIP, "myvip", KeyType.JSON, Version.V2));
+        assertEquals(new Key(Key.EntityType.VIP, "myvip", KeyType.JSON, Version.V2), key);
+        assertTrue(!key.equals(keys.getKey(Key.EntityType.SVIP, "myvip", KeyType.JSON, Version.V2)));
+    }
+
+    @Test
+    public void testWarmLookupsDoNotAllocate() throws Exception {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported()
+                && allocationBean.isThreadAllocatedMemoryEnabled());
+
+        // Warms up the lookups, so that the measure is not skewed by class loading or compilation
+        int found = lookUp(LOOKUPS);
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        found += lookUp(LOOKUPS);
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(2 * 3 * LOOKUPS, found);
+        assertTrue("Allocated " + allocated + " bytes in " + LOOKUPS + " lookups", allocated < 1024);
+
+        // The cached GET path, from the key lookup to the payload written, allocates the response only
+        PeerAwareInstanceRegistryImpl instanceRegistry = PeerAwareInstanceRegistryImpl.getInstance();
+        InstanceInfo first = createLocalInstance(LOCAL_REGION_INSTANCE_1_HOSTNAME);
+        InstanceInfo second = createLocalInstance(LOCAL_REGION_INSTANCE_2_HOSTNAME);
+        instanceRegistry.register(first, false);
+        instanceRegistry.register(second, false);
+        try {
+            int length = get(LOCAL_REGION_APP_NAME, LOOKUPS);
+            before = allocationBean.getThreadAllocatedBytes(threadId);
+            get(LOCAL_REGION_APP_NAME, LOOKUPS);
+            long allocatedPerGet = (allocationBean.getThreadAllocatedBytes(threadId) - before) / LOOKUPS;
+            assertTrue("Allocated " + allocatedPerGet + " bytes per GET of a " + length + " bytes payload",
+                    allocatedPerGet < MAX_RESPONSE_BYTES && allocatedPerGet < length);
+        } finally {
+            instanceRegistry.cancel(first.getAppName(), first.getId(), false);
+            instanceRegistry.cancel(second.getAppName(), second.getId(), false);
+        }
+    }
+
+    /**
+     * Gets the payload of an application as {@link ApplicationResource} serves it, from the read only cache, and
+     * writes it.
+     *
+     * @return the length of the payload.
+     */
+    private static int get(String appName, int count) throws IOException {
+        ResponseCache cache = ResponseCache.getInstance();
+        CountingOutputStream out = new CountingOutputStream();
+        for (int i = 0; i < count; i++) {
+            Key key = cache.getKeys().getKey(Key.EntityType.Application, appName, KeyType.JSON, Version.toEnum("v2"));
+            Response response = CachedResponses.toResponse(UNCONDITIONAL_REQUEST, cache.getValue(key), null);
+            out.count = 0;
+            ((PendingPayload) response.getEntity()).writeTo(out);
+        }
+        return out.count;
+    }
+
+    private int lookUp(int count) {
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            Version version = Version.toEnum("v2");
+            if (keys.getAllAppsKey(ResponseCache.ALL_APPS, "eu-west-1,US-WEST-2", KeyType.JSON, version) != null) {
+                found++;
+            }
+            if (keys.getKey(Key.EntityType.Application, "MYAPP", KeyType.XML, version) != null) {
+                found++;
+            }
+            if (ContentEncoders.isAccepted("deflate;q=0, gzip;q=0.8", ContentEncoders.GZIP)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * A request with no preconditions, which does not allocate when it is evaluated, unlike a mock.
+     */
+    private static final Request UNCONDITIONAL_REQUEST = new Request() {
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public Variant selectVariant(List<Variant> variants) {
+            return null;
+        }
+
+        @Override
+        public ResponseBuilder evaluatePreconditions(EntityTag eTag) {
+            return null;
+        }
+
+        @Override
+        public ResponseBuilder evaluatePreconditions(Date lastModified) {
+            return null;
+        }
+
+        @Override
+        public ResponseBuilder evaluatePreconditions(Date lastModified, EntityTag eTag) {
+            return null;
+        }
+
+        @Override
+        public ResponseBuilder evaluatePreconditions() {
+            return null;
+        }
+    };
+
+    private static final class CountingOutputStream extends OutputStream {
+        private int count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
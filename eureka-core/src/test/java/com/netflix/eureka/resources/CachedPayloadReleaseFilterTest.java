@@ -0,0 +1,114 @@
+package com.netflix.eureka.resources;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.netflix.eureka.DefaultEurekaServerConfig;
+import com.netflix.eureka.EurekaServerConfigurationManager;
+import com.netflix.eureka.resources.CachedResponses.PendingPayload;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class CachedPayloadReleaseFilterTest {
+
+    private static final String PAYLOAD = "{\"applications\":{}}";
+
+    private final DirectBufferPool pool = new DirectBufferPool();
+    private final CachedPayloadReleaseFilter filter = new CachedPayloadReleaseFilter();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        EurekaServerConfigurationManager.getInstance().setConfiguration(new DefaultEurekaServerConfig());
+    }
+
+    @Test
+    public void testUnwrittenPayloadIsReleasedWhenRequestCompletes() throws Exception {
+        final ResponseCache.Value value = ResponseCache.getInstance().new Value(PAYLOAD, pool);
+        final Response[] responses = new Response[1];
+
+        // The response is built but never written, as for a HEAD request
+        filter.doFilter(mock(HttpServletRequest.class), mock(HttpServletResponse.class), new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                assertTrue(value.retain());
+                responses[0] = CachedResponses.toResponse(mock(Request.class), value, null);
+            }
+        });
+
+        assertEquals(200, responses[0].getStatus());
+        assertLastReferenceIsHeldByCache(value);
+    }
+
+    @Test
+    public void testPayloadIsReleasedWhenRequestFails() throws Exception {
+        final ResponseCache.Value value = ResponseCache.getInstance().new Value(PAYLOAD, pool);
+
+        try {
+            filter.doFilter(mock(HttpServletRequest.class), mock(HttpServletResponse.class), new FilterChain() {
+                @Override
+                public void doFilter(ServletRequest request, ServletResponse response) throws ServletException {
+                    assertTrue(value.retain());
+                    CachedResponses.toResponse(mock(Request.class), value, null);
+                    throw new ServletException("Failed before the response was written");
+                }
+            });
+        } catch (ServletException expected) {
+            // Expected
+        }
+
+        assertLastReferenceIsHeldByCache(value);
+    }
+
+    @Test
+    public void testWrittenPayloadIsReleasedOnce() throws Exception {
+        final ResponseCache.Value value = ResponseCache.getInstance().new Value(PAYLOAD, pool);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        filter.doFilter(mock(HttpServletRequest.class), mock(HttpServletResponse.class), new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                assertTrue(value.retain());
+                Response built = CachedResponses.toResponse(mock(Request.class), value, null);
+                ((PendingPayload) built.getEntity()).writeTo(out);
+            }
+        });
+
+        assertEquals(PAYLOAD, out.toString("UTF-8"));
+        assertLastReferenceIsHeldByCache(value);
+    }
+
+    @Test
+    public void testPayloadIsReleasedWhenWrittenWithoutFilter() throws Exception {
+        ResponseCache.Value value = ResponseCache.getInstance().new Value(PAYLOAD, pool);
+
+        assertTrue(value.retain());
+        Response response = CachedResponses.toResponse(mock(Request.class), value, null);
+        ((PendingPayload) response.getEntity()).writeTo(new ByteArrayOutputStream());
+
+        assertLastReferenceIsHeldByCache(value);
+    }
+
+    /**
+     * Checks that the response released its reference, so that the value is returned to its pool when the
+     * reference the cache holds is released.
+     */
+    private void assertLastReferenceIsHeldByCache(ResponseCache.Value value) {
+        assertEquals(0, pool.getPooledBytes());
+        value.release();
+        assertTrue(pool.getPooledBytes() > 0);
+        assertFalse(value.retain());
+    }
+}
@@ -0,0 +1,55 @@
+package com.netflix.eureka.resources;
+
+import java.nio.ByteBuffer;
+
+import com.netflix.eureka.DefaultEurekaServerConfig;
+import com.netflix.eureka.EurekaServerConfigurationManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DirectBufferPoolTest {
+
+    private final DirectBufferPool pool = new DirectBufferPool();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        EurekaServerConfigurationManager.getInstance().setConfiguration(new DefaultEurekaServerConfig());
+    }
+
+    @Test
+    public void testReleasedBufferIsReusedForSameSizeClass() throws Exception {
+        ByteBuffer buffer = pool.copyOf(new byte[3000]);
+        assertTrue(buffer.isDirect());
+        assertEquals(4096, buffer.capacity());
+        pool.release(buffer);
+        assertEquals(4096, pool.getPooledBytes());
+
+        ByteBuffer reused = pool.copyOf(new byte[4000]);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(4000, reused.limit());
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(4096, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void testOffHeapValueIsReleasedWithLastReference() throws Exception {
+        ResponseCache.Value value = ResponseCache.getInstance().new Value("{\"applications\":{}}", pool);
+        assertTrue(value.isOffHeap());
+        assertEquals("{\"applications\":{}}", value.getPayload());
+
+        assertTrue(value.retain());
+        value.release();
+        assertEquals(0, pool.getPooledBytes());
+
+        // The last reference returns both the uncompressed and the compressed buffers to the pool
+        value.release();
+        assertEquals(2 * 1024, pool.getPooledBytes());
+        assertFalse(value.retain());
+    }
+}
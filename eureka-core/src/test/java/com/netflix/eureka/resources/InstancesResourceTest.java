@@ -0,0 +1,97 @@
+package com.netflix.eureka.resources;
+
+import javax.ws.rs.core.Response;
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.InstanceOperation;
+import com.netflix.discovery.shared.InstanceOperationList;
+import com.netflix.discovery.shared.InstanceOperationListResponse;
+import com.netflix.discovery.shared.InstanceOperationResponse;
+import com.netflix.eureka.AbstractTester;
+import com.netflix.eureka.cluster.ClusterSampleData;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstancesResourceTest extends AbstractTester {
+
+    private final ApplicationResource applicationResource = mock(ApplicationResource.class);
+    private final InstanceResource instanceResource = mock(InstanceResource.class);
+
+    private final InstanceInfo instanceInfo = ClusterSampleData.newInstanceInfo(0);
+    private InstancesResource instancesResource;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        instancesResource = new InstancesResource() {
+            @Override
+            ApplicationResource createApplicationResource(InstanceOperation operation) {
+                return applicationResource;
+            }
+
+            @Override
+            InstanceResource createInstanceResource(InstanceOperation operation, ApplicationResource applicationResource) {
+                return instanceResource;
+            }
+        };
+    }
+
+    @Test
+    public void testBatchDispatchesEachOperation() throws Exception {
+        when(instanceResource.renewLease(anyString(), anyString(), anyString(), anyString())).thenReturn(Response.ok().build());
+        when(instanceResource.cancelLease(anyString())).thenReturn(Response.status(404).build());
+
+        InstanceOperationList operations = new InstanceOperationList();
+        operations.addOperation(InstanceOperation.register(instanceInfo));
+        operations.addOperation(InstanceOperation.heartbeat(instanceInfo, null));
+        operations.addOperation(InstanceOperation.cancel(instanceInfo.getAppName(), instanceInfo.getId()));
+        List<InstanceOperationResponse> responses = batchUpdate(operations);
+
+        assertThat(responses.size(), is(equalTo(3)));
+        assertThat(responses.get(0).getStatusCode(), is(equalTo(204)));
+        assertThat(responses.get(1).getStatusCode(), is(equalTo(200)));
+        assertThat(responses.get(2).getStatusCode(), is(equalTo(404)));
+        verify(applicationResource, times(1)).addInstance(instanceInfo, null);
+        verify(instanceResource, times(1)).renewLease(
+                null,
+                null,
+                instanceInfo.getStatus().name(),
+                Long.toString(instanceInfo.getLastDirtyTimestamp())
+        );
+        verify(instanceResource, times(1)).cancelLease(null);
+    }
+
+    @Test
+    public void testFailedOperationDoesNotFailBatch() throws Exception {
+        doThrow(new RuntimeException("simulated failure")).when(applicationResource).addInstance(instanceInfo, null);
+        when(instanceResource.cancelLease(anyString())).thenReturn(Response.ok().build());
+
+        InstanceOperationList operations = new InstanceOperationList();
+        operations.addOperation(InstanceOperation.register(instanceInfo));
+        operations.addOperation(InstanceOperation.cancel(instanceInfo.getAppName(), instanceInfo.getId()));
+        List<InstanceOperationResponse> responses = batchUpdate(operations);
+
+        assertThat(responses.get(0).getStatusCode(), is(equalTo(500)));
+        assertThat(responses.get(0).getResponseEntity(), is(nullValue()));
+        assertThat(responses.get(1).getStatusCode(), is(equalTo(200)));
+    }
+
+    private List<InstanceOperationResponse> batchUpdate(InstanceOperationList operations) {
+        Response response = instancesResource.batchUpdate("v2", operations);
+        assertThat(response.getStatus(), is(equalTo(200)));
+        return ((InstanceOperationListResponse) response.getEntity()).getResponseList();
+    }
+}
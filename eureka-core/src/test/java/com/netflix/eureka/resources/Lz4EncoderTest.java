@@ -0,0 +1,114 @@
+package com.netflix.eureka.resources;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import com.netflix.discovery.Lz4Decoder;
+import com.netflix.discovery.converters.EurekaJacksonCodec;
+import com.netflix.discovery.util.InstanceInfoGenerator;
+import com.netflix.eureka.DefaultEurekaServerConfig;
+import com.netflix.eureka.EurekaServerConfigurationManager;
+import com.netflix.eureka.resources.ResponseCache.KeyType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Lz4EncoderTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(Lz4EncoderTest.class);
+
+    private static final int ROUNDS = 20;
+
+    private static byte[] payload;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        EurekaServerConfigurationManager.getInstance().setConfiguration(new DefaultEurekaServerConfig());
+        payload = EurekaJacksonCodec.getInstance().writeToString(
+                InstanceInfoGenerator.newBuilder(2000, 100).withMetaData(true).build().toApplications())
+                .getBytes("UTF-8");
+    }
+
+    @Test
+    public void testEncodedPayloadIsDecodedByClient() throws Exception {
+        List<ContentEncoder> encoders = ContentEncoders.fromNames("lz4");
+        assertEquals(ContentEncoders.LZ4, encoders.get(0).getName());
+        PayloadCompressor compressor = new PayloadCompressor(0, encoders);
+
+        for (int level : new int[]{Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION}) {
+            PayloadBuffer buffer = new PayloadBuffer();
+            buffer.write(payload, 0, payload.length);
+            ResponseCache.Value value = ResponseCache.getInstance().new Value(buffer, null);
+
+            compressor.compress(value, KeyType.JSON, level);
+
+            assertEquals(ContentEncoders.LZ4, value.selectEncoding("gzip, lz4"));
+            assertArrayEquals(payload, decode(new Lz4Decoder().decode(
+                    new ByteArrayInputStream(value.getEncoded(ContentEncoders.LZ4)))));
+            assertArrayEquals(payload, decode(new GZIPInputStream(
+                    new ByteArrayInputStream(value.getEncoded(ContentEncoders.GZIP)))));
+        }
+    }
+
+    @Test
+    public void testCompressionComparedToGzip() throws Exception {
+        ContentEncoder lz4 = new Lz4Encoder();
+        // Warms up both encoders, so that the measure is not skewed by class loading or compilation
+        measure(ContentEncoders.GZIP_ENCODER, Deflater.DEFAULT_COMPRESSION);
+        measure(lz4, Deflater.DEFAULT_COMPRESSION);
+
+        long[] gzip = measure(ContentEncoders.GZIP_ENCODER, Deflater.DEFAULT_COMPRESSION);
+        long[] fast = measure(lz4, Deflater.DEFAULT_COMPRESSION);
+        long[] high = measure(lz4, Deflater.BEST_COMPRESSION);
+        log("gzip", gzip);
+        log("lz4", fast);
+        log("lz4 high", high);
+
+        assertTrue("lz4 is not faster than gzip", fast[1] < gzip[1]);
+        assertTrue(fast[0] < payload.length);
+        assertTrue(high[0] <= fast[0]);
+    }
+
+    /**
+     * @return the encoded length of the payload, and the time spent encoding it {@link #ROUNDS} times, in
+     *         nanoseconds.
+     */
+    private static long[] measure(ContentEncoder encoder, int level) throws Exception {
+        int length = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            PayloadBuffer encoded = new PayloadBuffer();
+            OutputStream out = encoder.encode(encoded, level);
+            out.write(payload);
+            out.close();
+            length = encoded.size();
+        }
+        return new long[]{length, System.nanoTime() - start};
+    }
+
+    private static void log(String name, long[] measure) {
+        double megabytesPerSecond = (double) payload.length * ROUNDS / (1024 * 1024) / (measure[1] / 1e9);
+        logger.info(String.format("%s: %d bytes in %d (%.1f%%), %.1f MB/s", name, payload.length, measure[0],
+                100.0 * measure[0] / payload.length, megabytesPerSecond));
+    }
+
+    private static byte[] decode(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,42 @@
+package com.netflix.eureka.resources;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PayloadBufferTest {
+
+    @Test
+    public void testContentSpanningSeveralChunksIsReadInOrder() throws Exception {
+        byte[] payload = new byte[3 * PayloadBuffer.MAX_CHUNK_SIZE + 17];
+        new Random(0).nextBytes(payload);
+
+        PayloadBuffer buffer = new PayloadBuffer();
+        buffer.write(payload[0]);
+        buffer.write(payload, 1, 4000);
+        buffer.write(payload, 4001, payload.length - 4001);
+
+        assertEquals(payload.length, buffer.size());
+        assertArrayEquals(payload, buffer.toByteArray());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        assertArrayEquals(payload, out.toByteArray());
+
+        ByteBuffer copy = ByteBuffer.allocate(payload.length);
+        buffer.copyTo(copy);
+        assertArrayEquals(payload, copy.array());
+    }
+
+    @Test
+    public void testEmptyBuffer() throws Exception {
+        PayloadBuffer buffer = new PayloadBuffer();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.toByteArray().length);
+    }
+}
@@ -0,0 +1,141 @@
+package com.netflix.eureka.resources;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.netflix.eureka.DefaultEurekaServerConfig;
+import com.netflix.eureka.EurekaServerConfigurationManager;
+import com.netflix.eureka.resources.ResponseCache.KeyType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadCompressorTest {
+
+    private final PayloadCompressor compressor =
+            new PayloadCompressor(0, ContentEncoders.fromNames("deflate, gzip"));
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        EurekaServerConfigurationManager.getInstance().setConfiguration(new DefaultEurekaServerConfig());
+    }
+
+    @Test
+    public void testCompressedPayloadIsValidGzip() throws Exception {
+        byte[] payload = newPayload();
+        for (int level : new int[]{Deflater.DEFAULT_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION}) {
+            ResponseCache.Value value = newValue(payload);
+            assertFalse(value.isEncoded(ContentEncoders.GZIP));
+
+            compressor.compress(value, KeyType.JSON, level);
+
+            assertTrue(value.isEncoded(ContentEncoders.GZIP));
+            assertArrayEquals(payload, decode(new GZIPInputStream(
+                    new ByteArrayInputStream(value.getEncoded(ContentEncoders.GZIP)))));
+            assertArrayEquals(payload, decode(new InflaterInputStream(
+                    new ByteArrayInputStream(value.getEncoded(ContentEncoders.DEFLATE)))));
+        }
+    }
+
+    @Test
+    public void testEncodingIsNegotiatedWithClient() throws Exception {
+        ResponseCache.Value value = newValue(newPayload());
+        compressor.compress(value, KeyType.JSON, Deflater.DEFAULT_COMPRESSION);
+
+        // The encodings are preferred in the order they are configured in
+        assertEquals(ContentEncoders.DEFLATE, value.selectEncoding("gzip, deflate"));
+        assertEquals(ContentEncoders.GZIP, value.selectEncoding("gzip"));
+        assertEquals(ContentEncoders.GZIP, value.selectEncoding("gzip, deflate;q=0"));
+        assertNull(value.selectEncoding("br"));
+        assertNull(value.selectEncoding(null));
+    }
+
+    @Test
+    public void testAcceptEncodingParsing() throws Exception {
+        assertTrue(ContentEncoders.isAccepted(" GZIP ", ContentEncoders.GZIP));
+        assertTrue(ContentEncoders.isAccepted("deflate;q=0.5,gzip;level=1", ContentEncoders.GZIP));
+        assertTrue(ContentEncoders.isAccepted("gzip;q=0.001", ContentEncoders.GZIP));
+        assertFalse(ContentEncoders.isAccepted("gzip ; q= 0.00", ContentEncoders.GZIP));
+        assertFalse(ContentEncoders.isAccepted("x-gzip, gzipped", ContentEncoders.GZIP));
+        assertFalse(ContentEncoders.isAccepted("", ContentEncoders.GZIP));
+    }
+
+    @Test
+    public void testBackgroundCompression() throws Exception {
+        PayloadCompressor backgroundCompressor = new PayloadCompressor(1, ContentEncoders.fromNames("gzip"));
+        byte[] payload = newPayload();
+        ResponseCache.Value value = newValue(payload);
+
+        backgroundCompressor.compressLater(value, KeyType.XML, Deflater.BEST_SPEED);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!value.isEncoded(ContentEncoders.GZIP) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertArrayEquals(payload, decode(new GZIPInputStream(new ByteArrayInputStream(value.getGzipped()))));
+    }
+
+    @Test
+    public void testRequestWaitsForPendingCompression() throws Exception {
+        PayloadCompressor backgroundCompressor = new PayloadCompressor(1, ContentEncoders.fromNames("gzip"));
+        ResponseCache.Value value = newValue(newPayload());
+
+        backgroundCompressor.compressLater(value, KeyType.JSON, Deflater.BEST_COMPRESSION);
+
+        assertEquals(ContentEncoders.GZIP, value.awaitEncoding("gzip", 30000));
+    }
+
+    @Test
+    public void testRequestIsServedUncompressedAfterWaiting() throws Exception {
+        ResponseCache.Value value = newValue(newPayload());
+
+        assertNull(value.awaitEncoding("gzip", 10));
+        // A client accepting none of the encodings does not wait
+        assertNull(value.awaitEncoding("br", 30000));
+    }
+
+    @Test
+    public void testReleasedValueIsNotCompressed() throws Exception {
+        ResponseCache.Value value = newValue(newPayload());
+        // The payload was superseded before it was compressed
+        value.release();
+
+        compressor.compress(value, KeyType.JSON, Deflater.DEFAULT_COMPRESSION);
+
+        assertFalse(value.isEncoded(ContentEncoders.GZIP));
+        assertNull(value.awaitEncoding("gzip", 30000));
+    }
+
+    private static byte[] newPayload() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("{\"instanceId\":\"i-").append(i).append("\"}");
+        }
+        return sb.toString().getBytes();
+    }
+
+    private static ResponseCache.Value newValue(byte[] payload) {
+        PayloadBuffer buffer = new PayloadBuffer();
+        buffer.write(payload, 0, payload.length);
+        return ResponseCache.getInstance().new Value(buffer, null);
+    }
+
+    private static byte[] decode(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
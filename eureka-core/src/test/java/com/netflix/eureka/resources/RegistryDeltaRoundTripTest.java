@@ -0,0 +1,171 @@
+package com.netflix.eureka.resources;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.DataCenterInfo;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.appinfo.MyDataCenterInstanceConfig;
+import com.netflix.config.ConfigurationManager;
+import com.netflix.discovery.DefaultEurekaClientConfig;
+import com.netflix.discovery.DiscoveryClient;
+import com.netflix.discovery.shared.Application;
+import com.netflix.eureka.AbstractTester;
+import com.netflix.eureka.DefaultEurekaServerConfig;
+import com.netflix.eureka.EurekaServerConfigurationManager;
+import com.netflix.eureka.PeerAwareInstanceRegistryImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Polls the registry served by {@link ApplicationsResource} with a {@link DiscoveryClient}, while the full
+ * registry falls back to the applications of the remote region.
+ */
+public class RegistryDeltaRoundTripTest extends AbstractTester {
+
+    private static final String BASE_PATH = "/eureka/v2/";
+
+    private final List<String> fullFetches = new CopyOnWriteArrayList<String>();
+    private final List<Integer> deltaFetches = new CopyOnWriteArrayList<Integer>();
+
+    private PeerAwareInstanceRegistryImpl serverRegistry;
+    private Server server;
+    private DiscoveryClient discoveryClient;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        EurekaServerConfigurationManager.getInstance().setConfiguration(new DefaultEurekaServerConfig());
+        serverRegistry = PeerAwareInstanceRegistryImpl.getInstance();
+        initRemoteRegionRegistry(serverRegistry);
+        serverRegistry.register(createLocalInstance(LOCAL_REGION_INSTANCE_1_HOSTNAME), false);
+
+        server = new Server(0);
+        server.setHandler(new ApplicationsHandler());
+        server.start();
+
+        ConfigurationManager.getConfigInstance().setProperty("eureka.serviceUrl.default",
+                "http://localhost:" + server.getConnectors()[0].getLocalPort() + BASE_PATH);
+        ConfigurationManager.getConfigInstance().setProperty("eureka.registration.enabled", "false");
+        ConfigurationManager.getConfigInstance().setProperty("eureka.client.refresh.interval", "1");
+        InstanceInfo.Builder builder = InstanceInfo.Builder.newBuilder();
+        builder.setIPAddr("10.10.101.00");
+        builder.setHostName("Hosttt");
+        builder.setAppName("EurekaTestApp-" + UUID.randomUUID());
+        builder.setLeaseInfo(LeaseInfo.Builder.newBuilder().build());
+        builder.setDataCenterInfo(new DataCenterInfo() {
+            @Override
+            public Name getName() {
+                return Name.MyOwn;
+            }
+        });
+        discoveryClient = new DiscoveryClient(
+                new ApplicationInfoManager(new MyDataCenterInstanceConfig(), builder.build()),
+                new DefaultEurekaClientConfig());
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        discoveryClient.shutdown();
+        server.stop();
+        serverRegistry.cancel(LOCAL_REGION_APP_NAME, LOCAL_REGION_INSTANCE_1_HOSTNAME, false);
+        serverRegistry.cancel(LOCAL_REGION_APP_NAME, LOCAL_REGION_INSTANCE_2_HOSTNAME, false);
+        ConfigurationManager.getConfigInstance().clearProperty("eureka.registration.enabled");
+        ConfigurationManager.getConfigInstance().clearProperty("eureka.client.refresh.interval");
+        super.tearDown();
+    }
+
+    @Test
+    public void testDeltaPollsDoNotFetchTheFullRegistry() throws Exception {
+        Assert.assertFalse(serverRegistry.isFullRegistryLocalOnly());
+        Assert.assertEquals(1, fullFetches.size());
+        Assert.assertNotNull("Remote application not in the full registry",
+                discoveryClient.getApplications().getRegisteredApplications(REMOTE_REGION_APP_NAME));
+
+        serverRegistry.register(createLocalInstance(LOCAL_REGION_INSTANCE_2_HOSTNAME), false);
+        long deadline = System.currentTimeMillis() + 30000;
+        while (localInstanceCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals("Registered instance not received", 2, localInstanceCount());
+
+        // Polls again, now that the client is up to date
+        int polls = deltaFetches.size();
+        deadline = System.currentTimeMillis() + 30000;
+        while (deltaFetches.size() < polls + 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue("Client stopped polling", deltaFetches.size() >= polls + 2);
+        for (int status : deltaFetches) {
+            Assert.assertTrue("Delta not served: " + deltaFetches, status == 200 || status == 304);
+        }
+        Assert.assertEquals("Full registry fetched again: " + fullFetches, 1, fullFetches.size());
+    }
+
+    private int localInstanceCount() {
+        Application app = discoveryClient.getApplications().getRegisteredApplications(LOCAL_REGION_APP_NAME);
+        return app == null ? 0 : app.getInstances().size();
+    }
+
+    /**
+     * Serves the full registry and the deltas from {@link ApplicationsResource}, as the <em>jersey</em>
+     * container would.
+     */
+    private class ApplicationsHandler extends AbstractHandler {
+
+        private final ApplicationsResource resource = new ApplicationsResource();
+
+        @Override
+        public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+                throws IOException {
+            String path = target.substring(BASE_PATH.length());
+            String accept = request.getHeader("Accept");
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            Response answer;
+            if ("apps/".equals(path) || "apps".equals(path)) {
+                answer = resource.getContainers("v2", accept, acceptEncoding, null, mock(Request.class),
+                        request.getParameter("regions"));
+                fullFetches.add(request.getQueryString() == null ? path : path + '?' + request.getQueryString());
+            } else if ("apps/delta".equals(path)) {
+                answer = resource.getContainerDifferential("v2", accept, acceptEncoding, null, mock(Request.class),
+                        request.getParameter("regions"), request.getParameter("since"));
+                deltaFetches.add(answer.getStatus());
+            } else {
+                answer = Response.status(Response.Status.NOT_FOUND).build();
+            }
+
+            response.setStatus(answer.getStatus());
+            MultivaluedMap<String, Object> headers = answer.getMetadata();
+            for (Map.Entry<String, List<Object>> header : headers.entrySet()) {
+                for (Object value : header.getValue()) {
+                    response.addHeader(header.getKey(), value.toString());
+                }
+            }
+            Object entity = answer.getEntity();
+            if (entity instanceof CachedResponses.PendingPayload) {
+                response.setContentType(accept != null && accept.contains("json")
+                        ? "application/json" : "application/xml");
+                ((CachedResponses.PendingPayload) entity).writeTo(response.getOutputStream());
+            }
+            ((org.mortbay.jetty.Request) request).setHandled(true);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.netflix.eureka.resources;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.config.ConfigurationManager;
+import com.netflix.eureka.AbstractTester;
+import com.netflix.eureka.PeerAwareInstanceRegistryImpl;
+import com.netflix.eureka.Version;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheInvalidationWindowTest extends AbstractTester {
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        // Long enough for the scheduled flush not to run during the test, which flushes the invalidations itself
+        ConfigurationManager.getConfigInstance().setProperty("eureka.responseCacheInvalidationWindowMs", "3600000");
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        ConfigurationManager.getConfigInstance().clearProperty("eureka.responseCacheInvalidationWindowMs");
+    }
+
+    @Test
+    public void testInvalidationsAreCoalescedUntilFlushed() throws Exception {
+        ResponseCache cache = ResponseCache.getInstance();
+        PeerAwareInstanceRegistryImpl instanceRegistry = PeerAwareInstanceRegistryImpl.getInstance();
+        ResponseCache.Key key = new ResponseCache.Key(ResponseCache.Key.EntityType.Application,
+                LOCAL_REGION_APP_NAME, ResponseCache.KeyType.JSON, Version.V2);
+        assertNull(cache.get(key, false));
+
+        long requested = cache.getInvalidationsRequested();
+        long applied = cache.getInvalidationsApplied();
+        InstanceInfo first = createLocalInstance(LOCAL_REGION_INSTANCE_1_HOSTNAME);
+        InstanceInfo second = createLocalInstance(LOCAL_REGION_INSTANCE_2_HOSTNAME);
+        instanceRegistry.register(first, false);
+        instanceRegistry.register(second, false);
+        try {
+            // The registrations are not served until their invalidations are flushed
+            long requestedByChanges = cache.getInvalidationsRequested() - requested;
+            assertTrue(requestedByChanges > 0);
+            assertEquals(applied, cache.getInvalidationsApplied());
+            assertNull(cache.get(key, false));
+
+            cache.flushInvalidations();
+
+            String payload = cache.get(key, false);
+            assertNotNull(payload);
+            assertTrue(payload.contains(LOCAL_REGION_INSTANCE_1_HOSTNAME));
+            assertTrue(payload.contains(LOCAL_REGION_INSTANCE_2_HOSTNAME));
+            // Both registrations invalidated the same keys, which the flush invalidated once each
+            assertEquals(requestedByChanges / 2, cache.getInvalidationsApplied() - applied);
+            assertEquals(2.0, cache.getInvalidationCoalescingRatio(), 0.0);
+        } finally {
+            instanceRegistry.cancel(first.getAppName(), first.getId(), false);
+            instanceRegistry.cancel(second.getAppName(), second.getId(), false);
+            cache.flushInvalidations();
+        }
+    }
+}
@@ -7,10 +7,13 @@ import com.netflix.eureka.EurekaServerConfig;
 import com.netflix.eureka.EurekaServerConfigurationManager;
 import com.netflix.eureka.PeerAwareInstanceRegistryImpl;
 import com.netflix.eureka.Version;
+import com.netflix.appinfo.InstanceInfo;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.charset.Charset;
+
 /**
  * @author Nitesh Kant
  */
@@ -39,7 +42,7 @@ public class ResponseCacheTest extends AbstractTester {
 
         PeerAwareInstanceRegistryImpl.getInstance().cancel(REMOTE_REGION_APP_NAME, REMOTE_REGION_INSTANCE_1_HOSTNAME, true);
 
-        Assert.assertNull("Cache after invalidate did not return null.", cache.get(key, true));
+        Assert.assertNull("Cache after invalidate did not return null.", awaitRefreshedReadOnly(cache, key));
     }
 
     @Test
@@ -55,7 +58,7 @@ public class ResponseCacheTest extends AbstractTester {
 
         PeerAwareInstanceRegistryImpl.getInstance().cancel(REMOTE_REGION_APP_NAME, REMOTE_REGION_INSTANCE_1_HOSTNAME, true);
 
-        Assert.assertNull("Cache after invalidate did not return null.", cache.get(key, true));
+        Assert.assertNull("Cache after invalidate did not return null.", awaitRefreshedReadOnly(cache, key));
     }
 
     @Test
@@ -75,7 +78,101 @@ public class ResponseCacheTest extends AbstractTester {
 
         PeerAwareInstanceRegistryImpl.getInstance().cancel(REMOTE_REGION_APP_NAME, REMOTE_REGION_INSTANCE_1_HOSTNAME, true);
 
-        Assert.assertNull("Cache after invalidate did not return null.", cache.get(key1, true));
-        Assert.assertNull("Cache after invalidate did not return null.", cache.get(key2, true));
+        Assert.assertNull("Cache after invalidate did not return null.", awaitRefreshedReadOnly(cache, key1));
+        Assert.assertNull("Cache after invalidate did not return null.", awaitRefreshedReadOnly(cache, key2));
+    }
+
+    @Test
+    public void testInvalidatedPayloadIsServedUntilRefreshed() throws Exception {
+        ResponseCache cache = ResponseCache.getInstance();
+        PeerAwareInstanceRegistryImpl instanceRegistry = PeerAwareInstanceRegistryImpl.getInstance();
+        ResponseCache.Key key = new ResponseCache.Key(ResponseCache.Key.EntityType.Application,
+                ResponseCache.ALL_APPS, ResponseCache.KeyType.JSON, Version.V2);
+        Assert.assertNotNull("Cache get returned null.", cache.get(key, true));
+
+        InstanceInfo instance = createLocalInstance(LOCAL_REGION_INSTANCE_2_HOSTNAME);
+        instanceRegistry.register(instance, false);
+        try {
+            // The read only cache keeps the previous payload until the refresh replaces it
+            long deadline = System.currentTimeMillis() + 30000;
+            String payload;
+            do {
+                Assert.assertTrue("Invalidated payload was removed from the read only cache.",
+                        cache.isCachedReadOnly(key));
+                payload = cache.get(key, true);
+                Assert.assertNotNull("Cache get returned null.", payload);
+            } while (!payload.contains(LOCAL_REGION_INSTANCE_2_HOSTNAME) && System.currentTimeMillis() < deadline);
+            Assert.assertTrue("Read only cache was not refreshed.", payload.contains(LOCAL_REGION_INSTANCE_2_HOSTNAME));
+        } finally {
+            instanceRegistry.cancel(instance.getAppName(), instance.getId(), false);
+        }
+    }
+
+    @Test
+    public void testDeltaSinceIsSharedUntilRegistryChanges() throws Exception {
+        ResponseCache cache = ResponseCache.getInstance();
+        PeerAwareInstanceRegistryImpl instanceRegistry = PeerAwareInstanceRegistryImpl.getInstance();
+        ResponseCache.Key key = new ResponseCache.Key(ResponseCache.Key.EntityType.Application,
+                ResponseCache.ALL_APPS_DELTA, ResponseCache.KeyType.JSON, Version.V2);
+        long version = instanceRegistry.getRegistryVersion();
+
+        ResponseCache.Value first = cache.getDeltaSince(key, version);
+        ResponseCache.Value second = cache.getDeltaSince(key, version);
+        Assert.assertSame("Delta since the same version was generated again.", first, second);
+        first.release();
+        second.release();
+
+        InstanceInfo instance = createLocalInstance(LOCAL_REGION_INSTANCE_2_HOSTNAME);
+        instanceRegistry.register(instance, false);
+        try {
+            ResponseCache.Value changed = cache.getDeltaSince(key, version);
+            Assert.assertNotSame("Delta was served after the registry changed.", first, changed);
+            Assert.assertTrue("Delta does not hold the change.",
+                    changed.getPayload().contains(LOCAL_REGION_INSTANCE_2_HOSTNAME));
+            changed.release();
+        } finally {
+            instanceRegistry.cancel(instance.getAppName(), instance.getId(), false);
+        }
+    }
+
+    @Test
+    public void testNonAsciiPayloadIsServedAsUtf8() throws Exception {
+        ResponseCache cache = ResponseCache.getInstance();
+        PeerAwareInstanceRegistryImpl instanceRegistry = PeerAwareInstanceRegistryImpl.getInstance();
+        InstanceInfo instance = new InstanceInfo.Builder(createLocalInstance(LOCAL_REGION_INSTANCE_2_HOSTNAME))
+                .setAppName("CAF\u00C9-\u65E5\u672C")
+                .build();
+        instanceRegistry.register(instance, false);
+        try {
+            ResponseCache.Key key = new ResponseCache.Key(ResponseCache.Key.EntityType.Application,
+                    instance.getAppName(), ResponseCache.KeyType.JSON, Version.V2);
+            ResponseCache.Value value = cache.getValue(key);
+            Assert.assertNotNull("Cache get returned null.", value);
+            try {
+                byte[] raw = value.getRaw();
+                Assert.assertTrue("Payload is not served in UTF-8.",
+                        new String(raw, Charset.forName("UTF-8")).contains(instance.getAppName()));
+                Assert.assertEquals(raw.length, value.getLength(null));
+                Assert.assertTrue(value.getPayload().contains(instance.getAppName()));
+            } finally {
+                value.release();
+            }
+        } finally {
+            instanceRegistry.cancel(instance.getAppName(), instance.getId(), false);
+        }
+    }
+
+    /**
+     * Gets the payload from the read only cache once it is refreshed, as the payload of an invalidated key is
+     * served until then.
+     */
+    private static String awaitRefreshedReadOnly(ResponseCache cache, ResponseCache.Key key) throws Exception {
+        long deadline = System.currentTimeMillis() + 30000;
+        String payload = cache.get(key, true);
+        while (payload != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            payload = cache.get(key, true);
+        }
+        return payload;
     }
 }
@@ -0,0 +1,55 @@
+package com.netflix.eureka.util;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedCounterTest {
+
+    private static final int THREADS = 8;
+    private static final int INCREMENTS_PER_THREAD = 100000;
+
+    @Test
+    public void testConcurrentIncrementsAreCounted() throws Exception {
+        final StripedCounter counter = new StripedCounter(4);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < INCREMENTS_PER_THREAD; j++) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals((long) THREADS * INCREMENTS_PER_THREAD, counter.get());
+        assertEquals((long) THREADS * INCREMENTS_PER_THREAD, counter.longValue());
+    }
+
+    @Test
+    public void testGetAndReset() throws Exception {
+        StripedCounter counter = new StripedCounter();
+        counter.add(5);
+        counter.increment();
+
+        assertEquals(6, counter.getAndReset());
+        assertEquals(0, counter.get());
+        counter.increment();
+        assertEquals(1, counter.getAndReset());
+    }
+}